@@ -0,0 +1,40 @@
+package se.irori.kafka.claimcheck.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig;
+import se.irori.kafka.claimcheck.ClaimCheckSerializer;
+import se.irori.kafka.claimcheck.InMemoryClaimCheckBackend;
+
+/**
+ * Claim check configs shared by the benchmarks.
+ */
+final class BenchmarkConfigs {
+
+  static final String TOPIC = "benchmark-topic";
+
+  private BenchmarkConfigs() {
+  }
+
+  /**
+   * Producer and consumer side configs with byte[] values, so that the claim check overhead is
+   * measured rather than value (de)serialization, and the in-memory backend.
+   *
+   * @return a mutable config map, with the default claim check limit
+   */
+  static Map<String, Object> byteArrayConfigs() {
+    Map<String, Object> config = new HashMap<>();
+    config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+    config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ClaimCheckSerializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_SERIALIZER_CLASS,
+        ByteArraySerializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        ByteArrayDeserializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        InMemoryClaimCheckBackend.class);
+    return config;
+  }
+}
@@ -0,0 +1,78 @@
+package se.irori.kafka.claimcheck.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.irori.kafka.claimcheck.ClaimCheckProducerInterceptor;
+import se.irori.kafka.claimcheck.ClaimCheckUtils;
+
+/**
+ * Header scans done per record by the serializer and deserializers, with a number of other
+ * application headers before the claim check header.
+ *
+ * <p>Run with `-prof gc` to see allocation per lookup, `gc.alloc.rate.norm`, which should be
+ * close to zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClaimCheckUtilsBenchmark {
+
+  @Param({"0", "10"})
+  public int otherHeaders;
+
+  private Headers plainHeaders;
+
+  private Headers claimCheckHeaders;
+
+  /**
+   * Create header sets with and without claim check header.
+   */
+  @Setup
+  public void setup() {
+    plainHeaders = new RecordHeaders();
+    claimCheckHeaders = new RecordHeaders();
+    for (int i = 0; i < otherHeaders; i++) {
+      byte[] headerValue = ("value-" + i).getBytes(StandardCharsets.UTF_8);
+      plainHeaders.add("header-" + i, headerValue);
+      claimCheckHeaders.add("header-" + i, headerValue);
+    }
+    claimCheckHeaders.add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+        "inmemory://benchmark-topic/1".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public boolean isClaimCheckPlain() {
+    return ClaimCheckUtils.isClaimCheck(plainHeaders);
+  }
+
+  @Benchmark
+  public boolean isClaimCheck() {
+    return ClaimCheckUtils.isClaimCheck(claimCheckHeaders);
+  }
+
+  @Benchmark
+  public boolean isClaimCheckError() {
+    return ClaimCheckUtils.isClaimCheckError(claimCheckHeaders);
+  }
+
+  @Benchmark
+  public byte[] getClaimCheckRefFromHeader() {
+    return ClaimCheckUtils.getClaimCheckRefFromHeader(claimCheckHeaders);
+  }
+}
@@ -0,0 +1,111 @@
+package se.irori.kafka.claimcheck.benchmarks;
+
+import static se.irori.kafka.claimcheck.benchmarks.BenchmarkConfigs.TOPIC;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.irori.kafka.claimcheck.ClaimCheck;
+import se.irori.kafka.claimcheck.ClaimCheckDeserializer;
+import se.irori.kafka.claimcheck.ClaimCheckProducerInterceptor;
+import se.irori.kafka.claimcheck.ClaimCheckStreamingDeserializer;
+import se.irori.kafka.claimcheck.InMemoryClaimCheckBackend;
+import se.irori.kafka.claimcheck.TestUtils;
+
+/**
+ * The value deserializers, for inline records and for claim checks checked out from the in-memory
+ * backend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DeserializerBenchmark {
+
+  @Param({"1024", "102400", "1048576", "10485760", "104857600"})
+  public int payloadSize;
+
+  private byte[] value;
+
+  private Headers claimCheckHeaders;
+
+  private final byte[] readBuffer = new byte[8192];
+
+  private ClaimCheckDeserializer<byte[]> deserializer;
+
+  private ClaimCheckStreamingDeserializer streamingDeserializer;
+
+  /**
+   * Check in the payload, and configure the deserializers.
+   */
+  @Setup
+  public void setup() {
+    value = TestUtils.getRandomBytes(payloadSize);
+
+    InMemoryClaimCheckBackend backend = new InMemoryClaimCheckBackend();
+    ClaimCheck claimCheck = backend.checkIn(new ProducerRecord<>(TOPIC, value));
+    claimCheckHeaders = new RecordHeaders().add(
+        ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK, claimCheck.serialize());
+
+    Map<String, Object> config = BenchmarkConfigs.byteArrayConfigs();
+    deserializer = new ClaimCheckDeserializer<>();
+    deserializer.configure(config, false);
+
+    streamingDeserializer = new ClaimCheckStreamingDeserializer();
+    streamingDeserializer.configure(config, false);
+  }
+
+  /**
+   * Close the deserializers, and remove the checked in payload.
+   */
+  @TearDown
+  public void tearDown() {
+    deserializer.close();
+    streamingDeserializer.close();
+    InMemoryClaimCheckBackend.clear();
+  }
+
+  @Benchmark
+  public byte[] deserializeInline() {
+    return deserializer.deserialize(TOPIC, new RecordHeaders(), value);
+  }
+
+  @Benchmark
+  public byte[] deserializeClaimCheck() {
+    return deserializer.deserialize(TOPIC, claimCheckHeaders, new byte[0]);
+  }
+
+  /**
+   * Streaming check out, reading the stream to the end.
+   */
+  @Benchmark
+  public long deserializeClaimCheckStreaming() throws IOException {
+    long total = 0;
+    try (InputStream stream =
+             streamingDeserializer.deserialize(TOPIC, claimCheckHeaders, new byte[0])) {
+      int read;
+      while ((read = stream.read(readBuffer)) != -1) {
+        total += read;
+      }
+    }
+    return total;
+  }
+}
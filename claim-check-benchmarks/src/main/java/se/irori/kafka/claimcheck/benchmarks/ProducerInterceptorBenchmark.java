@@ -0,0 +1,96 @@
+package se.irori.kafka.claimcheck.benchmarks;
+
+import static se.irori.kafka.claimcheck.benchmarks.BenchmarkConfigs.TOPIC;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.irori.kafka.claimcheck.ClaimCheckProducerInterceptor;
+import se.irori.kafka.claimcheck.ClaimCheckStreamingProducerInterceptor;
+import se.irori.kafka.claimcheck.ClaimCheckStreamingUtils;
+import se.irori.kafka.claimcheck.InMemoryClaimCheckBackend;
+import se.irori.kafka.claimcheck.TestUtils;
+
+/**
+ * The producer interceptors' onSend, below (1 KB, 100 KB) and above (1 MB and up) the default
+ * claim check limit, checking in to the in-memory backend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ProducerInterceptorBenchmark {
+
+  @Param({"1024", "102400", "1048576", "10485760", "104857600"})
+  public int payloadSize;
+
+  private byte[] value;
+
+  private ClaimCheckProducerInterceptor<byte[], byte[]> interceptor;
+
+  private ClaimCheckStreamingProducerInterceptor<byte[]> streamingInterceptor;
+
+  /**
+   * Configure the interceptors with the default claim check limit.
+   */
+  @Setup
+  public void setup() {
+    value = TestUtils.getRandomBytes(payloadSize);
+    InMemoryClaimCheckBackend.setDiscardPayloads(true);
+
+    Map<String, Object> config = BenchmarkConfigs.byteArrayConfigs();
+    interceptor = new ClaimCheckProducerInterceptor<>();
+    interceptor.configure(config);
+
+    streamingInterceptor = new ClaimCheckStreamingProducerInterceptor<>();
+    streamingInterceptor.configure(config);
+  }
+
+  /**
+   * Close the interceptors, and store payloads again.
+   */
+  @TearDown
+  public void tearDown() {
+    interceptor.close();
+    streamingInterceptor.close();
+    InMemoryClaimCheckBackend.setDiscardPayloads(false);
+  }
+
+  @TearDown(Level.Iteration)
+  public void clearBackend() {
+    InMemoryClaimCheckBackend.clear();
+  }
+
+  @Benchmark
+  public ProducerRecord<byte[], byte[]> onSend() {
+    return interceptor.onSend(new ProducerRecord<>(TOPIC, value));
+  }
+
+  /**
+   * Streaming onSend, the stream is read to the end by the backend when checked in.
+   */
+  @Benchmark
+  public ProducerRecord<byte[], InputStream> onSendStreaming() {
+    ProducerRecord<byte[], InputStream> producerRecord =
+        new ProducerRecord<>(TOPIC, new ByteArrayInputStream(value));
+    ClaimCheckStreamingUtils.setPayloadSize(producerRecord.headers(), payloadSize);
+    return streamingInterceptor.onSend(producerRecord);
+  }
+}
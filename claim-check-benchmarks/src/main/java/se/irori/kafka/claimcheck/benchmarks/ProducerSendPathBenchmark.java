@@ -0,0 +1,103 @@
+package se.irori.kafka.claimcheck.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig;
+import se.irori.kafka.claimcheck.ClaimCheckProducerInterceptor;
+import se.irori.kafka.claimcheck.ClaimCheckSerializer;
+import se.irori.kafka.claimcheck.InMemoryClaimCheckBackend;
+import se.irori.kafka.claimcheck.TestUtils;
+
+/**
+ * The producer send path for records below the claim check limit: the interceptor followed by
+ * the serializer, as called by `KafkaProducer.send`.
+ *
+ * <p>Compare `interceptorAndSerializer` with `wrappedSerializer`, the cost of serializing the
+ * value once, to see the overhead of the claim check producer side.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProducerSendPathBenchmark {
+
+  private static final String TOPIC = "benchmark-topic";
+
+  @Param({"1024", "102400"})
+  public int payloadSize;
+
+  private String value;
+
+  private StringSerializer wrappedSerializer;
+
+  private ClaimCheckProducerInterceptor<String, String> interceptor;
+
+  private ClaimCheckSerializer<String> serializer;
+
+  /**
+   * Configure the interceptor and serializer, with a limit above the payload size.
+   */
+  @Setup
+  public void setup() {
+    value = TestUtils.getRandomString(payloadSize);
+
+    Map<String, Object> config = new HashMap<>();
+    config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ClaimCheckSerializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_SERIALIZER_CLASS,
+        StringSerializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        InMemoryClaimCheckBackend.class);
+    config.put(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG,
+        payloadSize * 2L);
+
+    wrappedSerializer = new StringSerializer();
+
+    interceptor = new ClaimCheckProducerInterceptor<>();
+    interceptor.configure(config);
+
+    serializer = new ClaimCheckSerializer<>();
+    serializer.configure(config, false);
+  }
+
+  @TearDown
+  public void tearDown() {
+    interceptor.close();
+    serializer.close();
+  }
+
+  @Benchmark
+  public byte[] wrappedSerializer() {
+    return wrappedSerializer.serialize(TOPIC, new RecordHeaders(), value);
+  }
+
+  /**
+   * Interceptor and serializer, as called by `KafkaProducer.send`.
+   */
+  @Benchmark
+  public byte[] interceptorAndSerializer() {
+    ProducerRecord<String, String> intercepted =
+        interceptor.onSend(new ProducerRecord<>(TOPIC, "key", value));
+    return serializer.serialize(TOPIC, intercepted.headers(), intercepted.value());
+  }
+}
@@ -0,0 +1,92 @@
+package se.irori.kafka.claimcheck.benchmarks;
+
+import static se.irori.kafka.claimcheck.benchmarks.BenchmarkConfigs.TOPIC;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.irori.kafka.claimcheck.ClaimCheckProducerInterceptor;
+import se.irori.kafka.claimcheck.ClaimCheckSerializer;
+import se.irori.kafka.claimcheck.ClaimCheckStreamingUtils;
+import se.irori.kafka.claimcheck.InputStreamSerializer;
+import se.irori.kafka.claimcheck.TestUtils;
+
+/**
+ * The value serializers, for records passed inline and for records already checked in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SerializerBenchmark {
+
+  @Param({"1024", "102400", "1048576", "10485760", "104857600"})
+  public int payloadSize;
+
+  private byte[] value;
+
+  private Headers claimCheckHeaders;
+
+  private ClaimCheckSerializer<byte[]> serializer;
+
+  private InputStreamSerializer inputStreamSerializer;
+
+  /**
+   * Configure the serializers.
+   */
+  @Setup
+  public void setup() {
+    value = TestUtils.getRandomBytes(payloadSize);
+    claimCheckHeaders = new RecordHeaders().add(
+        ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+        "inmemory://benchmark-topic/1".getBytes(StandardCharsets.UTF_8));
+
+    Map<String, Object> config = BenchmarkConfigs.byteArrayConfigs();
+    serializer = new ClaimCheckSerializer<>();
+    serializer.configure(config, false);
+
+    inputStreamSerializer = new InputStreamSerializer();
+  }
+
+  @TearDown
+  public void tearDown() {
+    serializer.close();
+  }
+
+  @Benchmark
+  public byte[] serializeInline() {
+    return serializer.serialize(TOPIC, new RecordHeaders(), value);
+  }
+
+  @Benchmark
+  public byte[] serializeClaimCheck() {
+    return serializer.serialize(TOPIC, claimCheckHeaders, null);
+  }
+
+  /**
+   * Streaming mode inline serialization, reads the stream into a new array.
+   */
+  @Benchmark
+  public byte[] serializeInlineStreaming() {
+    Headers headers = new RecordHeaders();
+    ClaimCheckStreamingUtils.setPayloadSize(headers, payloadSize);
+    return inputStreamSerializer.serialize(TOPIC, headers, new ByteArrayInputStream(value));
+  }
+}
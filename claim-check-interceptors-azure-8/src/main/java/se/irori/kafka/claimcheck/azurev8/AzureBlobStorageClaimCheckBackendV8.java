@@ -1,15 +1,17 @@
 package se.irori.kafka.claimcheck.azurev8;
 
 import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.StorageErrorCodeStrings;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
 import com.microsoft.azure.storage.blob.CloudBlobContainer;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -17,6 +19,9 @@ import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.KafkaStorageException;
 import se.irori.kafka.claimcheck.ClaimCheck;
 import se.irori.kafka.claimcheck.ClaimCheckBackend;
+import se.irori.kafka.claimcheck.ClaimCheckExecutorType;
+import se.irori.kafka.claimcheck.GrowableArrayOutputStream;
+import se.irori.kafka.claimcheck.ParallelRangeDownloader;
 
 /**
  * Implementation of the ProducerInterceptor backed by Azure Blob Storage using SDK version v8.
@@ -27,13 +32,22 @@ import se.irori.kafka.claimcheck.ClaimCheckBackend;
  */
 public class AzureBlobStorageClaimCheckBackendV8 implements ClaimCheckBackend {
 
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
   private final ConcurrentHashMap<String, CloudBlobContainer> topicContainerClients
       = new ConcurrentHashMap<>();
 
+  /**
+   * Topics with a container known to exist, to only check once per topic.
+   */
+  private final Set<String> verifiedContainers = ConcurrentHashMap.newKeySet();
+
   private CloudBlobClient blobServiceClient;
 
   private boolean createContainerIfNotExists = false;
 
+  private ParallelRangeDownloader rangeDownloader;
+
   @Override
   public ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord) {
     final CloudBlockBlob blockBlobReference =
@@ -41,8 +55,19 @@ public class AzureBlobStorageClaimCheckBackendV8 implements ClaimCheckBackend {
 
 
     try {
-      blockBlobReference.uploadFromByteArray(largeRecord.value(), 0, largeRecord.value().length);
-    } catch (Exception e) {
+      try {
+        blockBlobReference.uploadFromByteArray(largeRecord.value(), 0,
+            largeRecord.value().length);
+      } catch (StorageException e) {
+        if (!isContainerNotFound(e)) {
+          throw e;
+        }
+        // container deleted since verified, create it again and retry once
+        blockBlobReference.getContainer().createIfNotExists();
+        blockBlobReference.uploadFromByteArray(largeRecord.value(), 0,
+            largeRecord.value().length);
+      }
+    } catch (StorageException | IOException | URISyntaxException | RuntimeException e) {
       throw new KafkaStorageException(e);
     }
 
@@ -53,12 +78,13 @@ public class AzureBlobStorageClaimCheckBackendV8 implements ClaimCheckBackend {
     CloudBlobContainer blobContainerClient =
         getCloudBlobContainer(topic);
 
-    if (createContainerIfNotExists) {
+    if (createContainerIfNotExists && !verifiedContainers.contains(topic)) {
       try {
         blobContainerClient.createIfNotExists();
       } catch (StorageException e) {
         throw new KafkaStorageException(e);
       }
+      verifiedContainers.add(topic);
     }
 
     String blobName = UUID.randomUUID().toString();
@@ -76,14 +102,28 @@ public class AzureBlobStorageClaimCheckBackendV8 implements ClaimCheckBackend {
     final CloudBlockBlob blockBlobReference = getMessageBlob(topic);
 
     try {
-      blockBlobReference.upload(payload, payloadSize);
-    } catch (Exception e) {
+      try {
+        // the SDK takes -1 for a size not known up front, e.g. when compressed while read
+        blockBlobReference.upload(payload, payloadSize);
+      } catch (StorageException e) {
+        if (isContainerNotFound(e)) {
+          // the stream may be consumed and can not be retried, prepare for the next check in
+          blockBlobReference.getContainer().createIfNotExists();
+        }
+        throw e;
+      }
+    } catch (StorageException | IOException | URISyntaxException | RuntimeException e) {
       throw new KafkaStorageException(e);
     }
 
     return new ClaimCheck(blockBlobReference.getUri().toString());
   }
 
+  private boolean isContainerNotFound(StorageException e) {
+    return createContainerIfNotExists
+        && StorageErrorCodeStrings.CONTAINER_NOT_FOUND.equals(e.getErrorCode());
+  }
+
   private CloudBlobContainer getCloudBlobContainer(String topic) {
 
     return topicContainerClients.computeIfAbsent(topic, t -> {
@@ -95,18 +135,44 @@ public class AzureBlobStorageClaimCheckBackendV8 implements ClaimCheckBackend {
     });
   }
 
+  /**
+   * Check out a payload. The first chunk is read with a range request, which also gives the blob
+   * size. Larger blobs are then read into an array of that size, with concurrent range requests.
+   */
   @Override
   public byte[] checkOut(ClaimCheck claimCheck) {
     final CloudBlockBlob blob = getBlobFromClaimCheck(claimCheck);
 
-    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
     try {
-      blob.download(byteArrayOutputStream);
+      int chunkSize = rangeDownloader.getChunkSize();
+      // grown as read, as payloads are often much smaller than a chunk
+      GrowableArrayOutputStream firstChunk = new GrowableArrayOutputStream(chunkSize);
+      try {
+        blob.downloadRange(0, (long) chunkSize, firstChunk);
+      } catch (StorageException e) {
+        if (e.getHttpStatusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+          // empty blob
+          return new byte[0];
+        }
+        throw e;
+      }
+      int firstChunkLength = firstChunk.size();
+      // the total length, from the Content-Range of the response
+      long blobSize = blob.getProperties().getLength();
+      if (blobSize <= firstChunkLength) {
+        return firstChunk.toArray();
+      }
+
+      byte[] payload = ParallelRangeDownloader.allocate(blobSize);
+      firstChunk.copyTo(payload);
+      // blob objects are not thread safe, use one per range
+      rangeDownloader.download(payload, firstChunkLength,
+          (offset, target, targetOffset, length) -> getBlobFromClaimCheck(claimCheck)
+              .downloadRangeToByteArray(offset, (long) length, target, targetOffset));
+      return payload;
     } catch (StorageException e) {
       throw new KafkaStorageException(e);
     }
-
-    return byteArrayOutputStream.toByteArray();
   }
 
   private CloudBlockBlob getBlobFromClaimCheck(ClaimCheck claimCheck) {
@@ -176,5 +242,17 @@ public class AzureBlobStorageClaimCheckBackendV8 implements ClaimCheckBackend {
 
     createContainerIfNotExists = config.getBoolean(
         AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS);
+
+    rangeDownloader = new ParallelRangeDownloader(
+        config.getInt(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG),
+        config.getInt(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG),
+        "claim-check-azure-download", ClaimCheckExecutorType.fromConfigs(configs));
+  }
+
+  @Override
+  public void close() {
+    if (rangeDownloader != null) {
+      rangeDownloader.close();
+    }
   }
 }
@@ -1,6 +1,8 @@
 package se.irori.kafka.claimcheck.azurev8;
 
 import static se.irori.kafka.claimcheck.azurev8.AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS;
+import static se.irori.kafka.claimcheck.azurev8.AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG;
+import static se.irori.kafka.claimcheck.azurev8.AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG;
 import static se.irori.kafka.claimcheck.azurev8.AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG;
 import static se.irori.kafka.claimcheck.azurev8.AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_ENDPOINT_CONFIG;
 import static se.irori.kafka.claimcheck.azurev8.AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_SASTOKEN_FROM_CONFIG;
@@ -43,9 +45,20 @@ public class AzureClaimCheckConfig extends AbstractConfig {
       + " specify the SAS token value explicitly.";
 
   public static final String CREATE_CONTAINER_DOCS = "Create the container if it does not exist. "
+      + "Checked once per topic, and again if a check in finds the container deleted. "
       + "*Note* this seems to require a SAS token with full account access. This does not work"
       + " well with SAS tokens limited to a specific container (topic)";
 
+  public static final String DOWNLOAD_CHUNK_SIZE_DOCS = "Payloads larger than this are checked"
+      + " out as concurrent range reads of this size, into a pre-sized array.";
+
+  public static final int DOWNLOAD_CHUNK_SIZE_BYTES_DEFAULT = 4 * 1024 * 1024;
+
+  public static final String DOWNLOAD_MAX_CONCURRENCY_DOCS = "Maximum number of range reads in"
+      + " parallel, shared by all check outs of the backend instance.";
+
+  public static final int DOWNLOAD_MAX_CONCURRENCY_DEFAULT = 8;
+
   enum SasTokenFromMechanism {
     VALUE, ENV, FILE
   }
@@ -64,6 +77,14 @@ public class AzureClaimCheckConfig extends AbstractConfig {
     base.define(AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, ConfigDef.Type.BOOLEAN, false,
         ConfigDef.Importance.MEDIUM, CREATE_CONTAINER_DOCS);
 
+    base.define(AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG, ConfigDef.Type.INT,
+        DOWNLOAD_CHUNK_SIZE_BYTES_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, DOWNLOAD_CHUNK_SIZE_DOCS);
+
+    base.define(AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG, ConfigDef.Type.INT,
+        DOWNLOAD_MAX_CONCURRENCY_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, DOWNLOAD_MAX_CONCURRENCY_DOCS);
+
     return base;
   }
 
@@ -178,5 +199,11 @@ public class AzureClaimCheckConfig extends AbstractConfig {
     public static final String AZURE_CREATE_CONTAINER_IF_NOT_EXISTS
         = "azure.blob.create.container.if.not.exists";
 
+    public static final String AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG
+        = "azure.blob.download.chunk.size.bytes";
+
+    public static final String AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG
+        = "azure.blob.download.max.concurrency";
+
   }
 }
@@ -79,6 +79,28 @@ public class AzureClaimCheckConfigTest {
     unit = AzureClaimCheckConfig.validatedConfig(config);
   }
 
+  @Test
+  public void testDownloadDefaults() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+
+    assertEquals(Integer.valueOf(AzureClaimCheckConfig.DOWNLOAD_CHUNK_SIZE_BYTES_DEFAULT),
+        unit.getInt(Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG));
+    assertEquals(Integer.valueOf(AzureClaimCheckConfig.DOWNLOAD_MAX_CONCURRENCY_DEFAULT),
+        unit.getInt(Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG));
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testDownloadConcurrencyError() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG, "0");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+  }
+
   @Test
   public void generateDocs() {
     ConfigDef configDef = AzureClaimCheckConfig.buildConfigDef(new ConfigDef());
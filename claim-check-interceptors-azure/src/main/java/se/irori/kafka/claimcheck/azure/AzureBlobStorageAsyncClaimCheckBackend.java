@@ -0,0 +1,472 @@
+package se.irori.kafka.claimcheck.azure;
+
+import com.azure.core.util.BinaryData;
+import com.azure.core.util.FluxUtil;
+import com.azure.storage.blob.BlobAsyncClient;
+import com.azure.storage.blob.BlobContainerAsyncClient;
+import com.azure.storage.blob.BlobServiceAsyncClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.BlobErrorCode;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import se.irori.kafka.claimcheck.ClaimCheck;
+import se.irori.kafka.claimcheck.ClaimCheckBackend;
+import se.irori.kafka.claimcheck.DirectBufferPool;
+import se.irori.kafka.claimcheck.ParallelRangeDownloader;
+import se.irori.kafka.claimcheck.ReadAheadInputStream;
+
+/**
+ * Implementation of the ClaimCheckBackend backed by Azure Blob Storage v12+ SDK, on the
+ * non-blocking {@link BlobServiceAsyncClient}.
+ *
+ * <p>Transfers run on the event loop threads of the SDK's HTTP client, so that
+ * {@link #checkInAsync(ProducerRecord, Executor)}, {@link #checkInBatchAsync(List, Executor)}
+ * and {@link #checkOutAsync(ClaimCheck, Executor)} keep many transfers in flight without a
+ * thread each. The executors are only used to complete the returned futures on, so that
+ * continuations of the caller do not run on the event loop. The blocking methods wait for the
+ * same transfers.
+ *
+ * <p>Takes the same configuration as {@link AzureBlobStorageClaimCheckBackend}, and issues claim
+ * checks compatible with it.
+ */
+public class AzureBlobStorageAsyncClaimCheckBackend implements ClaimCheckBackend {
+
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  private static final String ANY_ETAG = "*";
+
+  /**
+   * Size of the buffers a streaming payload is read in.
+   */
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+  private final ConcurrentHashMap<String, BlobContainerAsyncClient> topicContainerClients
+      = new ConcurrentHashMap<>();
+
+  /**
+   * Topics with a container known to exist, to only check once per topic.
+   */
+  private final Set<String> verifiedContainers = ConcurrentHashMap.newKeySet();
+
+  private BlobServiceAsyncClient blobServiceAsyncClient;
+
+  private BlobServiceClient blobServiceClient;
+
+  private boolean createContainerIfNotExists = false;
+
+  private ParallelTransferOptions uploadParallelTransferOptions;
+
+  private int downloadChunkSize;
+
+  private int downloadMaxConcurrency;
+
+  private int checkInBatchMaxConcurrency;
+
+  private int readAheadChunks;
+
+  private ReadAheadInputStream.Budget readAheadBudget;
+
+  private boolean contentAddressed = false;
+
+  private boolean compactReference = false;
+
+  /**
+   * Recently checked in content addressed blobs, by topic and name.
+   */
+  private RecentBlobs recentBlobs;
+
+  @Override
+  public ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord) {
+    return checkInMono(largeRecord).block();
+  }
+
+  @Override
+  public CompletableFuture<ClaimCheck> checkInAsync(ProducerRecord<byte[], byte[]> largeRecord,
+                                                    Executor executor) {
+    return toFuture(checkInMono(largeRecord), executor);
+  }
+
+  @Override
+  public List<ClaimCheck> checkInBatch(List<ProducerRecord<byte[], byte[]>> largeRecords) {
+    return checkInBatchMono(largeRecords).block();
+  }
+
+  @Override
+  public CompletableFuture<List<ClaimCheck>> checkInBatchAsync(
+      List<ProducerRecord<byte[], byte[]>> largeRecords, Executor executor) {
+    return toFuture(checkInBatchMono(largeRecords), executor);
+  }
+
+  /**
+   * Upload the records of a batch concurrently, keeping the claim checks in record order.
+   */
+  private Mono<List<ClaimCheck>> checkInBatchMono(
+      List<ProducerRecord<byte[], byte[]>> largeRecords) {
+    return Flux.fromIterable(largeRecords)
+        .flatMapSequential(this::checkInMono, checkInBatchMaxConcurrency)
+        .collectList();
+  }
+
+  private Mono<ClaimCheck> checkInMono(ProducerRecord<byte[], byte[]> largeRecord) {
+    return getVerifiedContainerClient(largeRecord.topic())
+        .flatMap(blobContainerClient -> {
+          if (contentAddressed) {
+            return checkInContentAddressed(blobContainerClient, largeRecord);
+          }
+          BlobAsyncClient blobClient =
+              blobContainerClient.getBlobAsyncClient(UUID.randomUUID().toString());
+          return uploadRetryable(blobContainerClient, blobClient,
+              new BlobParallelUploadOptions(BinaryData.fromBytes(largeRecord.value())))
+              .thenReturn(claimCheck(blobClient));
+        });
+  }
+
+  /**
+   * Check in a payload as a blob named by its hash, like
+   * {@link AzureBlobStorageClaimCheckBackend}. The payload is hashed on the parallel scheduler,
+   * to not hold up the event loop.
+   */
+  private Mono<ClaimCheck> checkInContentAddressed(BlobContainerAsyncClient blobContainerClient,
+                                                   ProducerRecord<byte[], byte[]> largeRecord) {
+    byte[] payload = largeRecord.value() == null ? new byte[0] : largeRecord.value();
+    return Mono.fromCallable(() -> AzureBlobStorageClaimCheckBackend.sha256Hex(payload))
+        .subscribeOn(Schedulers.parallel())
+        .flatMap(blobName -> {
+          BlobAsyncClient blobClient = blobContainerClient.getBlobAsyncClient(blobName);
+          ClaimCheck claimCheck = claimCheck(blobClient);
+          String cacheKey = largeRecord.topic() + "/" + blobName;
+          if (recentBlobs.contains(cacheKey)) {
+            return Mono.just(claimCheck);
+          }
+          return refresh(blobClient)
+              .flatMap(found -> found ? Mono.<Void>empty()
+                  : uploadRetryable(blobContainerClient, blobClient,
+                      new BlobParallelUploadOptions(BinaryData.fromBytes(payload))
+                          .setRequestConditions(new BlobRequestConditions()
+                              .setIfNoneMatch(ANY_ETAG)))
+                      // checked in concurrently, by this or another producer
+                      .onErrorResume(BlobStorageException.class,
+                          e -> BlobErrorCode.BLOB_ALREADY_EXISTS.equals(e.getErrorCode())
+                              || BlobErrorCode.CONDITION_NOT_MET.equals(e.getErrorCode())
+                              ? Mono.empty() : Mono.error(e)))
+              .then(Mono.fromRunnable(() -> recentBlobs.add(cacheKey)))
+              .thenReturn(claimCheck);
+        });
+  }
+
+  /**
+   * Refresh the last modified time of a blob, if it exists.
+   *
+   * @return false if the blob, or its container, is not found
+   */
+  private static Mono<Boolean> refresh(BlobAsyncClient blobClient) {
+    return blobClient.setMetadata(Collections.emptyMap())
+        .thenReturn(true)
+        .onErrorResume(BlobStorageException.class,
+            e -> AzureBlobStorageClaimCheckBackend.isNotFound(e)
+                ? Mono.just(false) : Mono.error(e));
+  }
+
+  /**
+   * Upload a byte array payload, that is retried once if the container is found deleted.
+   */
+  private Mono<Void> uploadRetryable(BlobContainerAsyncClient blobContainerClient,
+                                     BlobAsyncClient blobClient,
+                                     BlobParallelUploadOptions options) {
+    return upload(blobClient, options)
+        .onErrorResume(BlobStorageException.class, e -> {
+          if (!isContainerNotFound(e)) {
+            return Mono.error(e);
+          }
+          // container deleted since verified, create it again and retry once
+          return createContainer(blobContainerClient)
+              .then(Mono.defer(() -> upload(blobClient, options)));
+        });
+  }
+
+  private Mono<Void> upload(BlobAsyncClient blobClient, BlobParallelUploadOptions options) {
+    return blobClient.uploadWithResponse(options
+        .setParallelTransferOptions(uploadParallelTransferOptions)).then();
+  }
+
+  @Override
+  public ClaimCheck checkInStreaming(String topic, InputStream payload, long payloadSize) {
+    return getVerifiedContainerClient(topic)
+        .flatMap(blobContainerClient -> {
+          BlobAsyncClient blobClient =
+              blobContainerClient.getBlobAsyncClient(UUID.randomUUID().toString());
+          // blocking reads, off the event loop, as the blocking client does
+          Flux<ByteBuffer> data = FluxUtil.toFluxByteBuffer(payload, STREAM_BUFFER_SIZE)
+              .subscribeOn(Schedulers.boundedElastic());
+          return upload(blobClient, new BlobParallelUploadOptions(data))
+              .onErrorResume(BlobStorageException.class, e -> {
+                if (isContainerNotFound(e)) {
+                  // the stream may be consumed and can not be retried, prepare for the next
+                  return createContainer(blobContainerClient).then(Mono.error(e));
+                }
+                return Mono.error(e);
+              })
+              .thenReturn(claimCheck(blobClient));
+        })
+        .block();
+  }
+
+  /**
+   * Get the container client for a topic, creating the container if configured to and not yet
+   * verified to exist.
+   */
+  private Mono<BlobContainerAsyncClient> getVerifiedContainerClient(String topic) {
+    BlobContainerAsyncClient blobContainerClient =
+        topicContainerClients.computeIfAbsent(topic,
+            t -> blobServiceAsyncClient.getBlobContainerAsyncClient(t));
+
+    if (!createContainerIfNotExists || verifiedContainers.contains(topic)) {
+      return Mono.just(blobContainerClient);
+    }
+    return createContainer(blobContainerClient)
+        .then(Mono.fromRunnable(() -> verifiedContainers.add(topic)))
+        .thenReturn(blobContainerClient);
+  }
+
+  private static Mono<Void> createContainer(BlobContainerAsyncClient blobContainerClient) {
+    // check first, create needs more permissions than exists
+    return blobContainerClient.exists()
+        .flatMap(exists -> exists ? Mono.<Void>empty() : blobContainerClient.create()
+            // created concurrently, e.g. by another producer
+            .onErrorResume(BlobStorageException.class,
+                e -> BlobErrorCode.CONTAINER_ALREADY_EXISTS.equals(e.getErrorCode())
+                    ? Mono.empty() : Mono.error(e)));
+  }
+
+  private boolean isContainerNotFound(BlobStorageException e) {
+    return createContainerIfNotExists
+        && BlobErrorCode.CONTAINER_NOT_FOUND.equals(e.getErrorCode());
+  }
+
+  @Override
+  public byte[] checkOut(ClaimCheck claimCheck) {
+    return checkOutMono(claimCheck).block();
+  }
+
+  @Override
+  public CompletableFuture<byte[]> checkOutAsync(ClaimCheck claimCheck, Executor executor) {
+    return toFuture(checkOutMono(claimCheck), executor);
+  }
+
+  /**
+   * Check out a payload. The first chunk is read with a range request, which also gives the blob
+   * size. Larger blobs are then read into an array of that size, with concurrent range requests.
+   */
+  private Mono<byte[]> checkOutMono(ClaimCheck claimCheck) {
+    return Mono.defer(() -> {
+      BlobAsyncClient blobClient = getBlobClientFromClaimCheck(claimCheck);
+      return blobClient.downloadStreamWithResponse(new BlobRange(0, (long) downloadChunkSize),
+              null, null, false)
+          .flatMap(response -> FluxUtil.collectBytesInByteBufferStream(response.getValue())
+              .flatMap(firstChunk -> {
+                long blobSize = AzureBlobStorageClaimCheckBackend.getBlobSize(
+                    response.getDeserializedHeaders().getContentRange(), firstChunk.length);
+                if (blobSize <= firstChunk.length) {
+                  return Mono.just(firstChunk);
+                }
+                byte[] payload = ParallelRangeDownloader.allocate(blobSize);
+                System.arraycopy(firstChunk, 0, payload, 0, firstChunk.length);
+                return downloadRest(blobClient, ByteBuffer.wrap(payload), firstChunk.length)
+                    .thenReturn(payload);
+              }))
+          .onErrorResume(BlobStorageException.class,
+              // empty blob
+              e -> e.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE
+                  ? Mono.just(new byte[0]) : Mono.error(e));
+    });
+  }
+
+  @Override
+  public ByteBuffer checkOutBuffer(ClaimCheck claimCheck, DirectBufferPool pool) {
+    return checkOutBufferMono(claimCheck, pool).block();
+  }
+
+  /**
+   * Check out a payload into direct buffers from the pool, reading ranges as
+   * {@link #checkOutMono(ClaimCheck)} does. Buffers are released to the pool on errors.
+   */
+  private Mono<ByteBuffer> checkOutBufferMono(ClaimCheck claimCheck, DirectBufferPool pool) {
+    return Mono.defer(() -> {
+      BlobAsyncClient blobClient = getBlobClientFromClaimCheck(claimCheck);
+      ByteBuffer firstChunk = pool.acquire(downloadChunkSize);
+      return blobClient.downloadStreamWithResponse(new BlobRange(0, (long) downloadChunkSize),
+              null, null, false)
+          .flatMap(response -> response.getValue()
+              .reduce(firstChunk, ByteBuffer::put)
+              .map(chunk -> AzureBlobStorageClaimCheckBackend.getBlobSize(
+                  response.getDeserializedHeaders().getContentRange(), chunk.position())))
+          .onErrorResume(BlobStorageException.class,
+              // empty blob
+              e -> e.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE
+                  ? Mono.just(0L) : Mono.error(e))
+          .doOnError(e -> pool.release(firstChunk))
+          .flatMap(blobSize -> {
+            ((Buffer) firstChunk).flip();
+            int firstChunkLength = firstChunk.limit();
+            if (blobSize <= firstChunkLength) {
+              return Mono.just(firstChunk);
+            }
+            ByteBuffer payload;
+            try {
+              payload = ParallelRangeDownloader.allocate(blobSize, pool).put(firstChunk);
+            } finally {
+              pool.release(firstChunk);
+            }
+            return downloadRest(blobClient, payload, firstChunkLength)
+                .doOnError(e -> pool.release(payload))
+                .then(Mono.fromCallable(() -> {
+                  ((Buffer) payload).rewind();
+                  return payload;
+                }));
+          });
+    });
+  }
+
+  /**
+   * Fill a buffer from an offset to its limit, with concurrent range requests.
+   */
+  private Mono<Void> downloadRest(BlobAsyncClient blobClient, ByteBuffer payload,
+                                  int fromOffset) {
+    int size = payload.limit();
+    int ranges = (int) ((size - (long) fromOffset + downloadChunkSize - 1) / downloadChunkSize);
+    return Flux.range(0, ranges)
+        .flatMap(range -> {
+          int offset = fromOffset + range * downloadChunkSize;
+          int length = Math.min(downloadChunkSize, size - offset);
+          // a view per range, as concurrent reads can not share a position
+          ByteBuffer target = payload.duplicate();
+          ((Buffer) target).limit(offset + length).position(offset);
+          return downloadRange(blobClient, offset, target, null);
+        }, downloadMaxConcurrency)
+        .then();
+  }
+
+  /**
+   * Read a range of a blob into the remaining bytes of a buffer.
+   */
+  private static Mono<Void> downloadRange(BlobAsyncClient blobClient, long offset,
+                                          ByteBuffer target, BlobRequestConditions conditions) {
+    int length = target.remaining();
+    return blobClient.downloadStreamWithResponse(new BlobRange(offset, (long) length), null,
+            conditions, false)
+        .flatMap(response -> response.getValue()
+            .reduce(0, (written, buffer) -> {
+              int size = buffer.remaining();
+              if (written + size > length) {
+                throw new KafkaStorageException("Range at " + offset + " longer than "
+                    + length + " bytes");
+              }
+              target.put(buffer);
+              return written + size;
+            }))
+        .flatMap(written -> written == length ? Mono.<Void>empty()
+            : Mono.error(new KafkaStorageException("Range at " + offset + " ended after "
+                + written + " of " + length + " bytes")));
+  }
+
+  private BlobAsyncClient getBlobClientFromClaimCheck(ClaimCheck claimCheck) {
+    BlobReference reference = BlobReference.of(claimCheck);
+
+    BlobContainerAsyncClient blobContainerClient =
+        topicContainerClients.computeIfAbsent(reference.getContainerName(),
+            t -> blobServiceAsyncClient.getBlobContainerAsyncClient(t));
+
+    return blobContainerClient.getBlobAsyncClient(reference.getBlobName());
+  }
+
+  private ClaimCheck claimCheck(BlobAsyncClient blobClient) {
+    return BlobReference.claimCheck(compactReference, blobClient.getContainerName(),
+        blobClient.getBlobName(), blobClient.getBlobUrl());
+  }
+
+  /**
+   * Stream a payload, reading chunks ahead with concurrent range requests. The blocking range
+   * reads run on the bounded elastic scheduler, as those of the blocking client do.
+   */
+  @Override
+  public InputStream checkOutStreaming(ClaimCheck claimCheck) {
+    if (readAheadChunks == 0) {
+      BlobReference reference = BlobReference.of(claimCheck);
+      return blobServiceClient.getBlobContainerClient(reference.getContainerName())
+          .getBlobClient(reference.getBlobName())
+          .openInputStream();
+    }
+    BlobAsyncClient blobClient = getBlobClientFromClaimCheck(claimCheck);
+    BlobProperties properties = blobClient.getProperties().blockOptional()
+        .orElseThrow(() -> new KafkaStorageException("No properties for blob "
+            + claimCheck.getReference()));
+    BlobRequestConditions conditions = new BlobRequestConditions()
+        .setIfMatch(properties.getETag());
+    return new ReadAheadInputStream(properties.getBlobSize(), downloadChunkSize, readAheadChunks,
+        runnable -> Schedulers.boundedElastic().schedule(runnable), readAheadBudget,
+        (offset, target, targetOffset, length) -> downloadRange(blobClient, offset,
+            ByteBuffer.wrap(target, targetOffset, length), conditions).block());
+  }
+
+  /**
+   * Complete a future with the result of a transfer, on the given executor.
+   */
+  private static <T> CompletableFuture<T> toFuture(Mono<T> transfer, Executor executor) {
+    return transfer.publishOn(Schedulers.fromExecutor(executor)).toFuture();
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+    AzureClaimCheckConfig config = AzureClaimCheckConfig.validatedConfig(configs);
+
+    BlobServiceClientBuilder blobServiceClientBuilder = config.getBlobServiceClientBuilder();
+    blobServiceAsyncClient = blobServiceClientBuilder.buildAsyncClient();
+    blobServiceClient = blobServiceClientBuilder.buildClient();
+
+    createContainerIfNotExists = config.getBoolean(
+        AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS);
+
+    uploadParallelTransferOptions = config.getUploadParallelTransferOptions();
+
+    contentAddressed = config.getBoolean(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG);
+    compactReference = config.getBoolean(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKIN_COMPACT_REFERENCE_CONFIG);
+    recentBlobs = new RecentBlobs(
+        config.getInt(AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_CONFIG),
+        config.getLong(
+            AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG));
+
+    checkInBatchMaxConcurrency = config.getInt(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKIN_BATCH_MAX_CONCURRENCY_CONFIG);
+    downloadChunkSize =
+        config.getInt(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG);
+    downloadMaxConcurrency =
+        config.getInt(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG);
+    readAheadChunks = config.getInt(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_CONFIG);
+    readAheadBudget = ReadAheadInputStream.sharedBudget(config.getLong(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKOUT_STREAMING_BUFFER_MAX_BYTES_CONFIG));
+  }
+}
@@ -1,125 +1,435 @@
 package se.irori.kafka.claimcheck.azure;
 
 import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
-import com.azure.storage.blob.BlobUrlParts;
-import java.io.ByteArrayInputStream;
+import com.azure.storage.blob.models.BlobDownloadResponse;
+import com.azure.storage.blob.models.BlobErrorCode;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
 import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.errors.KafkaStorageException;
+import se.irori.kafka.claimcheck.ArrayRangeOutputStream;
+import se.irori.kafka.claimcheck.BufferRangeOutputStream;
 import se.irori.kafka.claimcheck.ClaimCheck;
 import se.irori.kafka.claimcheck.ClaimCheckBackend;
+import se.irori.kafka.claimcheck.ClaimCheckExecutorType;
+import se.irori.kafka.claimcheck.DirectBufferPool;
+import se.irori.kafka.claimcheck.GrowableArrayOutputStream;
+import se.irori.kafka.claimcheck.ParallelRangeDownloader;
+import se.irori.kafka.claimcheck.ReadAheadInputStream;
 
 /**
  * Implementation of the ClaimCheckBackend backed by Azure Blob Storage v12+ SDK.
+ *
+ * <p>Blobs get random names, or with `azure.blob.checkin.content.addressed` the hash of their
+ * content, so that repeated payloads are stored once. With
+ * `azure.blob.checkin.compact.reference`, they are referred to by compact Claim Checks instead of
+ * their URLs. Both are checked out.
  */
 public class AzureBlobStorageClaimCheckBackend implements ClaimCheckBackend {
 
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  private static final String ANY_ETAG = "*";
+
   private final ConcurrentHashMap<String, BlobContainerClient> topicContainerClients
       = new ConcurrentHashMap<>();
 
+  /**
+   * Topics with a container known to exist, to only check once per topic.
+   */
+  private final Set<String> verifiedContainers = ConcurrentHashMap.newKeySet();
+
   private BlobServiceClient blobServiceClient;
 
   private boolean createContainerIfNotExists = false;
 
+  private ParallelTransferOptions uploadParallelTransferOptions;
+
+  private ParallelRangeDownloader rangeDownloader;
+
+  private int readAheadChunks;
+
+  private ReadAheadInputStream.Budget readAheadBudget;
+
+  private boolean contentAddressed = false;
+
+  private boolean compactReference = false;
+
+  /**
+   * Recently checked in content addressed blobs, by topic and name.
+   */
+  private RecentBlobs recentBlobs;
+
   @Override
   public ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord) {
-    BlobContainerClient blobContainerClient =
-        topicContainerClients.computeIfAbsent(largeRecord.topic(),
-            t -> blobServiceClient.getBlobContainerClient(t));
+    BlobContainerClient blobContainerClient = getVerifiedContainerClient(largeRecord.topic());
 
-    if (createContainerIfNotExists && !blobContainerClient.exists()) {
-      blobContainerClient.create();
+    if (contentAddressed) {
+      return checkInContentAddressed(blobContainerClient, largeRecord);
     }
 
     String blobName = UUID.randomUUID().toString();
     BlobClient blobClient = blobContainerClient.getBlobClient(blobName);
+    uploadRetryable(blobContainerClient, blobClient,
+        new BlobParallelUploadOptions(BinaryData.fromBytes(largeRecord.value())));
 
-    blobClient.upload(new ByteArrayInputStream(largeRecord.value()), largeRecord.value().length);
-    String blobUrl = blobClient.getBlobUrl();
-    return new ClaimCheck(blobUrl);
+    return claimCheck(blobClient);
+  }
+
+  /**
+   * Check in a payload as a blob named by its hash, unless it is recently checked in, or found
+   * to exist. A blob found is refreshed, so that lifecycle rules deleting blobs some time after
+   * their last modification count from this check in. The upload is conditional on the blob not
+   * existing, in case the same payload is checked in concurrently.
+   */
+  private ClaimCheck checkInContentAddressed(BlobContainerClient blobContainerClient,
+                                             ProducerRecord<byte[], byte[]> largeRecord) {
+    byte[] payload = largeRecord.value() == null ? new byte[0] : largeRecord.value();
+    String blobName = sha256Hex(payload);
+    BlobClient blobClient = blobContainerClient.getBlobClient(blobName);
+    String cacheKey = largeRecord.topic() + "/" + blobName;
+
+    if (!recentBlobs.contains(cacheKey)) {
+      if (!refresh(blobClient)) {
+        try {
+          uploadRetryable(blobContainerClient, blobClient,
+              new BlobParallelUploadOptions(BinaryData.fromBytes(payload))
+                  .setRequestConditions(new BlobRequestConditions()
+                      .setIfNoneMatch(ANY_ETAG)));
+        } catch (BlobStorageException e) {
+          // checked in concurrently, by this or another producer
+          if (!BlobErrorCode.BLOB_ALREADY_EXISTS.equals(e.getErrorCode())
+              && !BlobErrorCode.CONDITION_NOT_MET.equals(e.getErrorCode())) {
+            throw e;
+          }
+        }
+      }
+      recentBlobs.add(cacheKey);
+    }
+
+    return claimCheck(blobClient);
+  }
+
+  /**
+   * Refresh the last modified time of a blob, if it exists.
+   *
+   * @return false if the blob, or its container, is not found
+   */
+  private static boolean refresh(BlobClient blobClient) {
+    try {
+      blobClient.setMetadata(Collections.emptyMap());
+      return true;
+    } catch (BlobStorageException e) {
+      if (isNotFound(e)) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  static boolean isNotFound(BlobStorageException e) {
+    return BlobErrorCode.BLOB_NOT_FOUND.equals(e.getErrorCode())
+        || BlobErrorCode.CONTAINER_NOT_FOUND.equals(e.getErrorCode());
+  }
+
+  private ClaimCheck claimCheck(BlobClient blobClient) {
+    return BlobReference.claimCheck(compactReference, blobClient.getContainerName(),
+        blobClient.getBlobName(), blobClient.getBlobUrl());
+  }
+
+  static String sha256Hex(byte[] payload) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // required of every Java platform
+      throw new IllegalStateException(e);
+    }
+    byte[] hash = digest.digest(payload);
+    StringBuilder hex = new StringBuilder(hash.length * 2);
+    for (byte b : hash) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+          .append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Upload a byte array payload, that can be retried once if the container is found deleted.
+   */
+  private void uploadRetryable(BlobContainerClient blobContainerClient, BlobClient blobClient,
+                               BlobParallelUploadOptions options) {
+    try {
+      upload(blobClient, options);
+    } catch (BlobStorageException e) {
+      if (!isContainerNotFound(e)) {
+        throw e;
+      }
+      // container deleted since verified, create it again and retry once
+      createContainer(blobContainerClient);
+      upload(blobClient, options);
+    }
   }
 
   @Override
   public ClaimCheck checkInStreaming(String topic, InputStream payload, long payloadSize) {
+    BlobContainerClient blobContainerClient = getVerifiedContainerClient(topic);
+
+    String blobName = UUID.randomUUID().toString();
+    BlobClient blobClient = blobContainerClient.getBlobClient(blobName);
+
+    try {
+      // an unknown size, e.g. when compressed while read, is staged in blocks as read
+      upload(blobClient, payloadSize < 0 ? new BlobParallelUploadOptions(payload)
+          : new BlobParallelUploadOptions(payload, payloadSize));
+    } catch (BlobStorageException e) {
+      if (isContainerNotFound(e)) {
+        // the stream may be consumed and can not be retried, prepare for the next check in
+        createContainer(blobContainerClient);
+      }
+      throw e;
+    }
+    return claimCheck(blobClient);
+  }
+
+  /**
+   * Upload a payload, staging blocks in parallel if large. Byte array payloads are passed as
+   * {@link BinaryData} wrapping the array, without copying it. Streams are passed as is, since
+   * the SDK reads all of a {@link BinaryData} stream into memory.
+   */
+  private void upload(BlobClient blobClient, BlobParallelUploadOptions options) {
+    blobClient.uploadWithResponse(options
+        .setParallelTransferOptions(uploadParallelTransferOptions), null, Context.NONE);
+  }
+
+  /**
+   * Get the container client for a topic, creating the container if configured to and not yet
+   * verified to exist.
+   */
+  private BlobContainerClient getVerifiedContainerClient(String topic) {
     BlobContainerClient blobContainerClient =
         topicContainerClients.computeIfAbsent(topic,
             t -> blobServiceClient.getBlobContainerClient(t));
 
-    if (createContainerIfNotExists && !blobContainerClient.exists()) {
-      blobContainerClient.create();
+    if (createContainerIfNotExists && !verifiedContainers.contains(topic)) {
+      createContainer(blobContainerClient);
+      verifiedContainers.add(topic);
     }
+    return blobContainerClient;
+  }
 
-    String blobName = UUID.randomUUID().toString();
-    BlobClient blobClient = blobContainerClient.getBlobClient(blobName);
+  private static void createContainer(BlobContainerClient blobContainerClient) {
+    // check first, create needs more permissions than exists
+    if (blobContainerClient.exists()) {
+      return;
+    }
+    try {
+      blobContainerClient.create();
+    } catch (BlobStorageException e) {
+      // created concurrently, e.g. by another producer
+      if (!BlobErrorCode.CONTAINER_ALREADY_EXISTS.equals(e.getErrorCode())) {
+        throw e;
+      }
+    }
+  }
 
-    blobClient.upload(payload, payloadSize);
-    String blobUrl = blobClient.getBlobUrl();
-    return new ClaimCheck(blobUrl);
+  private boolean isContainerNotFound(BlobStorageException e) {
+    return createContainerIfNotExists
+        && BlobErrorCode.CONTAINER_NOT_FOUND.equals(e.getErrorCode());
   }
 
+  /**
+   * Check out a payload. The first chunk is read with a range request, which also gives the blob
+   * size. Larger blobs are then read into an array of that size, with concurrent range requests.
+   */
   @Override
   public byte[] checkOut(ClaimCheck claimCheck) {
     BlobClient blobClient = getBlobClientFromClaimCheck(claimCheck);
 
-    BinaryData binaryData = blobClient.downloadContent();
+    int chunkSize = rangeDownloader.getChunkSize();
+    // grown as read, as payloads are often much smaller than a chunk
+    GrowableArrayOutputStream firstChunk = new GrowableArrayOutputStream(chunkSize);
+    BlobDownloadResponse response;
+    try {
+      response = downloadRange(blobClient, firstChunk, 0, chunkSize, null);
+    } catch (BlobStorageException e) {
+      if (e.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+        // empty blob
+        return new byte[0];
+      }
+      throw e;
+    }
+    int firstChunkLength = firstChunk.size();
+    long blobSize = getBlobSize(response.getDeserializedHeaders().getContentRange(),
+        firstChunkLength);
+    if (blobSize <= firstChunkLength) {
+      return firstChunk.toArray();
+    }
 
-    return binaryData.toBytes();
+    byte[] payload = ParallelRangeDownloader.allocate(blobSize);
+    firstChunk.copyTo(payload);
+    rangeDownloader.download(payload, firstChunkLength,
+        (offset, target, targetOffset, length) -> downloadRange(blobClient,
+            new ArrayRangeOutputStream(target, targetOffset, length), offset, length, null));
+    return payload;
   }
 
-  private BlobClient getBlobClientFromClaimCheck(ClaimCheck claimCheck) {
-    String blobUrl = claimCheck.getReference();
+  /**
+   * Check out a payload into direct buffers from the pool, reading ranges as
+   * {@link #checkOut(ClaimCheck)} does.
+   */
+  @Override
+  public ByteBuffer checkOutBuffer(ClaimCheck claimCheck, DirectBufferPool pool) {
+    BlobClient blobClient = getBlobClientFromClaimCheck(claimCheck);
+
+    int chunkSize = rangeDownloader.getChunkSize();
+    ByteBuffer firstChunk = pool.acquire(chunkSize);
+    BlobDownloadResponse response;
+    try {
+      response = downloadRange(blobClient, new BufferRangeOutputStream(firstChunk), 0, chunkSize,
+          null);
+    } catch (BlobStorageException e) {
+      if (e.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+        // empty blob
+        ((Buffer) firstChunk).limit(0);
+        return firstChunk;
+      }
+      pool.release(firstChunk);
+      throw e;
+    } catch (RuntimeException e) {
+      pool.release(firstChunk);
+      throw e;
+    }
+    ((Buffer) firstChunk).flip();
+    int firstChunkLength = firstChunk.limit();
+    long blobSize = getBlobSize(response.getDeserializedHeaders().getContentRange(),
+        firstChunkLength);
+    if (blobSize <= firstChunkLength) {
+      return firstChunk;
+    }
 
-    BlobUrlParts parts;
+    ByteBuffer payload;
+    try {
+      payload = ParallelRangeDownloader.allocate(blobSize, pool).put(firstChunk);
+    } finally {
+      pool.release(firstChunk);
+    }
     try {
-      parts = BlobUrlParts.parse(new URL(blobUrl));
-    } catch (MalformedURLException e) {
-      throw new KafkaStorageException("Bad Azure claim check url: " + blobUrl);
+      rangeDownloader.download(payload, firstChunkLength,
+          (offset, target) -> downloadRange(blobClient, new BufferRangeOutputStream(target),
+              offset, target.remaining(), null));
+    } catch (RuntimeException e) {
+      pool.release(payload);
+      throw e;
     }
+    ((Buffer) payload).rewind();
+    return payload;
+  }
+
+  private static BlobDownloadResponse downloadRange(BlobClient blobClient, OutputStream target,
+                                                    long offset, long length,
+                                                    BlobRequestConditions conditions) {
+    return blobClient.downloadStreamWithResponse(target, new BlobRange(offset, length), null,
+        conditions, false, null, Context.NONE);
+  }
+
+  /**
+   * Get the blob size from a Content-Range header, e.g. `bytes 0-4194303/209715200`.
+   */
+  static long getBlobSize(String contentRange, long downloadedLength) {
+    if (contentRange == null || contentRange.indexOf('/') < 0) {
+      return downloadedLength;
+    }
+    String size = contentRange.substring(contentRange.indexOf('/') + 1).trim();
+    if ("*".equals(size)) {
+      return downloadedLength;
+    }
+    return Long.parseLong(size);
+  }
+
+  private BlobClient getBlobClientFromClaimCheck(ClaimCheck claimCheck) {
+    BlobReference reference = BlobReference.of(claimCheck);
 
     BlobContainerClient blobContainerClient =
-        topicContainerClients.computeIfAbsent(parts.getBlobContainerName(),
+        topicContainerClients.computeIfAbsent(reference.getContainerName(),
             t -> blobServiceClient.getBlobContainerClient(t));
 
-    return blobContainerClient.getBlobClient(parts.getBlobName());
+    return blobContainerClient.getBlobClient(reference.getBlobName());
   }
 
+  /**
+   * Stream a payload, reading chunks ahead with concurrent range requests. All ranges are read
+   * from the version of the blob found when opening the stream, like the Azure SDK stream does.
+   */
   @Override
   public InputStream checkOutStreaming(ClaimCheck claimCheck) {
     BlobClient blobClient = getBlobClientFromClaimCheck(claimCheck);
-    return blobClient.openInputStream();
+    if (readAheadChunks == 0) {
+      return blobClient.openInputStream();
+    }
+    BlobProperties properties = blobClient.getProperties();
+    BlobRequestConditions conditions = new BlobRequestConditions()
+        .setIfMatch(properties.getETag());
+    return rangeDownloader.openStream(properties.getBlobSize(), readAheadChunks, readAheadBudget,
+        (offset, target, targetOffset, length) -> downloadRange(blobClient,
+            new ArrayRangeOutputStream(target, targetOffset, length), offset, length,
+            conditions));
   }
 
   @Override
   public void configure(Map<String, ?> configs) {
     AzureClaimCheckConfig config = AzureClaimCheckConfig.validatedConfig(configs);
 
-    String connectionString =
-        config.getString(AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG);
-    final BlobServiceClientBuilder blobServiceClientBuilder = new BlobServiceClientBuilder();
-    if (connectionString != null) {
-      blobServiceClientBuilder
-          .connectionString(connectionString);
-    } else {
-      blobServiceClientBuilder
-          .sasToken(config.getSasToken())
-          .endpoint(config.getString(
-              AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_ENDPOINT_CONFIG));
-    }
-
-    blobServiceClient = blobServiceClientBuilder
+    blobServiceClient = config.getBlobServiceClientBuilder()
         .buildClient();
 
     createContainerIfNotExists = config.getBoolean(
         AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS);
+
+    uploadParallelTransferOptions = config.getUploadParallelTransferOptions();
+
+    contentAddressed = config.getBoolean(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG);
+    compactReference = config.getBoolean(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKIN_COMPACT_REFERENCE_CONFIG);
+    recentBlobs = new RecentBlobs(
+        config.getInt(AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_CONFIG),
+        config.getLong(
+            AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG));
+
+    rangeDownloader = new ParallelRangeDownloader(
+        config.getInt(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG),
+        config.getInt(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG),
+        "claim-check-azure-download", ClaimCheckExecutorType.fromConfigs(configs));
+    readAheadChunks = config.getInt(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_CONFIG);
+    readAheadBudget = ReadAheadInputStream.sharedBudget(config.getLong(
+        AzureClaimCheckConfig.Keys.AZURE_CHECKOUT_STREAMING_BUFFER_MAX_BYTES_CONFIG));
   }
 
+  @Override
+  public void close() {
+    if (rangeDownloader != null) {
+      rangeDownloader.close();
+    }
+  }
 }
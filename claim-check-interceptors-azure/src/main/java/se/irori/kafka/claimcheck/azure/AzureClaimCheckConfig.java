@@ -1,14 +1,33 @@
 package se.irori.kafka.claimcheck.azure;
 
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_CHECKIN_BATCH_MAX_CONCURRENCY_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_CHECKIN_COMPACT_REFERENCE_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_CHECKOUT_STREAMING_BUFFER_MAX_BYTES_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_CONFIG;
 import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_HTTP_CONNECTION_IDLE_TIMEOUT_MS_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_HTTP_MAX_CONNECTIONS_CONFIG;
 import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG;
 import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_ENDPOINT_CONFIG;
 import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_SASTOKEN_FROM_CONFIG;
-
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_UPLOAD_BLOCK_SIZE_BYTES_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_UPLOAD_MAX_CONCURRENCY_CONFIG;
+import static se.irori.kafka.claimcheck.azure.AzureClaimCheckConfig.Keys.AZURE_UPLOAD_MAX_SINGLE_UPLOAD_SIZE_BYTES_CONFIG;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.util.HttpClientOptions;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.ParallelTransferOptions;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -43,9 +62,101 @@ public class AzureClaimCheckConfig extends AbstractConfig {
       + " specify the SAS token value explicitly.";
 
   public static final String CREATE_CONTAINER_DOCS = "Create the container if it does not exist. "
+      + "Checked once per topic, and again if a check in finds the container deleted. "
       + "*Note* this seems to require a SAS token with full account access. This does not work"
       + " well with SAS tokens limited to a specific container (topic)";
 
+  public static final String UPLOAD_BLOCK_SIZE_DOCS = "Size of the blocks a payload is staged in,"
+      + " when larger than `" + AZURE_UPLOAD_MAX_SINGLE_UPLOAD_SIZE_BYTES_CONFIG + "`.";
+
+  public static final long UPLOAD_BLOCK_SIZE_BYTES_DEFAULT = 4L * 1024 * 1024;
+
+  public static final String UPLOAD_MAX_CONCURRENCY_DOCS = "Maximum number of blocks staged in"
+      + " parallel, per payload.";
+
+  public static final int UPLOAD_MAX_CONCURRENCY_DEFAULT = 8;
+
+  public static final String UPLOAD_MAX_SINGLE_UPLOAD_SIZE_DOCS = "Payloads up to this size are"
+      + " uploaded in a single request, larger payloads are staged in blocks in parallel.";
+
+  public static final long UPLOAD_MAX_SINGLE_UPLOAD_SIZE_BYTES_DEFAULT = 8L * 1024 * 1024;
+
+  /**
+   * Service limits for block blobs.
+   */
+  private static final long MAX_BLOCK_SIZE_BYTES = 4000L * 1024 * 1024;
+
+  private static final long MAX_SINGLE_UPLOAD_SIZE_BYTES = 5000L * 1024 * 1024;
+
+  public static final String DOWNLOAD_CHUNK_SIZE_DOCS = "Payloads larger than this are checked"
+      + " out as concurrent range reads of this size, into a pre-sized array. Also the size of"
+      + " the chunks read ahead in streaming mode.";
+
+  public static final int DOWNLOAD_CHUNK_SIZE_BYTES_DEFAULT = 4 * 1024 * 1024;
+
+  public static final String DOWNLOAD_MAX_CONCURRENCY_DOCS = "Maximum number of range reads in"
+      + " parallel, shared by all check outs of the backend instance.";
+
+  public static final int DOWNLOAD_MAX_CONCURRENCY_DEFAULT = 8;
+
+  public static final String CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_DOCS = "Number of chunks of `"
+      + AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG + "` read ahead with background range reads in"
+      + " streaming mode, while the previous chunk is read. A stream holds at most this many"
+      + " chunks plus the one being read. Set to 0 for the sequential stream of the Azure SDK.";
+
+  public static final int CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_DEFAULT = 4;
+
+  public static final String CHECKOUT_STREAMING_BUFFER_MAX_BYTES_DOCS = "The budget for chunks"
+      + " read ahead by all streams in the JVM, shared with any other backend instance. The first"
+      + " backend instance configured decides the budget. When it is used up, streams read"
+      + " ahead less, and a stream with nothing left to read reads just its next chunk.";
+
+  public static final long CHECKOUT_STREAMING_BUFFER_MAX_BYTES_DEFAULT = 256L * 1024 * 1024;
+
+  public static final String CHECKIN_CONTENT_ADDRESSED_DOCS = "Name blobs by the SHA-256 hash of"
+      + " the payload, and skip the upload when a blob with the same content already exists."
+      + " Saves uploads and storage for repeated payloads, at the cost of hashing each payload."
+      + " Does not apply to streaming mode, where the payload is not known before the upload."
+      + " *Note* a blob is shared by all records with the same payload. Checking in a payload"
+      + " that exists refreshes the last modified time of its blob, unless it was checked in by"
+      + " the same backend instance within `" + AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG
+      + "`. With a lifecycle rule deleting blobs some days after their last modification, as in"
+      + " Set Blob expiry, a record can be checked out for that time less the cache TTL.";
+
+  public static final String CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_DOCS = "Number of recently"
+      + " checked in payload hashes remembered per backend instance, when `"
+      + AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG + "` is enabled. A repeated payload found in the"
+      + " cache is checked in without any request to the storage account. Set to 0 to always"
+      + " refresh the blob, or upload it if not found.";
+
+  public static final int CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_DEFAULT = 10000;
+
+  public static final String CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_DOCS = "How long a checked"
+      + " in payload hash is remembered, when `" + AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG
+      + "` is enabled. The blob of a repeated payload checked in after that is refreshed, or"
+      + " uploaded again if deleted. Keep it well under the age at which blobs are deleted by"
+      + " lifecycle rules. Set to 0 to always refresh the blob.";
+
+  public static final long CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_DEFAULT = 60L * 60 * 1000;
+
+  public static final String CHECKIN_BATCH_MAX_CONCURRENCY_DOCS = "Maximum number of blobs"
+      + " uploaded at once by a batch check in of `AzureBlobStorageAsyncClaimCheckBackend`.";
+
+  public static final int CHECKIN_BATCH_MAX_CONCURRENCY_DEFAULT = 32;
+
+  public static final String CHECKIN_COMPACT_REFERENCE_DOCS = "Refer to checked in blobs by compact"
+      + " binary claim checks of about 20 bytes plus the container name, instead of their URLs,"
+      + " and check them out without parsing a URL. Blob URLs are checked out either way, but"
+      + " consumers of earlier versions can not check out compact claim checks.";
+
+  public static final String HTTP_MAX_CONNECTIONS_DOCS = "Maximum number of HTTP connections the"
+      + " backend keeps to the storage account, shared by its sync and async clients. Not set by"
+      + " default, for the Azure SDK default. With `claimcheck.backend.shared`, the clients in the"
+      + " JVM share one backend, and so one connection pool.";
+
+  public static final String HTTP_CONNECTION_IDLE_TIMEOUT_MS_DOCS = "How long an idle HTTP"
+      + " connection is kept open for reuse. Not set by default, for the Azure SDK default.";
+
   enum SasTokenFromMechanism {
     VALUE, ENV, FILE
   }
@@ -64,9 +175,107 @@ public class AzureClaimCheckConfig extends AbstractConfig {
     base.define(AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, ConfigDef.Type.BOOLEAN, false,
         ConfigDef.Importance.MEDIUM, CREATE_CONTAINER_DOCS);
 
+    base.define(AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG, ConfigDef.Type.BOOLEAN, false,
+        ConfigDef.Importance.MEDIUM, CHECKIN_CONTENT_ADDRESSED_DOCS);
+
+    base.define(AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_CONFIG, ConfigDef.Type.INT,
+        CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_DEFAULT, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_DOCS);
+
+    base.define(AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG, ConfigDef.Type.LONG,
+        CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_DEFAULT, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_DOCS);
+
+    base.define(AZURE_CHECKIN_COMPACT_REFERENCE_CONFIG, ConfigDef.Type.BOOLEAN, false,
+        ConfigDef.Importance.LOW, CHECKIN_COMPACT_REFERENCE_DOCS);
+
+    base.define(AZURE_UPLOAD_BLOCK_SIZE_BYTES_CONFIG, ConfigDef.Type.LONG,
+        UPLOAD_BLOCK_SIZE_BYTES_DEFAULT, ConfigDef.Range.between(1, MAX_BLOCK_SIZE_BYTES),
+        ConfigDef.Importance.LOW, UPLOAD_BLOCK_SIZE_DOCS);
+
+    base.define(AZURE_UPLOAD_MAX_CONCURRENCY_CONFIG, ConfigDef.Type.INT,
+        UPLOAD_MAX_CONCURRENCY_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, UPLOAD_MAX_CONCURRENCY_DOCS);
+
+    base.define(AZURE_UPLOAD_MAX_SINGLE_UPLOAD_SIZE_BYTES_CONFIG, ConfigDef.Type.LONG,
+        UPLOAD_MAX_SINGLE_UPLOAD_SIZE_BYTES_DEFAULT,
+        ConfigDef.Range.between(1, MAX_SINGLE_UPLOAD_SIZE_BYTES),
+        ConfigDef.Importance.LOW, UPLOAD_MAX_SINGLE_UPLOAD_SIZE_DOCS);
+
+    base.define(AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG, ConfigDef.Type.INT,
+        DOWNLOAD_CHUNK_SIZE_BYTES_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, DOWNLOAD_CHUNK_SIZE_DOCS);
+
+    base.define(AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG, ConfigDef.Type.INT,
+        DOWNLOAD_MAX_CONCURRENCY_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, DOWNLOAD_MAX_CONCURRENCY_DOCS);
+
+    base.define(AZURE_CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_CONFIG, ConfigDef.Type.INT,
+        CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_DEFAULT, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_DOCS);
+
+    base.define(AZURE_CHECKOUT_STREAMING_BUFFER_MAX_BYTES_CONFIG, ConfigDef.Type.LONG,
+        CHECKOUT_STREAMING_BUFFER_MAX_BYTES_DEFAULT,
+        ConfigDef.Range.between(1, Integer.MAX_VALUE),
+        ConfigDef.Importance.LOW, CHECKOUT_STREAMING_BUFFER_MAX_BYTES_DOCS);
+
+    base.define(AZURE_CHECKIN_BATCH_MAX_CONCURRENCY_CONFIG, ConfigDef.Type.INT,
+        CHECKIN_BATCH_MAX_CONCURRENCY_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, CHECKIN_BATCH_MAX_CONCURRENCY_DOCS);
+
+    base.define(AZURE_HTTP_MAX_CONNECTIONS_CONFIG, ConfigDef.Type.INT,
+        null,
+        ConfigDef.Importance.LOW, HTTP_MAX_CONNECTIONS_DOCS);
+
+    base.define(AZURE_HTTP_CONNECTION_IDLE_TIMEOUT_MS_CONFIG, ConfigDef.Type.LONG,
+        null,
+        ConfigDef.Importance.LOW, HTTP_CONNECTION_IDLE_TIMEOUT_MS_DOCS);
+
     return base;
   }
 
+  /**
+   * Get a client builder for the configured storage account, to build a sync or async client.
+   * Clients built from the same builder share its HTTP client, and so its connection pool.
+   *
+   * @return a builder with the connection string, or the endpoint and SAS token
+   */
+  public BlobServiceClientBuilder getBlobServiceClientBuilder() {
+    String connectionString = getString(AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG);
+    BlobServiceClientBuilder blobServiceClientBuilder = new BlobServiceClientBuilder();
+    Integer maxConnections = getInt(AZURE_HTTP_MAX_CONNECTIONS_CONFIG);
+    Long idleTimeoutMs = getLong(AZURE_HTTP_CONNECTION_IDLE_TIMEOUT_MS_CONFIG);
+    if (maxConnections != null || idleTimeoutMs != null) {
+      HttpClientOptions httpClientOptions = new HttpClientOptions()
+          .setMaximumConnectionPoolSize(maxConnections);
+      if (idleTimeoutMs != null) {
+        httpClientOptions.setConnectionIdleTimeout(Duration.ofMillis(idleTimeoutMs));
+      }
+      blobServiceClientBuilder.httpClient(HttpClient.createDefault(httpClientOptions));
+    }
+    if (connectionString != null) {
+      blobServiceClientBuilder
+          .connectionString(connectionString);
+    } else {
+      blobServiceClientBuilder
+          .sasToken(getSasToken())
+          .endpoint(getString(AZURE_STORAGE_ACCOUNT_ENDPOINT_CONFIG));
+    }
+    return blobServiceClientBuilder;
+  }
+
+  /**
+   * Get the options for uploading payloads.
+   *
+   * @return parallel transfer options from the upload configs
+   */
+  public ParallelTransferOptions getUploadParallelTransferOptions() {
+    return new ParallelTransferOptions()
+        .setBlockSizeLong(getLong(AZURE_UPLOAD_BLOCK_SIZE_BYTES_CONFIG))
+        .setMaxConcurrency(getInt(AZURE_UPLOAD_MAX_CONCURRENCY_CONFIG))
+        .setMaxSingleUploadSizeLong(getLong(AZURE_UPLOAD_MAX_SINGLE_UPLOAD_SIZE_BYTES_CONFIG));
+  }
+
   SasTokenFromMechanism getSasTokenFromMechanism() {
     String mechanism = getString(AZURE_STORAGE_ACCOUNT_SASTOKEN_FROM_CONFIG);
     return SasTokenFromMechanism.valueOf(mechanism.substring(0,
@@ -158,6 +367,17 @@ public class AzureClaimCheckConfig extends AbstractConfig {
             + getString(AZURE_STORAGE_ACCOUNT_SASTOKEN_FROM_CONFIG));
       }
     }
+
+    Integer maxConnections = getInt(AZURE_HTTP_MAX_CONNECTIONS_CONFIG);
+    if (maxConnections != null && maxConnections < 1) {
+      throw new ConfigException(AZURE_HTTP_MAX_CONNECTIONS_CONFIG, maxConnections,
+          "Value must be at least 1");
+    }
+    Long idleTimeoutMs = getLong(AZURE_HTTP_CONNECTION_IDLE_TIMEOUT_MS_CONFIG);
+    if (idleTimeoutMs != null && idleTimeoutMs < 1) {
+      throw new ConfigException(AZURE_HTTP_CONNECTION_IDLE_TIMEOUT_MS_CONFIG, idleTimeoutMs,
+          "Value must be at least 1");
+    }
   }
 
 
@@ -178,5 +398,47 @@ public class AzureClaimCheckConfig extends AbstractConfig {
     public static final String AZURE_CREATE_CONTAINER_IF_NOT_EXISTS
         = "azure.blob.create.container.if.not.exists";
 
+    public static final String AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG
+        = "azure.blob.checkin.content.addressed";
+
+    public static final String AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_CONFIG
+        = "azure.blob.checkin.content.addressed.cache.size";
+
+    public static final String AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG
+        = "azure.blob.checkin.content.addressed.cache.ttl.ms";
+
+    public static final String AZURE_CHECKIN_BATCH_MAX_CONCURRENCY_CONFIG
+        = "azure.blob.checkin.batch.max.concurrency";
+
+    public static final String AZURE_CHECKIN_COMPACT_REFERENCE_CONFIG
+        = "azure.blob.checkin.compact.reference";
+
+    public static final String AZURE_CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_CONFIG
+        = "azure.blob.checkout.streaming.read.ahead.chunks";
+
+    public static final String AZURE_CHECKOUT_STREAMING_BUFFER_MAX_BYTES_CONFIG
+        = "azure.blob.checkout.streaming.buffer.max.bytes";
+
+    public static final String AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG
+        = "azure.blob.download.chunk.size.bytes";
+
+    public static final String AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG
+        = "azure.blob.download.max.concurrency";
+
+    public static final String AZURE_UPLOAD_BLOCK_SIZE_BYTES_CONFIG
+        = "azure.blob.upload.block.size.bytes";
+
+    public static final String AZURE_UPLOAD_MAX_CONCURRENCY_CONFIG
+        = "azure.blob.upload.max.concurrency";
+
+    public static final String AZURE_UPLOAD_MAX_SINGLE_UPLOAD_SIZE_BYTES_CONFIG
+        = "azure.blob.upload.max.single.upload.size.bytes";
+
+    public static final String AZURE_HTTP_MAX_CONNECTIONS_CONFIG
+        = "azure.blob.http.max.connections";
+
+    public static final String AZURE_HTTP_CONNECTION_IDLE_TIMEOUT_MS_CONFIG
+        = "azure.blob.http.connection.idle.timeout.ms";
+
   }
 }
@@ -0,0 +1,125 @@
+package se.irori.kafka.claimcheck.azure;
+
+import com.azure.storage.blob.BlobUrlParts;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import se.irori.kafka.claimcheck.ClaimCheck;
+
+/**
+ * The container and name of a blob referred to by a Claim Check, either a blob URL or a compact
+ * reference.
+ *
+ * <p>Compact references leave out the storage account, which is the configured one, as for blob
+ * URLs. Blobs named by a UUID have it as a 16 byte object id, content addressed blobs their 32
+ * byte SHA-256 hash.
+ */
+final class BlobReference {
+
+  /**
+   * Backend id of compact references to blobs, shared by the Azure Blob Storage v12 backends.
+   */
+  static final byte BACKEND_ID = 1;
+
+  private static final Pattern UUID_NAME =
+      Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+  private static final Pattern SHA256_NAME = Pattern.compile("[0-9a-f]{64}");
+
+  private final String containerName;
+
+  private final String blobName;
+
+  private BlobReference(String containerName, String blobName) {
+    this.containerName = containerName;
+    this.blobName = blobName;
+  }
+
+  String getContainerName() {
+    return containerName;
+  }
+
+  String getBlobName() {
+    return blobName;
+  }
+
+  /**
+   * Get the blob a Claim Check refers to.
+   *
+   * @param claimCheck a compact reference, or a blob URL
+   * @return the blob reference
+   * @throws KafkaStorageException if not a reference to a blob
+   */
+  static BlobReference of(ClaimCheck claimCheck) {
+    if (claimCheck.isCompact()) {
+      if (claimCheck.getBackendId() != BACKEND_ID) {
+        throw new KafkaStorageException("Not an Azure claim check reference: "
+            + claimCheck.getReference());
+      }
+      return new BlobReference(claimCheck.getContainer(),
+          toBlobName(claimCheck.getObjectId()));
+    }
+    String blobUrl = claimCheck.getReference();
+    BlobUrlParts parts;
+    try {
+      parts = BlobUrlParts.parse(new URL(blobUrl));
+    } catch (MalformedURLException e) {
+      throw new KafkaStorageException("Bad Azure claim check url: " + blobUrl);
+    }
+    return new BlobReference(parts.getBlobContainerName(), parts.getBlobName());
+  }
+
+  /**
+   * Create a Claim Check for a checked in blob.
+   *
+   * @param compact       whether to create a compact reference, if the blob name allows it
+   * @param containerName the container of the blob
+   * @param blobName      the name of the blob
+   * @param blobUrl       the URL of the blob, for a reference that is not compact
+   * @return the Claim Check
+   */
+  static ClaimCheck claimCheck(boolean compact, String containerName, String blobName,
+                               String blobUrl) {
+    if (compact) {
+      byte[] objectId = toObjectId(blobName);
+      if (objectId.length > 0) {
+        return ClaimCheck.compact(BACKEND_ID, containerName, objectId);
+      }
+    }
+    return new ClaimCheck(blobUrl);
+  }
+
+  private static byte[] toObjectId(String blobName) {
+    if (UUID_NAME.matcher(blobName).matches()) {
+      UUID uuid = UUID.fromString(blobName);
+      return ByteBuffer.allocate(16)
+          .putLong(uuid.getMostSignificantBits())
+          .putLong(uuid.getLeastSignificantBits())
+          .array();
+    }
+    if (SHA256_NAME.matcher(blobName).matches()) {
+      byte[] hash = new byte[32];
+      for (int i = 0; i < hash.length; i++) {
+        hash[i] = (byte) Integer.parseInt(blobName.substring(2 * i, 2 * i + 2), 16);
+      }
+      return hash;
+    }
+    return new byte[0];
+  }
+
+  private static String toBlobName(byte[] objectId) {
+    if (objectId.length == 16) {
+      ByteBuffer uuid = ByteBuffer.wrap(objectId);
+      return new UUID(uuid.getLong(), uuid.getLong()).toString();
+    }
+    StringBuilder hex = new StringBuilder(objectId.length * 2);
+    for (byte b : objectId) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+          .append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+}
@@ -0,0 +1,55 @@
+package se.irori.kafka.claimcheck.azure;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded set of the most recently used entries, each remembered for a limited time after it was
+ * added.
+ */
+class RecentBlobs {
+  private final int maxSize;
+
+  private final long ttlNanos;
+
+  private final LongSupplier nanoClock;
+
+  /**
+   * When each entry was added.
+   */
+  private final LinkedHashMap<String, Long> entries;
+
+  RecentBlobs(int maxSize, long ttlMs) {
+    this(maxSize, ttlMs, System::nanoTime);
+  }
+
+  RecentBlobs(int maxSize, long ttlMs, LongSupplier nanoClock) {
+    this.maxSize = maxSize;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    this.nanoClock = nanoClock;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  synchronized boolean contains(String entry) {
+    Long added = entries.get(entry);
+    if (added == null) {
+      return false;
+    }
+    if (nanoClock.getAsLong() - added >= ttlNanos) {
+      entries.remove(entry);
+      return false;
+    }
+    return true;
+  }
+
+  synchronized void add(String entry) {
+    if (maxSize == 0 || ttlNanos == 0) {
+      return;
+    }
+    entries.put(entry, nanoClock.getAsLong());
+    if (entries.size() > maxSize) {
+      entries.remove(entries.keySet().iterator().next());
+    }
+  }
+}
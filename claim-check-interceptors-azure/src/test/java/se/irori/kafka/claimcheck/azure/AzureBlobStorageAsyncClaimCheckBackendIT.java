@@ -0,0 +1,130 @@
+package se.irori.kafka.claimcheck.azure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import se.irori.kafka.claimcheck.ClaimCheck;
+import se.irori.kafka.claimcheck.DirectBufferPool;
+import se.irori.kafka.claimcheck.TestUtils;
+
+/**
+ * Integration test of the async backend, against the Azurite emulator.
+ */
+public class AzureBlobStorageAsyncClaimCheckBackendIT extends AbstractClaimCheckIT {
+
+  private static final String TOPIC = "my-async-backend-topic";
+
+  @Rule
+  public final AzuriteContainer azuriteContainer = new AzuriteContainer()
+      .withExposedPorts(10000);
+
+  AzureBlobStorageAsyncClaimCheckBackend unit;
+
+  ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    HashMap<String, Object> config = new HashMap<>();
+    injectConfigFromSystemProperties(config, azuriteContainer, "azurite.only.");
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, true);
+    // several ranges per check out
+    config.put(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG, 1024);
+
+    unit = new AzureBlobStorageAsyncClaimCheckBackend();
+    unit.configure(config);
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void checkInCheckOutAsync() {
+    byte[] payload = TestUtils.getRandomBytes(10 * 1024 + 1);
+
+    ClaimCheck claimCheck = unit.checkInAsync(new ProducerRecord<>(TOPIC, payload), executor)
+        .join();
+
+    assertArrayEquals(payload, unit.checkOutAsync(claimCheck, executor).join());
+    assertArrayEquals(payload, unit.checkOut(claimCheck));
+  }
+
+  @Test
+  public void checkOutEmpty() {
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>(TOPIC, new byte[0]));
+
+    assertEquals(0, unit.checkOut(claimCheck).length);
+  }
+
+  @Test
+  public void checkInBatchInOrder() {
+    // GIVEN records of different sizes
+    List<ProducerRecord<byte[], byte[]>> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(new ProducerRecord<>(TOPIC, TestUtils.getRandomBytes(100 + i * 1000)));
+    }
+
+    // WHEN checking them in as a batch
+    List<ClaimCheck> claimChecks = unit.checkInBatchAsync(records, executor).join();
+
+    // THEN the claim checks are in record order
+    assertEquals(records.size(), claimChecks.size());
+    for (int i = 0; i < records.size(); i++) {
+      assertArrayEquals(records.get(i).value(), unit.checkOut(claimChecks.get(i)));
+    }
+  }
+
+  @Test
+  public void checkInStreaming() throws IOException {
+    byte[] payload = TestUtils.getRandomBytes(200 * 1024);
+
+    ClaimCheck claimCheck = unit.checkInStreaming(TOPIC, new ByteArrayInputStream(payload),
+        payload.length);
+
+    assertArrayEquals(payload, unit.checkOut(claimCheck));
+    byte[] streamed = new byte[payload.length];
+    try (DataInputStream dis = new DataInputStream(unit.checkOutStreaming(claimCheck))) {
+      dis.readFully(streamed);
+    }
+    assertArrayEquals(payload, streamed);
+  }
+
+  @Test
+  public void checkOutBuffer() {
+    // GIVEN a payload of several chunks, and an empty payload
+    DirectBufferPool pool = new DirectBufferPool(1024 * 1024);
+    byte[] payload = TestUtils.getRandomBytes(10 * 1024 + 1);
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>(TOPIC, payload));
+    ClaimCheck empty = unit.checkIn(new ProducerRecord<>(TOPIC, new byte[0]));
+
+    // WHEN checking them out into direct buffers
+    ByteBuffer buffer = unit.checkOutBuffer(claimCheck, pool);
+    ByteBuffer emptyBuffer = unit.checkOutBuffer(empty, pool);
+
+    // THEN the payloads are read into the buffers
+    assertTrue(buffer.isDirect());
+    byte[] checkedOut = new byte[buffer.remaining()];
+    buffer.get(checkedOut);
+    assertArrayEquals(payload, checkedOut);
+    assertEquals(0, emptyBuffer.remaining());
+    pool.release(buffer);
+    pool.release(emptyBuffer);
+  }
+}
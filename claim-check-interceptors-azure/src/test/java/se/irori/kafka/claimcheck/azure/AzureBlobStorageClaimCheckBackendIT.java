@@ -0,0 +1,203 @@
+package se.irori.kafka.claimcheck.azure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import se.irori.kafka.claimcheck.ClaimCheck;
+import se.irori.kafka.claimcheck.DirectBufferPool;
+import se.irori.kafka.claimcheck.TestUtils;
+
+/**
+ * Integration test on the backend level, against the Azurite emulator.
+ */
+public class AzureBlobStorageClaimCheckBackendIT extends AbstractClaimCheckIT {
+
+  private static final String TOPIC = "my-backend-topic";
+
+  @Rule
+  public final AzuriteContainer azuriteContainer = new AzuriteContainer()
+      .withExposedPorts(10000);
+
+  AzureBlobStorageClaimCheckBackend unit;
+
+  BlobServiceClient blobServiceClient;
+
+  @Before
+  public void setUp() {
+    HashMap<String, Object> config = new HashMap<>();
+    // always against Azurite, the test deletes containers
+    injectConfigFromSystemProperties(config, azuriteContainer, "azurite.only.");
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, true);
+
+    unit = new AzureBlobStorageClaimCheckBackend();
+    unit.configure(config);
+
+    blobServiceClient = new BlobServiceClientBuilder()
+        .connectionString((String) config.get(
+            AzureClaimCheckConfig.Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG))
+        .buildClient();
+  }
+
+  @Test
+  public void checkInRecreatesDeletedContainer() {
+    // GIVEN a verified container, that is deleted
+    byte[] payload = TestUtils.getRandomBytes(1024);
+    unit.checkIn(new ProducerRecord<>(TOPIC, payload));
+    blobServiceClient.getBlobContainerClient(TOPIC).delete();
+
+    // WHEN checking in again
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>(TOPIC, payload));
+
+    // THEN the container is created again, and the payload checked in
+    assertArrayEquals(payload, unit.checkOut(claimCheck));
+  }
+
+  @Test
+  public void checkInContentAddressed() {
+    // GIVEN a content addressed backend
+    HashMap<String, Object> config = new HashMap<>();
+    injectConfigFromSystemProperties(config, azuriteContainer, "azurite.only.");
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, true);
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG, true);
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_CONFIG, 0);
+    AzureBlobStorageClaimCheckBackend contentAddressed = new AzureBlobStorageClaimCheckBackend();
+    contentAddressed.configure(config);
+
+    // WHEN checking in the same payload twice, and another payload
+    byte[] payload = TestUtils.getRandomBytes(1024);
+    ClaimCheck first = contentAddressed.checkIn(new ProducerRecord<>(TOPIC, payload));
+    ClaimCheck second = contentAddressed.checkIn(new ProducerRecord<>(TOPIC, payload.clone()));
+    ClaimCheck other = contentAddressed.checkIn(
+        new ProducerRecord<>(TOPIC, TestUtils.getRandomBytes(1024)));
+
+    // THEN the repeated payload is stored once, under its hash
+    assertEquals(first.getReference(), second.getReference());
+    assertTrue(first.getReference().endsWith(
+        "/" + AzureBlobStorageClaimCheckBackend.sha256Hex(payload)));
+    assertNotEquals(first.getReference(), other.getReference());
+    assertEquals(2, blobServiceClient.getBlobContainerClient(TOPIC).listBlobs().stream().count());
+    assertArrayEquals(payload, contentAddressed.checkOut(second));
+    contentAddressed.close();
+  }
+
+  @Test
+  public void checkInContentAddressedAfterDeletion() {
+    // GIVEN a content addressed backend, remembering checked in payloads for no time
+    HashMap<String, Object> config = new HashMap<>();
+    injectConfigFromSystemProperties(config, azuriteContainer, "azurite.only.");
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, true);
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG, true);
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG, 0);
+    AzureBlobStorageClaimCheckBackend contentAddressed = new AzureBlobStorageClaimCheckBackend();
+    contentAddressed.configure(config);
+    byte[] payload = TestUtils.getRandomBytes(1024);
+    ClaimCheck first = contentAddressed.checkIn(new ProducerRecord<>(TOPIC, payload));
+    String blobName = AzureBlobStorageClaimCheckBackend.sha256Hex(payload);
+    String uploaded = blobServiceClient.getBlobContainerClient(TOPIC)
+        .getBlobClient(blobName).getProperties().getETag();
+
+    // WHEN checking in the payload again, and again after its blob is deleted, e.g. by a
+    // lifecycle rule
+    contentAddressed.checkIn(new ProducerRecord<>(TOPIC, payload));
+    String refreshed = blobServiceClient.getBlobContainerClient(TOPIC)
+        .getBlobClient(blobName).getProperties().getETag();
+    blobServiceClient.getBlobContainerClient(TOPIC).getBlobClient(blobName).delete();
+    ClaimCheck second = contentAddressed.checkIn(new ProducerRecord<>(TOPIC, payload));
+
+    // THEN the blob is refreshed, which changes its ETag, and uploaded again once deleted
+    assertNotEquals(uploaded, refreshed);
+    assertEquals(first.getReference(), second.getReference());
+    assertArrayEquals(payload, contentAddressed.checkOut(second));
+    contentAddressed.close();
+  }
+
+  @Test
+  public void checkInCompactReference() {
+    // GIVEN a backend issuing compact references
+    HashMap<String, Object> config = new HashMap<>();
+    injectConfigFromSystemProperties(config, azuriteContainer, "azurite.only.");
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, true);
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CHECKIN_COMPACT_REFERENCE_CONFIG, true);
+    AzureBlobStorageClaimCheckBackend compact = new AzureBlobStorageClaimCheckBackend();
+    compact.configure(config);
+
+    // WHEN checking in a payload with each backend
+    byte[] payload = TestUtils.getRandomBytes(1024);
+    ClaimCheck compactClaimCheck = compact.checkIn(new ProducerRecord<>(TOPIC, payload));
+    ClaimCheck urlClaimCheck = unit.checkIn(new ProducerRecord<>(TOPIC, payload));
+
+    // THEN the compact reference is smaller, and both references are checked out by both
+    byte[] serialized = compactClaimCheck.serialize();
+    assertEquals(3 + TOPIC.length() + 16, serialized.length);
+    assertTrue(serialized.length < urlClaimCheck.serialize().length);
+    assertArrayEquals(payload, compact.checkOut(new ClaimCheck(serialized)));
+    assertArrayEquals(payload, unit.checkOut(new ClaimCheck(serialized)));
+    assertArrayEquals(payload, compact.checkOut(new ClaimCheck(urlClaimCheck.serialize())));
+    compact.close();
+  }
+
+  @Test
+  public void checkOutStreamingReadAhead() throws IOException {
+    // GIVEN a backend reading small chunks ahead
+    HashMap<String, Object> config = new HashMap<>();
+    injectConfigFromSystemProperties(config, azuriteContainer, "azurite.only.");
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, true);
+    config.put(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG, 1024);
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_CONFIG, 3);
+    AzureBlobStorageClaimCheckBackend readAhead = new AzureBlobStorageClaimCheckBackend();
+    readAhead.configure(config);
+    byte[] payload = TestUtils.getRandomBytes(100 * 1024 + 1);
+    ClaimCheck claimCheck = readAhead.checkIn(new ProducerRecord<>(TOPIC, payload));
+
+    // WHEN streaming it
+    byte[] streamed = new byte[payload.length];
+    try (DataInputStream dis = new DataInputStream(readAhead.checkOutStreaming(claimCheck))) {
+      dis.readFully(streamed);
+      // THEN the whole payload is read
+      assertEquals(-1, dis.read());
+    }
+    assertArrayEquals(payload, streamed);
+    readAhead.close();
+  }
+
+  @Test
+  public void checkOutBuffer() {
+    // GIVEN a backend reading small chunks, a payload of several chunks, and an empty payload
+    HashMap<String, Object> config = new HashMap<>();
+    injectConfigFromSystemProperties(config, azuriteContainer, "azurite.only.");
+    config.put(AzureClaimCheckConfig.Keys.AZURE_CREATE_CONTAINER_IF_NOT_EXISTS, true);
+    config.put(AzureClaimCheckConfig.Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG, 1024);
+    AzureBlobStorageClaimCheckBackend ranged = new AzureBlobStorageClaimCheckBackend();
+    ranged.configure(config);
+    DirectBufferPool pool = new DirectBufferPool(1024 * 1024);
+    byte[] payload = TestUtils.getRandomBytes(100 * 1024 + 1);
+    ClaimCheck claimCheck = ranged.checkIn(new ProducerRecord<>(TOPIC, payload));
+    ClaimCheck empty = ranged.checkIn(new ProducerRecord<>(TOPIC, new byte[0]));
+
+    // WHEN checking them out into direct buffers
+    ByteBuffer buffer = ranged.checkOutBuffer(claimCheck, pool);
+    ByteBuffer emptyBuffer = ranged.checkOutBuffer(empty, pool);
+
+    // THEN the payloads are read into the buffers
+    assertTrue(buffer.isDirect());
+    byte[] checkedOut = new byte[buffer.remaining()];
+    buffer.get(checkedOut);
+    assertArrayEquals(payload, checkedOut);
+    assertEquals(0, emptyBuffer.remaining());
+    pool.release(buffer);
+    pool.release(emptyBuffer);
+    ranged.close();
+  }
+}
@@ -2,6 +2,7 @@ package se.irori.kafka.claimcheck.azure;
 
 import static org.junit.Assert.*;
 
+import com.azure.storage.blob.models.ParallelTransferOptions;
 import java.util.HashMap;
 import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.common.config.ConfigException;
@@ -79,6 +80,155 @@ public class AzureClaimCheckConfigTest {
     unit = AzureClaimCheckConfig.validatedConfig(config);
   }
 
+  @Test
+  public void testUploadParallelTransferOptions() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_UPLOAD_BLOCK_SIZE_BYTES_CONFIG, "16777216");
+    config.put(Keys.AZURE_UPLOAD_MAX_CONCURRENCY_CONFIG, "4");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+
+    ParallelTransferOptions options = unit.getUploadParallelTransferOptions();
+    assertEquals(Long.valueOf(16777216L), options.getBlockSizeLong());
+    assertEquals(Integer.valueOf(4), options.getMaxConcurrency());
+    assertEquals(Long.valueOf(AzureClaimCheckConfig.UPLOAD_MAX_SINGLE_UPLOAD_SIZE_BYTES_DEFAULT),
+        options.getMaxSingleUploadSizeLong());
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testUploadBlockSizeError() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_UPLOAD_BLOCK_SIZE_BYTES_CONFIG, "0");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test
+  public void testDownloadDefaults() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+
+    assertEquals(Integer.valueOf(AzureClaimCheckConfig.DOWNLOAD_CHUNK_SIZE_BYTES_DEFAULT),
+        unit.getInt(Keys.AZURE_DOWNLOAD_CHUNK_SIZE_BYTES_CONFIG));
+    assertEquals(Integer.valueOf(AzureClaimCheckConfig.DOWNLOAD_MAX_CONCURRENCY_DEFAULT),
+        unit.getInt(Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG));
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testDownloadConcurrencyError() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_DOWNLOAD_MAX_CONCURRENCY_CONFIG, "0");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test
+  public void testContentAddressedDefaults() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+
+    assertFalse(unit.getBoolean(Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CONFIG));
+    assertEquals(
+        Integer.valueOf(AzureClaimCheckConfig.CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_DEFAULT),
+        unit.getInt(Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_CONFIG));
+    assertEquals(
+        Long.valueOf(AzureClaimCheckConfig.CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_DEFAULT),
+        unit.getLong(Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG));
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testContentAddressedCacheSizeError() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_SIZE_CONFIG, "-1");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testContentAddressedCacheTtlError() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_CHECKIN_CONTENT_ADDRESSED_CACHE_TTL_MS_CONFIG, "-1");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test
+  public void testCheckOutStreamingDefaults() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+
+    assertEquals(
+        Integer.valueOf(AzureClaimCheckConfig.CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_DEFAULT),
+        unit.getInt(Keys.AZURE_CHECKOUT_STREAMING_READ_AHEAD_CHUNKS_CONFIG));
+    assertEquals(
+        Long.valueOf(AzureClaimCheckConfig.CHECKOUT_STREAMING_BUFFER_MAX_BYTES_DEFAULT),
+        unit.getLong(Keys.AZURE_CHECKOUT_STREAMING_BUFFER_MAX_BYTES_CONFIG));
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testCheckOutStreamingBufferError() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_CHECKOUT_STREAMING_BUFFER_MAX_BYTES_CONFIG, "0");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test
+  public void testCheckInBatchDefaults() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+
+    assertEquals(Integer.valueOf(AzureClaimCheckConfig.CHECKIN_BATCH_MAX_CONCURRENCY_DEFAULT),
+        unit.getInt(Keys.AZURE_CHECKIN_BATCH_MAX_CONCURRENCY_CONFIG));
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testCheckInBatchConcurrencyError() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_CHECKIN_BATCH_MAX_CONCURRENCY_CONFIG, "0");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test
+  public void testHttpClientOptions() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG,
+        "DefaultEndpointsProtocol=http;AccountName=devstoreaccount1;AccountKey=a2V5;"
+            + "BlobEndpoint=http://127.0.0.1:10000/devstoreaccount1;");
+    config.put(Keys.AZURE_HTTP_MAX_CONNECTIONS_CONFIG, "16");
+    config.put(Keys.AZURE_HTTP_CONNECTION_IDLE_TIMEOUT_MS_CONFIG, "30000");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+
+    assertEquals(Integer.valueOf(16), unit.getInt(Keys.AZURE_HTTP_MAX_CONNECTIONS_CONFIG));
+    assertNotNull(unit.getBlobServiceClientBuilder().buildClient());
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testHttpMaxConnectionsError() {
+    HashMap<String,String> config = new HashMap<>();
+    config.put(Keys.AZURE_STORAGE_ACCOUNT_CONNECTION_STRING_CONFIG, "connString");
+    config.put(Keys.AZURE_HTTP_MAX_CONNECTIONS_CONFIG, "0");
+
+    unit = AzureClaimCheckConfig.validatedConfig(config);
+  }
+
   @Test
   public void generateDocs() {
     ConfigDef configDef = AzureClaimCheckConfig.buildConfigDef(new ConfigDef());
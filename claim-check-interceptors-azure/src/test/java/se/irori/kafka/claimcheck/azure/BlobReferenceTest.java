@@ -0,0 +1,77 @@
+package se.irori.kafka.claimcheck.azure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import org.junit.Test;
+import se.irori.kafka.claimcheck.ClaimCheck;
+
+/**
+ * Unit test BlobReference for compact and URL claim checks.
+ */
+public class BlobReferenceTest {
+
+  private static final String BLOB_URL =
+      "https://account.blob.core.windows.net/my-topic/";
+
+  @Test
+  public void compactUuidBlobName() {
+    // GIVEN a blob named by a UUID
+    String blobName = UUID.randomUUID().toString();
+
+    // WHEN creating a compact claim check, and reading it back
+    ClaimCheck claimCheck = BlobReference.claimCheck(true, "my-topic", blobName,
+        BLOB_URL + blobName);
+    BlobReference reference = BlobReference.of(new ClaimCheck(claimCheck.serialize()));
+
+    // THEN the UUID is stored as 16 bytes
+    assertTrue(claimCheck.isCompact());
+    assertEquals(3 + "my-topic".length() + 16, claimCheck.serialize().length);
+    assertEquals("my-topic", reference.getContainerName());
+    assertEquals(blobName, reference.getBlobName());
+  }
+
+  @Test
+  public void compactContentAddressedBlobName() {
+    // GIVEN a blob named by a hash
+    String blobName = AzureBlobStorageClaimCheckBackend.sha256Hex(new byte[] {1, 2, 3});
+
+    // WHEN creating a compact claim check, and reading it back from its string form
+    ClaimCheck claimCheck = BlobReference.claimCheck(true, "my-topic", blobName,
+        BLOB_URL + blobName);
+    BlobReference reference = BlobReference.of(new ClaimCheck(claimCheck.getReference()));
+
+    // THEN the hash is stored as 32 bytes
+    assertEquals(3 + "my-topic".length() + 32, claimCheck.serialize().length);
+    assertEquals(blobName, reference.getBlobName());
+  }
+
+  @Test
+  public void urlForOtherBlobNames() {
+    // WHEN creating a compact claim check for a blob of another name
+    ClaimCheck claimCheck = BlobReference.claimCheck(true, "my-topic", "my-blob",
+        BLOB_URL + "my-blob");
+
+    // THEN the URL is used
+    assertFalse(claimCheck.isCompact());
+    assertEquals("my-blob", BlobReference.of(claimCheck).getBlobName());
+  }
+
+  @Test
+  public void legacyUrl() {
+    // WHEN reading a blob URL claim check
+    BlobReference reference = BlobReference.of(new ClaimCheck(BLOB_URL + "my-blob"));
+
+    // THEN the container and blob name are parsed from the URL
+    assertEquals("my-topic", reference.getContainerName());
+    assertEquals("my-blob", reference.getBlobName());
+  }
+
+  @Test(expected = KafkaStorageException.class)
+  public void compactOfOtherBackend() {
+    BlobReference.of(ClaimCheck.compact((byte) 2, "my-topic", new byte[16]));
+  }
+}
@@ -0,0 +1,63 @@
+package se.irori.kafka.claimcheck.azure;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * Unit test RecentBlobs size and age bounds.
+ */
+public class RecentBlobsTest {
+
+  private final AtomicLong nanoTime = new AtomicLong();
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    // GIVEN room for two entries
+    RecentBlobs unit = new RecentBlobs(2, 1000, nanoTime::get);
+    unit.add("a");
+    unit.add("b");
+
+    // WHEN using the first and adding a third
+    assertTrue(unit.contains("a"));
+    unit.add("c");
+
+    // THEN the second is evicted
+    assertTrue(unit.contains("a"));
+    assertFalse(unit.contains("b"));
+    assertTrue(unit.contains("c"));
+  }
+
+  @Test
+  public void expireAfterTtl() {
+    // GIVEN an entry remembered for a second
+    RecentBlobs unit = new RecentBlobs(10, 1000, nanoTime::get);
+    unit.add("a");
+
+    // WHEN the second has passed, although the entry was used in between
+    nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+    assertTrue(unit.contains("a"));
+    nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+
+    // THEN it is no longer contained
+    assertFalse(unit.contains("a"));
+  }
+
+  @Test
+  public void disabled() {
+    // GIVEN caches disabled by size or age
+    RecentBlobs noSize = new RecentBlobs(0, 1000, nanoTime::get);
+    RecentBlobs noTtl = new RecentBlobs(10, 0, nanoTime::get);
+
+    // WHEN adding an entry
+    noSize.add("a");
+    noTtl.add("a");
+
+    // THEN it is not contained
+    assertFalse(noSize.contains("a"));
+    assertFalse(noTtl.contains("a"));
+  }
+}
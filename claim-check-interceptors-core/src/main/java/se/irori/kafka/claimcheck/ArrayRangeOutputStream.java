@@ -0,0 +1,58 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes into a range of an existing array, for downloading with SDKs that write to streams.
+ */
+public class ArrayRangeOutputStream extends OutputStream {
+  private final byte[] target;
+
+  private final int end;
+
+  private int position;
+
+  /**
+   * Create a stream writing to part of an array.
+   *
+   * @param target array to write into
+   * @param offset offset of the first byte to write
+   * @param length maximum number of bytes to write
+   */
+  public ArrayRangeOutputStream(byte[] target, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > target.length) {
+      throw new IndexOutOfBoundsException("Range " + offset + "+" + length
+          + " outside array of " + target.length);
+    }
+    this.target = target;
+    this.position = offset;
+    this.end = offset + length;
+  }
+
+  /**
+   * Get the position of the next write.
+   *
+   * @return offset in the target array after the bytes written so far
+   */
+  public int getPosition() {
+    return position;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (position >= end) {
+      throw new IOException("Write beyond end of range");
+    }
+    target[position++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (len > end - position) {
+      throw new IOException("Write beyond end of range");
+    }
+    System.arraycopy(b, off, target, position, len);
+    position += len;
+  }
+}
@@ -2,6 +2,7 @@ package se.irori.kafka.claimcheck;
 
 import static org.apache.kafka.common.config.ConfigDef.NO_DEFAULT_VALUE;
 
+import java.util.Arrays;
 import java.util.Map;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -21,6 +22,35 @@ public class BaseClaimCheckConfig extends AbstractConfig {
   public static final int
       CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_DEFAULT = 1048576 - 512;
 
+  public static final int CLAIMCHECK_CHECKIN_ASYNC_MAX_IN_FLIGHT_DEFAULT = 32;
+
+  public static final int CLAIMCHECK_CHECKIN_ASYNC_THREADS_DEFAULT = 16;
+
+  public static final int CLAIMCHECK_CHECKIN_ASYNC_BATCH_MAX_RECORDS_DEFAULT = 16;
+
+  public static final int CLAIMCHECK_CHECKOUT_PREFETCH_MAX_IN_FLIGHT_DEFAULT = 16;
+
+  public static final long CLAIMCHECK_CHECKOUT_PREFETCH_BUFFER_MAX_BYTES_DEFAULT =
+      256L * 1024 * 1024;
+
+  public static final String CLAIMCHECK_CHECKIN_COMPRESSION_TYPE_DEFAULT = "none";
+
+  public static final String CLAIMCHECK_CHECKOUT_CACHE_NAME_DEFAULT = "default";
+
+  public static final String CLAIMCHECK_EXECUTOR_TYPE_DEFAULT = "platform";
+
+  public static final long CLAIMCHECK_CHECKOUT_CACHE_DISK_MAX_BYTES_DEFAULT =
+      1024L * 1024 * 1024;
+
+  public static final int CLAIMCHECK_CHUNKED_CHUNK_SIZE_BYTES_DEFAULT = 8 * 1024 * 1024;
+
+  public static final int CLAIMCHECK_CHUNKED_MAX_CONCURRENCY_DEFAULT = 8;
+
+  public static final int CLAIMCHECK_CHUNKED_CHUNK_RETRIES_DEFAULT = 2;
+
+  public static final long CLAIMCHECK_CHUNKED_CHECKOUT_BUFFER_MAX_BYTES_DEFAULT =
+      256L * 1024 * 1024;
+
   public static final String CHECKIN_SIZE_OVER = "The the byte limit where Kafka record batches"
       + " above this size are checked in using the Claim Check backend. *Note*: this applies"
       + " to the uncompressed message batch size. If you want to optimize for more messages "
@@ -30,6 +60,12 @@ public class BaseClaimCheckConfig extends AbstractConfig {
   public static final String BACKEND_DOCS = "The fully qualified name of the backend "
       + "implementation. E.g. `se.irori.kafka.claimcheck.azure.AzureBlobStorageClaimCheckBackend`";
 
+  public static final String BACKEND_SHARED_DOCS = "Share one backend between the Claim Check"
+      + " clients in the JVM configured with the same backend configs, e.g. to share one HTTP"
+      + " connection pool between many consumers. The backend is closed when the last client"
+      + " sharing it is closed. The Kafka client configs, the wrapped (de)serializers and the"
+      + " `claimcheck.checkin.*` and `claimcheck.checkout.*` configs are not backend configs.";
+
   public static final String WRAPPED_DESERIALIZER_DOCS = "Set to the normal Kafka Consumer "
       + "de-serializer that would have been used before enabling Claim Check interceptors on "
       + "the flow.";
@@ -53,12 +89,195 @@ public class BaseClaimCheckConfig extends AbstractConfig {
   public static final String KEY_SERIALIZER_DOCS = "Standard Kafka key.serializer option. Used "
       + " for the calculation of message size to determine if it should be checked in.";
 
+  public static final String CHECKIN_ASYNC_MAX_IN_FLIGHT_DOCS = "The maximum number of records to"
+      + " check in that `ClaimCheckAsyncProducer` keeps in flight, from `send` until handed to the"
+      + " Kafka producer, including records with a completed check in that wait for an earlier"
+      + " one. When reached, `send` blocks until a record has been handed over.";
+
+  public static final String CHECKIN_ASYNC_THREADS_DOCS = "The number of threads"
+      + " `ClaimCheckAsyncProducer` uses to run blocking backend check ins, with the `platform`"
+      + " `claimcheck.executor.type`.";
+
+  public static final String CHECKIN_ASYNC_LINGER_MS_DOCS = "The time `ClaimCheckAsyncProducer`"
+      + " waits for more records to check in, to check them in as one batch with"
+      + " `ClaimCheckBackend.checkInBatchAsync`, much like `linger.ms` for the producer. 0, the"
+      + " default, checks in each record as soon as it is sent.";
+
+  public static final String CHECKIN_ASYNC_BATCH_MAX_RECORDS_DOCS = "The maximum number of"
+      + " records `ClaimCheckAsyncProducer` checks in as one batch, when"
+      + " `claimcheck.checkin.async.linger.ms` is set. A full batch is checked in without waiting"
+      + " for the linger time.";
+
+  public static final String CHECKOUT_PREFETCH_MAX_IN_FLIGHT_DOCS = "The maximum number of"
+      + " concurrent check outs `ClaimCheckPrefetcher` runs for a poll batch.";
+
+  public static final String CHECKOUT_PREFETCH_BUFFER_MAX_BYTES_DOCS = "The budget for payload"
+      + " bytes `ClaimCheckPrefetcher` holds checked out ahead of the record being deserialized."
+      + " No new check out is started while the budget is used up, so a single payload larger"
+      + " than the budget is still checked out on its own.";
+
+  public static final String CHECKIN_COMPRESSION_TYPE_DOCS = "The compression applied to payloads"
+      + " before they are checked in: `none`, `gzip`, `lz4` or `zstd`. Checked in payloads do not"
+      + " pass the broker, so the producer `compression.type` does not apply to them. The type is"
+      + " recorded in the `message-claim-check-compression` header, and the Claim Check"
+      + " de-serializers decompress accordingly. Streaming mode compresses while uploading,"
+      + " without buffering the payload.";
+
+  public static final String CHECKIN_COMPRESSION_LEVEL_DOCS = "The compression level for"
+      + " `claimcheck.checkin.compression.type`: 1-9 for `gzip`, 1-17 for `lz4` and -131072-22 for"
+      + " `zstd`. When not set, the default of the compression type is used, which for `lz4` is"
+      + " its fast compressor.";
+
+  public static final String CHECKOUT_CACHE_MAX_BYTES_DOCS = "The budget for checked out payload"
+      + " bytes kept in memory, to not check them out again when records are read again, e.g."
+      + " after a rebalance or a seek. The least recently used payloads are evicted first. 0"
+      + " disables the cache. Used by `ClaimCheckDeserializer` and `ClaimCheckPrefetcher`, not in"
+      + " streaming mode.";
+
+  public static final String CHECKOUT_CACHE_NAME_DOCS = "Consumers in the same JVM configured with"
+      + " the same cache name share one cache. The first consumer to use a name decides its"
+      + " sizes. Cache metrics are tagged with the name.";
+
+  public static final String CHECKOUT_CACHE_DISK_DIRECTORY_DOCS = "A directory to spill payloads"
+      + " evicted from memory to, in a sub directory removed when the JVM exits. Not set by"
+      + " default, for no disk tier.";
+
+  public static final String CHECKOUT_CACHE_DISK_MAX_BYTES_DOCS = "The budget for payload bytes"
+      + " spilled to `claimcheck.checkout.cache.disk.directory`.";
+
+  public static final String CHECKOUT_BUFFER_POOL_MAX_BYTES_DOCS = "The budget for direct"
+      + " (off-heap) buffers kept for reuse by check outs. Above 0, and with a wrapped value"
+      + " de-serializer implementing `ClaimCheckBufferDeserializer`, `ClaimCheckDeserializer`"
+      + " checks out payloads into pooled direct buffers and hands the de-serializer a view of"
+      + " them, instead of a new array. Not used for compressed payloads or with"
+      + " `claimcheck.checkout.cache.max.bytes`. Consumers in the same JVM share one pool, the"
+      + " first consumer decides its size. 0 disables the pool.";
+
+  public static final String CHECKOUT_FETCH_PREDICATE_DOCS = "A `ClaimCheckFetchPredicate`"
+      + " deciding by topic, key and headers which Claim Checks to check out. Records it rejects"
+      + " are de-serialized to null, without downloading their payloads. Not set by default, to"
+      + " check out all Claim Checks.";
+
+  public static final String CHUNKED_BACKEND_DOCS = "The backend `ChunkedClaimCheckBackend` stores"
+      + " chunks and manifests in, when it is set as `claimcheck.backend.class`. Payloads larger"
+      + " than a chunk are stored as chunks, and the claim check refers to a manifest listing"
+      + " them.";
+
+  public static final String CHUNKED_CHUNK_SIZE_BYTES_DOCS = "The size of each chunk stored by"
+      + " `ChunkedClaimCheckBackend`. Payloads up to this size are stored as one object, without"
+      + " a manifest. Consumers read the chunk size from the manifest.";
+
+  public static final String CHUNKED_MAX_CONCURRENCY_DOCS = "The maximum number of chunks of a"
+      + " payload checked in or out concurrently by `ChunkedClaimCheckBackend`, also the number"
+      + " of chunks read ahead by its streaming check outs.";
+
+  public static final String CHUNKED_CHUNK_RETRIES_DOCS = "The number of times"
+      + " `ChunkedClaimCheckBackend` retries a failed chunk check in, before failing the"
+      + " payload.";
+
+  public static final String CHUNKED_CHECKOUT_BUFFER_MAX_BYTES_DOCS = "The budget for chunks read"
+      + " ahead by the streaming check outs of a `ChunkedClaimCheckBackend`. It is separate from"
+      + " the read-ahead budget of the backend it wraps.";
+
+  public static final String EXECUTOR_TYPE_DOCS = "How blocking backend calls are run by"
+      + " `ClaimCheckAsyncProducer`, `ClaimCheckPrefetcher` and the ranged downloads of the"
+      + " backends: `platform` for pools of threads sized by their thread and concurrency configs,"
+      + " `virtual` for a virtual thread per call, bounded by the in-flight configs instead, or"
+      + " `caller` to run them in the calling thread, one at a time. `virtual` needs Java 21 or"
+      + " later.";
+
   static ConfigDef buildConfigDef(ConfigDef base) {
     base.define(Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG,
         ConfigDef.Type.LONG,
         CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_DEFAULT,
         ConfigDef.Importance.MEDIUM, CHECKIN_SIZE_OVER);
 
+    base.define(Keys.CLAIMCHECK_CHECKIN_COMPRESSION_TYPE, ConfigDef.Type.STRING,
+        CLAIMCHECK_CHECKIN_COMPRESSION_TYPE_DEFAULT,
+        ConfigDef.ValidString.in(Arrays.stream(ClaimCheckCompressionType.values())
+            .map(ClaimCheckCompressionType::getName).toArray(String[]::new)),
+        ConfigDef.Importance.MEDIUM, CHECKIN_COMPRESSION_TYPE_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKIN_COMPRESSION_LEVEL, ConfigDef.Type.INT,
+        null,
+        ConfigDef.Importance.LOW, CHECKIN_COMPRESSION_LEVEL_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKIN_ASYNC_MAX_IN_FLIGHT_CONFIG, ConfigDef.Type.INT,
+        CLAIMCHECK_CHECKIN_ASYNC_MAX_IN_FLIGHT_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, CHECKIN_ASYNC_MAX_IN_FLIGHT_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKIN_ASYNC_THREADS_CONFIG, ConfigDef.Type.INT,
+        CLAIMCHECK_CHECKIN_ASYNC_THREADS_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, CHECKIN_ASYNC_THREADS_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKIN_ASYNC_LINGER_MS_CONFIG, ConfigDef.Type.LONG,
+        0L, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHECKIN_ASYNC_LINGER_MS_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKIN_ASYNC_BATCH_MAX_RECORDS_CONFIG, ConfigDef.Type.INT,
+        CLAIMCHECK_CHECKIN_ASYNC_BATCH_MAX_RECORDS_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, CHECKIN_ASYNC_BATCH_MAX_RECORDS_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKOUT_PREFETCH_MAX_IN_FLIGHT_CONFIG, ConfigDef.Type.INT,
+        CLAIMCHECK_CHECKOUT_PREFETCH_MAX_IN_FLIGHT_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, CHECKOUT_PREFETCH_MAX_IN_FLIGHT_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKOUT_PREFETCH_BUFFER_MAX_BYTES_CONFIG, ConfigDef.Type.LONG,
+        CLAIMCHECK_CHECKOUT_PREFETCH_BUFFER_MAX_BYTES_DEFAULT, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHECKOUT_PREFETCH_BUFFER_MAX_BYTES_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKOUT_CACHE_MAX_BYTES_CONFIG, ConfigDef.Type.LONG,
+        0L, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHECKOUT_CACHE_MAX_BYTES_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKOUT_CACHE_NAME_CONFIG, ConfigDef.Type.STRING,
+        CLAIMCHECK_CHECKOUT_CACHE_NAME_DEFAULT, new ConfigDef.NonEmptyString(),
+        ConfigDef.Importance.LOW, CHECKOUT_CACHE_NAME_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKOUT_CACHE_DISK_DIRECTORY_CONFIG, ConfigDef.Type.STRING,
+        null,
+        ConfigDef.Importance.LOW, CHECKOUT_CACHE_DISK_DIRECTORY_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKOUT_CACHE_DISK_MAX_BYTES_CONFIG, ConfigDef.Type.LONG,
+        CLAIMCHECK_CHECKOUT_CACHE_DISK_MAX_BYTES_DEFAULT, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHECKOUT_CACHE_DISK_MAX_BYTES_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKOUT_BUFFER_POOL_MAX_BYTES_CONFIG, ConfigDef.Type.LONG,
+        0L, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHECKOUT_BUFFER_POOL_MAX_BYTES_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHECKOUT_FETCH_PREDICATE_CLASS_CONFIG, ConfigDef.Type.CLASS,
+        null,
+        ConfigDef.Importance.LOW, CHECKOUT_FETCH_PREDICATE_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHUNKED_BACKEND_CLASS_CONFIG, ConfigDef.Type.CLASS,
+        null,
+        ConfigDef.Importance.LOW, CHUNKED_BACKEND_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHUNKED_CHUNK_SIZE_BYTES_CONFIG, ConfigDef.Type.INT,
+        CLAIMCHECK_CHUNKED_CHUNK_SIZE_BYTES_DEFAULT,
+        ConfigDef.Range.between(1, ParallelRangeDownloader.MAX_ARRAY_SIZE),
+        ConfigDef.Importance.LOW, CHUNKED_CHUNK_SIZE_BYTES_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHUNKED_MAX_CONCURRENCY_CONFIG, ConfigDef.Type.INT,
+        CLAIMCHECK_CHUNKED_MAX_CONCURRENCY_DEFAULT, ConfigDef.Range.atLeast(1),
+        ConfigDef.Importance.LOW, CHUNKED_MAX_CONCURRENCY_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHUNKED_CHUNK_RETRIES_CONFIG, ConfigDef.Type.INT,
+        CLAIMCHECK_CHUNKED_CHUNK_RETRIES_DEFAULT, ConfigDef.Range.atLeast(0),
+        ConfigDef.Importance.LOW, CHUNKED_CHUNK_RETRIES_DOCS);
+
+    base.define(Keys.CLAIMCHECK_CHUNKED_CHECKOUT_BUFFER_MAX_BYTES_CONFIG, ConfigDef.Type.LONG,
+        CLAIMCHECK_CHUNKED_CHECKOUT_BUFFER_MAX_BYTES_DEFAULT,
+        ConfigDef.Range.between(1, Integer.MAX_VALUE),
+        ConfigDef.Importance.LOW, CHUNKED_CHECKOUT_BUFFER_MAX_BYTES_DOCS);
+
+    base.define(Keys.CLAIMCHECK_EXECUTOR_TYPE_CONFIG, ConfigDef.Type.STRING,
+        CLAIMCHECK_EXECUTOR_TYPE_DEFAULT,
+        ConfigDef.ValidString.in(Arrays.stream(ClaimCheckExecutorType.values())
+            .map(ClaimCheckExecutorType::getName).toArray(String[]::new)),
+        ConfigDef.Importance.LOW, EXECUTOR_TYPE_DOCS);
+
     base.define(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ConfigDef.Type.CLASS,
             null,
             ConfigDef.Importance.MEDIUM, VALUE_SERIALIZER_DOCS);
@@ -75,6 +294,10 @@ public class BaseClaimCheckConfig extends AbstractConfig {
         NO_DEFAULT_VALUE,
         ConfigDef.Importance.MEDIUM, BACKEND_DOCS);
 
+    base.define(Keys.CLAIMCHECK_BACKEND_SHARED_CONFIG, ConfigDef.Type.BOOLEAN,
+        false,
+        ConfigDef.Importance.LOW, BACKEND_SHARED_DOCS);
+
     base.define(Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS, ConfigDef.Type.CLASS,
         null,
         ConfigDef.Importance.MEDIUM, WRAPPED_DESERIALIZER_DOCS);
@@ -118,7 +341,25 @@ public class BaseClaimCheckConfig extends AbstractConfig {
    * @throws ConfigException if configuration is not valid
    */
   void validate() {
-    // assume parse is enough
+    getCompressionType().validateLevel(getCompressionLevel());
+    getExecutorType().validate();
+  }
+
+  public ClaimCheckCompressionType getCompressionType() {
+    return ClaimCheckCompressionType.forName(getString(Keys.CLAIMCHECK_CHECKIN_COMPRESSION_TYPE));
+  }
+
+  /**
+   * Get the configured compression level.
+   *
+   * @return the level, or null for the default of the compression type
+   */
+  public Integer getCompressionLevel() {
+    return getInt(Keys.CLAIMCHECK_CHECKIN_COMPRESSION_LEVEL);
+  }
+
+  public ClaimCheckExecutorType getExecutorType() {
+    return ClaimCheckExecutorType.forName(getString(Keys.CLAIMCHECK_EXECUTOR_TYPE_CONFIG));
   }
 
   /**
@@ -131,6 +372,69 @@ public class BaseClaimCheckConfig extends AbstractConfig {
     public static final String CLAIMCHECK_BACKEND_CLASS_CONFIG
         = "claimcheck.backend.class";
 
+    public static final String CLAIMCHECK_BACKEND_SHARED_CONFIG
+        = "claimcheck.backend.shared";
+
+    public static final String CLAIMCHECK_CHECKIN_COMPRESSION_TYPE
+        = "claimcheck.checkin.compression.type";
+
+    public static final String CLAIMCHECK_CHECKIN_COMPRESSION_LEVEL
+        = "claimcheck.checkin.compression.level";
+
+    public static final String CLAIMCHECK_CHECKIN_ASYNC_MAX_IN_FLIGHT_CONFIG
+        = "claimcheck.checkin.async.max.in.flight";
+
+    public static final String CLAIMCHECK_CHECKIN_ASYNC_THREADS_CONFIG
+        = "claimcheck.checkin.async.threads";
+
+    public static final String CLAIMCHECK_CHECKIN_ASYNC_LINGER_MS_CONFIG
+        = "claimcheck.checkin.async.linger.ms";
+
+    public static final String CLAIMCHECK_CHECKIN_ASYNC_BATCH_MAX_RECORDS_CONFIG
+        = "claimcheck.checkin.async.batch.max.records";
+
+    public static final String CLAIMCHECK_CHECKOUT_PREFETCH_MAX_IN_FLIGHT_CONFIG
+        = "claimcheck.checkout.prefetch.max.in.flight";
+
+    public static final String CLAIMCHECK_CHECKOUT_PREFETCH_BUFFER_MAX_BYTES_CONFIG
+        = "claimcheck.checkout.prefetch.buffer.max.bytes";
+
+    public static final String CLAIMCHECK_CHECKOUT_CACHE_MAX_BYTES_CONFIG
+        = "claimcheck.checkout.cache.max.bytes";
+
+    public static final String CLAIMCHECK_CHECKOUT_CACHE_NAME_CONFIG
+        = "claimcheck.checkout.cache.name";
+
+    public static final String CLAIMCHECK_CHECKOUT_CACHE_DISK_DIRECTORY_CONFIG
+        = "claimcheck.checkout.cache.disk.directory";
+
+    public static final String CLAIMCHECK_CHECKOUT_CACHE_DISK_MAX_BYTES_CONFIG
+        = "claimcheck.checkout.cache.disk.max.bytes";
+
+    public static final String CLAIMCHECK_CHECKOUT_BUFFER_POOL_MAX_BYTES_CONFIG
+        = "claimcheck.checkout.buffer.pool.max.bytes";
+
+    public static final String CLAIMCHECK_CHECKOUT_FETCH_PREDICATE_CLASS_CONFIG
+        = "claimcheck.checkout.fetch.predicate.class";
+
+    public static final String CLAIMCHECK_CHUNKED_BACKEND_CLASS_CONFIG
+        = "claimcheck.chunked.backend.class";
+
+    public static final String CLAIMCHECK_CHUNKED_CHUNK_SIZE_BYTES_CONFIG
+        = "claimcheck.chunked.chunk.size.bytes";
+
+    public static final String CLAIMCHECK_CHUNKED_MAX_CONCURRENCY_CONFIG
+        = "claimcheck.chunked.max.concurrency";
+
+    public static final String CLAIMCHECK_CHUNKED_CHUNK_RETRIES_CONFIG
+        = "claimcheck.chunked.chunk.retries";
+
+    public static final String CLAIMCHECK_CHUNKED_CHECKOUT_BUFFER_MAX_BYTES_CONFIG
+        = "claimcheck.chunked.checkout.buffer.max.bytes";
+
+    public static final String CLAIMCHECK_EXECUTOR_TYPE_CONFIG
+        = "claimcheck.executor.type";
+
     public static final String CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS
         = ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG
           + ".wrapped.deserializer";
@@ -0,0 +1,47 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes into the remaining bytes of a buffer, for downloading into direct buffers with SDKs
+ * that write to streams.
+ */
+public class BufferRangeOutputStream extends OutputStream {
+  private final ByteBuffer target;
+
+  /**
+   * Create a stream writing to a buffer, from its position up to its limit.
+   *
+   * @param target buffer to write into, not shared with other streams
+   */
+  public BufferRangeOutputStream(ByteBuffer target) {
+    this.target = target;
+  }
+
+  /**
+   * Get the number of bytes written.
+   *
+   * @return the position in the target buffer
+   */
+  public int getPosition() {
+    return target.position();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (!target.hasRemaining()) {
+      throw new IOException("Write beyond end of range");
+    }
+    target.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (len > target.remaining()) {
+      throw new IOException("Write beyond end of range");
+    }
+    target.put(b, off, len);
+  }
+}
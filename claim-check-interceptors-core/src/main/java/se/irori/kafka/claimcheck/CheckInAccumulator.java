@@ -0,0 +1,146 @@
+package se.irori.kafka.claimcheck;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/**
+ * Collects records to check in over a linger time, and checks them in as one batch with
+ * {@link ClaimCheckBackend#checkInBatchAsync(List, Executor)}, much like the producer collects
+ * records for a partition over `linger.ms`.
+ *
+ * <p>A batch is checked in when the linger time has passed since its first record, when it
+ * holds the maximum number of records, or on {@link #flush()}. If the batch check in fails,
+ * all of its records fail.
+ */
+class CheckInAccumulator {
+
+  private final ClaimCheckBackend claimCheckBackend;
+
+  private final ClaimCheckMetrics metrics;
+
+  private final Executor checkInExecutor;
+
+  private final long lingerMs;
+
+  private final int batchMaxRecords;
+
+  private final ScheduledExecutorService lingerScheduler =
+      Executors.newSingleThreadScheduledExecutor(new ClaimCheckThreadFactory("claim-check-linger"));
+
+  // guarded by this
+  private List<Pending> batch = new ArrayList<>();
+
+  // guarded by this
+  private ScheduledFuture<?> lingerTimeout;
+
+  CheckInAccumulator(ClaimCheckBackend claimCheckBackend, ClaimCheckMetrics metrics,
+                     Executor checkInExecutor, long lingerMs, int batchMaxRecords) {
+    this.claimCheckBackend = claimCheckBackend;
+    this.metrics = metrics;
+    this.checkInExecutor = checkInExecutor;
+    this.lingerMs = lingerMs;
+    this.batchMaxRecords = batchMaxRecords;
+  }
+
+  /**
+   * Add a record to the current batch.
+   *
+   * @param largeRecord the record to check in
+   * @return a future completed with the Claim Check once the batch is checked in
+   */
+  CompletableFuture<ClaimCheck> add(ProducerRecord<byte[], byte[]> largeRecord) {
+    Pending pending = new Pending(largeRecord);
+    List<Pending> full = null;
+    synchronized (this) {
+      batch.add(pending);
+      if (batch.size() >= batchMaxRecords) {
+        full = drain();
+      } else if (batch.size() == 1) {
+        lingerTimeout = lingerScheduler.schedule(this::flush, lingerMs, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (full != null) {
+      checkIn(full);
+    }
+    return pending.claimCheck;
+  }
+
+  /**
+   * Check in the current batch without waiting for the linger time.
+   */
+  void flush() {
+    List<Pending> drained;
+    synchronized (this) {
+      drained = drain();
+    }
+    if (!drained.isEmpty()) {
+      checkIn(drained);
+    }
+  }
+
+  private List<Pending> drain() {
+    List<Pending> drained = batch;
+    batch = new ArrayList<>();
+    if (lingerTimeout != null) {
+      lingerTimeout.cancel(false);
+      lingerTimeout = null;
+    }
+    return drained;
+  }
+
+  private void checkIn(List<Pending> drained) {
+    List<ProducerRecord<byte[], byte[]>> records = new ArrayList<>(drained.size());
+    List<ClaimCheckMetrics.Operation> operations = new ArrayList<>(drained.size());
+    for (Pending pending : drained) {
+      records.add(pending.largeRecord);
+      operations.add(metrics.startCheckIn(pending.largeRecord.topic()));
+    }
+
+    CompletableFuture<List<ClaimCheck>> checkIns;
+    try {
+      checkIns = claimCheckBackend.checkInBatchAsync(records, checkInExecutor);
+    } catch (RuntimeException e) {
+      checkIns = new CompletableFuture<>();
+      checkIns.completeExceptionally(e);
+    }
+
+    checkIns.whenComplete((claimChecks, e) -> {
+      for (int i = 0; i < drained.size(); i++) {
+        Pending pending = drained.get(i);
+        if (e == null) {
+          byte[] payload = pending.largeRecord.value();
+          operations.get(i).complete(payload == null ? 0 : payload.length);
+          pending.claimCheck.complete(claimChecks.get(i));
+        } else {
+          operations.get(i).fail(e);
+          pending.claimCheck.completeExceptionally(e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Check in any current batch, and stop the linger timer.
+   */
+  void close() {
+    flush();
+    lingerScheduler.shutdownNow();
+  }
+
+  private static class Pending {
+    final ProducerRecord<byte[], byte[]> largeRecord;
+
+    final CompletableFuture<ClaimCheck> claimCheck = new CompletableFuture<>();
+
+    Pending(ProducerRecord<byte[], byte[]> largeRecord) {
+      this.largeRecord = largeRecord;
+    }
+  }
+}
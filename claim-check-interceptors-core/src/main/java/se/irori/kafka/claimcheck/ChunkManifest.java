@@ -0,0 +1,123 @@
+package se.irori.kafka.claimcheck;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.apache.kafka.common.errors.KafkaStorageException;
+
+/**
+ * Lists the chunks a payload is stored as by {@link ChunkedClaimCheckBackend}, in order.
+ *
+ * <p>Stored as UTF-8 text, a version line, a line with the payload and chunk sizes, and a line
+ * per chunk with its length, CRC32 checksum and claim check reference:
+ * <pre>
+ * claim-check-manifest 1
+ * 20971520 8388608
+ * 8388608 1c291ca3 https://account.blob.core.windows.net/topic/5d2f...
+ * </pre>
+ */
+final class ChunkManifest {
+
+  private static final String VERSION_LINE = "claim-check-manifest 1";
+
+  private final long size;
+
+  private final int chunkSize;
+
+  private final List<Chunk> chunks;
+
+  ChunkManifest(long size, int chunkSize, List<Chunk> chunks) {
+    this.size = size;
+    this.chunkSize = chunkSize;
+    this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+  }
+
+  long getSize() {
+    return size;
+  }
+
+  int getChunkSize() {
+    return chunkSize;
+  }
+
+  List<Chunk> getChunks() {
+    return chunks;
+  }
+
+  byte[] toBytes() {
+    StringBuilder manifest = new StringBuilder(VERSION_LINE).append('\n')
+        .append(size).append(' ').append(chunkSize).append('\n');
+    for (Chunk chunk : chunks) {
+      manifest.append(chunk.length).append(' ')
+          .append(Long.toHexString(chunk.crc)).append(' ')
+          .append(chunk.reference).append('\n');
+    }
+    return manifest.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Parse a stored manifest.
+   *
+   * @param manifest the manifest bytes
+   * @return the manifest
+   * @throws KafkaStorageException if not a valid manifest
+   */
+  static ChunkManifest parse(byte[] manifest) {
+    String[] lines = new String(manifest, StandardCharsets.UTF_8).split("\n");
+    if (lines.length < 2 || !VERSION_LINE.equals(lines[0])) {
+      throw new KafkaStorageException("Not a chunk manifest, or of an unknown version");
+    }
+    try {
+      String[] sizes = lines[1].split(" ");
+      long size = Long.parseLong(sizes[0]);
+      int chunkSize = Integer.parseInt(sizes[1]);
+      List<Chunk> chunks = new ArrayList<>(lines.length - 2);
+      long chunksSize = 0;
+      for (int i = 2; i < lines.length; i++) {
+        String[] fields = lines[i].split(" ", 3);
+        Chunk chunk = new Chunk(Integer.parseInt(fields[0]), Long.parseLong(fields[1], 16),
+            fields[2]);
+        // chunks are found by offset, only the last may be shorter
+        boolean last = i == lines.length - 1;
+        if (last ? chunk.length > chunkSize : chunk.length != chunkSize) {
+          throw new KafkaStorageException("Chunk " + (i - 2) + " of " + chunk.length
+              + " bytes in chunk manifest of " + chunkSize + " byte chunks");
+        }
+        chunks.add(chunk);
+        chunksSize += chunk.length;
+      }
+      if (chunksSize != size) {
+        throw new KafkaStorageException("Chunk manifest of " + size + " bytes lists "
+            + chunksSize + " bytes of chunks");
+      }
+      return new ChunkManifest(size, chunkSize, chunks);
+    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      throw new KafkaStorageException("Malformed chunk manifest", e);
+    }
+  }
+
+  static long crc32(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length);
+    return crc.getValue();
+  }
+
+  /**
+   * A chunk of a payload.
+   */
+  static final class Chunk {
+    final int length;
+
+    final long crc;
+
+    final String reference;
+
+    Chunk(int length, long crc, String reference) {
+      this.length = length;
+      this.crc = crc;
+      this.reference = reference;
+    }
+  }
+}
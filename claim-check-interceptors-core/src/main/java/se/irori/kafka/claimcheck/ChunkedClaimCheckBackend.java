@@ -0,0 +1,293 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig.Keys;
+
+/**
+ * Stores large payloads in any other backend as chunks, uploaded and downloaded concurrently,
+ * so that a failed upload only retries a chunk, and transfers are not bound by one stream.
+ *
+ * <p>Payloads larger than `claimcheck.chunked.chunk.size.bytes` are split into chunks, each
+ * checked in with the backend in `claimcheck.chunked.backend.class`. A {@link ChunkManifest}
+ * listing the chunks and their checksums is then checked in, and the claim check refers to it
+ * with the `chunked:` prefix. Smaller payloads are checked in as they are, so consumers also
+ * read claim checks issued directly by the wrapped backend.
+ *
+ * <p>Chunks are checked against their checksums when checked out, either into an array of the
+ * payload size, or as a stream reading chunks ahead.
+ */
+public class ChunkedClaimCheckBackend implements ClaimCheckBackend {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ChunkedClaimCheckBackend.class);
+
+  /**
+   * Prefix of the references of claim checks to manifests.
+   */
+  public static final String MANIFEST_REFERENCE_PREFIX = "chunked:";
+
+  private ClaimCheckBackend backend;
+
+  private int chunkSize;
+
+  private int maxConcurrency;
+
+  private int chunkRetries;
+
+  private ExecutorService executor;
+
+  private ReadAheadInputStream.Budget readAheadBudget;
+
+  @Override
+  public ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord) {
+    byte[] payload = largeRecord.value();
+    if (payload == null || payload.length <= chunkSize) {
+      return backend.checkIn(largeRecord);
+    }
+
+    int count = (int) ((payload.length + (long) chunkSize - 1) / chunkSize);
+    ChunkManifest.Chunk[] chunks = new ChunkManifest.Chunk[count];
+    forEachChunk(count, index -> {
+      int offset = index * chunkSize;
+      chunks[index] = checkInChunk(largeRecord.topic(), Arrays.copyOfRange(payload, offset,
+          Math.min(payload.length, offset + chunkSize)));
+    });
+    return checkInManifest(largeRecord.topic(),
+        new ChunkManifest(payload.length, chunkSize, Arrays.asList(chunks)));
+  }
+
+  /**
+   * Check in a stream as chunks, read one at a time while earlier chunks are checked in. At most
+   * `claimcheck.chunked.max.concurrency` chunks are held in memory.
+   */
+  @Override
+  public ClaimCheck checkInStreaming(String topic, InputStream payload, long payloadSize) {
+    byte[] first = readChunk(payload);
+    if (first.length < chunkSize) {
+      // all of the payload, e.g. when compressed
+      return backend.checkIn(new ProducerRecord<>(topic, first));
+    }
+
+    Semaphore inFlight = new Semaphore(maxConcurrency);
+    AtomicBoolean failed = new AtomicBoolean();
+    List<CompletableFuture<ChunkManifest.Chunk>> checkIns = new ArrayList<>();
+    long size = 0;
+    byte[] chunk = first;
+    try {
+      while (chunk.length > 0 && !failed.get()) {
+        inFlight.acquire();
+        byte[] data = chunk;
+        checkIns.add(CompletableFuture.supplyAsync(() -> checkInChunk(topic, data), executor)
+            .whenComplete((result, e) -> {
+              if (e != null) {
+                failed.set(true);
+              }
+              inFlight.release();
+            }));
+        size += chunk.length;
+        chunk = chunk.length < chunkSize ? new byte[0] : readChunk(payload);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptException(e);
+    }
+
+    List<ChunkManifest.Chunk> chunks = new ArrayList<>(checkIns.size());
+    for (CompletableFuture<ChunkManifest.Chunk> checkIn : checkIns) {
+      chunks.add(join(checkIn));
+    }
+    return checkInManifest(topic, new ChunkManifest(size, chunkSize, chunks));
+  }
+
+  /**
+   * Read a chunk from a stream, or less at the end of the stream.
+   */
+  private byte[] readChunk(InputStream payload) {
+    byte[] chunk = new byte[chunkSize];
+    int read = 0;
+    try {
+      int n;
+      while (read < chunkSize && (n = payload.read(chunk, read, chunkSize - read)) >= 0) {
+        read += n;
+      }
+    } catch (IOException e) {
+      throw new KafkaStorageException("Could not read payload to check in", e);
+    }
+    return read == chunkSize ? chunk : Arrays.copyOf(chunk, read);
+  }
+
+  private ChunkManifest.Chunk checkInChunk(String topic, byte[] data) {
+    long crc = ChunkManifest.crc32(data);
+    for (int attempt = 0; ; attempt++) {
+      try {
+        ClaimCheck claimCheck = backend.checkIn(new ProducerRecord<>(topic, data));
+        return new ChunkManifest.Chunk(data.length, crc, claimCheck.getReference());
+      } catch (RuntimeException e) {
+        if (attempt >= chunkRetries) {
+          throw e;
+        }
+        LOG.warn("retrying chunk check in: topic={}, attempt={}", topic, attempt + 1, e);
+      }
+    }
+  }
+
+  private ClaimCheck checkInManifest(String topic, ChunkManifest manifest) {
+    ClaimCheck claimCheck = backend.checkIn(new ProducerRecord<>(topic, manifest.toBytes()));
+    LOG.trace("checked in chunks: topic={}, size={}, chunks={}, manifest={}",
+        topic, manifest.getSize(), manifest.getChunks().size(), claimCheck.getReference());
+    return new ClaimCheck(MANIFEST_REFERENCE_PREFIX + claimCheck.getReference());
+  }
+
+  /**
+   * Check out a payload, with its chunks checked out concurrently into an array of its size.
+   */
+  @Override
+  public byte[] checkOut(ClaimCheck claimCheck) {
+    ChunkManifest manifest = checkOutManifest(claimCheck);
+    if (manifest == null) {
+      return backend.checkOut(claimCheck);
+    }
+
+    byte[] payload = ParallelRangeDownloader.allocate(manifest.getSize());
+    List<ChunkManifest.Chunk> chunks = manifest.getChunks();
+    forEachChunk(chunks.size(), index -> {
+      byte[] data = checkOutChunk(chunks.get(index), index);
+      System.arraycopy(data, 0, payload, (int) ((long) index * manifest.getChunkSize()),
+          data.length);
+    });
+    return payload;
+  }
+
+  /**
+   * Stream a payload, checking out `claimcheck.chunked.max.concurrency` chunks ahead.
+   */
+  @Override
+  public InputStream checkOutStreaming(ClaimCheck claimCheck) {
+    ChunkManifest manifest = checkOutManifest(claimCheck);
+    if (manifest == null) {
+      return backend.checkOutStreaming(claimCheck);
+    }
+
+    int manifestChunkSize = manifest.getChunkSize();
+    List<ChunkManifest.Chunk> chunks = manifest.getChunks();
+    return new ReadAheadInputStream(manifest.getSize(), manifestChunkSize, maxConcurrency,
+        executor, readAheadBudget, (offset, target, targetOffset, length) -> {
+          int index = (int) (offset / manifestChunkSize);
+          byte[] data = checkOutChunk(chunks.get(index), index);
+          System.arraycopy(data, 0, target, targetOffset, length);
+        });
+  }
+
+  /**
+   * Check out the manifest a claim check refers to.
+   *
+   * @return the manifest, or null if the claim check is not to a manifest
+   */
+  private ChunkManifest checkOutManifest(ClaimCheck claimCheck) {
+    String reference = claimCheck.getReference();
+    if (!reference.startsWith(MANIFEST_REFERENCE_PREFIX)) {
+      return null;
+    }
+    return ChunkManifest.parse(backend.checkOut(
+        new ClaimCheck(reference.substring(MANIFEST_REFERENCE_PREFIX.length()))));
+  }
+
+  private byte[] checkOutChunk(ChunkManifest.Chunk chunk, int index) {
+    byte[] data = backend.checkOut(new ClaimCheck(chunk.reference));
+    if (data.length != chunk.length || ChunkManifest.crc32(data) != chunk.crc) {
+      throw new KafkaStorageException("Chunk " + index + " does not match its checksum: "
+          + chunk.reference);
+    }
+    return data;
+  }
+
+  /**
+   * Run a task for each chunk, with at most `claimcheck.chunked.max.concurrency` at a time.
+   */
+  private void forEachChunk(int count, ChunkTask task) {
+    AtomicInteger nextIndex = new AtomicInteger();
+    AtomicBoolean failed = new AtomicBoolean();
+    List<CompletableFuture<Void>> workers = new ArrayList<>();
+    for (int i = 0; i < Math.min(maxConcurrency, count); i++) {
+      workers.add(CompletableFuture.runAsync(() -> {
+        int index;
+        while (!failed.get() && (index = nextIndex.getAndIncrement()) < count) {
+          try {
+            task.run(index);
+          } catch (RuntimeException e) {
+            failed.set(true);
+            throw e;
+          }
+        }
+      }, executor));
+    }
+    join(CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])));
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new KafkaStorageException("Chunk transfer failed", cause);
+    }
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+    BaseClaimCheckConfig config = BaseClaimCheckConfig.validatedConfig(configs);
+    Class<?> backendClass = config.getClass(Keys.CLAIMCHECK_CHUNKED_BACKEND_CLASS_CONFIG);
+    if (backendClass == null || ChunkedClaimCheckBackend.class.equals(backendClass)) {
+      throw new ConfigException("'" + Keys.CLAIMCHECK_CHUNKED_BACKEND_CLASS_CONFIG
+          + "' must be set to the backend to store chunks in");
+    }
+
+    backend = config.getConfiguredInstance(Keys.CLAIMCHECK_CHUNKED_BACKEND_CLASS_CONFIG,
+        ClaimCheckBackend.class);
+    chunkSize = config.getInt(Keys.CLAIMCHECK_CHUNKED_CHUNK_SIZE_BYTES_CONFIG);
+    maxConcurrency = config.getInt(Keys.CLAIMCHECK_CHUNKED_MAX_CONCURRENCY_CONFIG);
+    chunkRetries = config.getInt(Keys.CLAIMCHECK_CHUNKED_CHUNK_RETRIES_CONFIG);
+    executor = config.getExecutorType().newExecutor(maxConcurrency, "claim-check-chunked");
+    // not the JVM wide budget, which a wrapped Azure v12 backend sizes from its own config
+    readAheadBudget = new ReadAheadInputStream.Budget(config.getLong(
+        Keys.CLAIMCHECK_CHUNKED_CHECKOUT_BUFFER_MAX_BYTES_CONFIG));
+  }
+
+  ReadAheadInputStream.Budget getReadAheadBudget() {
+    return readAheadBudget;
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (backend != null) {
+      backend.close();
+    }
+  }
+
+  @FunctionalInterface
+  private interface ChunkTask {
+    void run(int index);
+  }
+}
@@ -1,28 +1,205 @@
 package se.irori.kafka.claimcheck;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.kafka.common.errors.KafkaStorageException;
 
 /**
  * Represents a Claim Check in the claim check pattern.
  *
  * <p>https://www.enterpriseintegrationpatterns.com/patterns/messaging/StoreInLibrary.html
+ *
+ * <p>A reference is either a string, e.g. a blob URL, serialized as UTF-8, or compact, as created
+ * by {@link #compact(byte, String, byte[])}. Compact references are serialized as a version byte,
+ * a backend id byte, the length prefixed UTF-8 container name, and a binary object id:
+ * <pre>
+ * 0x01 | backend id | container length | container | object id
+ * </pre>
+ * The version byte is a control character no string reference starts with, so that both are
+ * told apart when de-serialized. The string form of a compact reference,
+ * `compact:&lt;backend id&gt;/&lt;container&gt;/&lt;hex object id&gt;`, is parsed back into it.
  */
 public class ClaimCheck {
+
+  /**
+   * The first byte of a serialized compact reference.
+   */
+  public static final byte COMPACT_FORMAT_VERSION = 1;
+
+  static final String COMPACT_REFERENCE_PREFIX = "compact:";
+
+  private static final int MAX_CONTAINER_LENGTH = 255;
+
   private final String reference;
 
+  private final byte backendId;
+
+  private final String container;
+
+  private final byte[] objectId;
+
+  /**
+   * Create a Claim Check from a reference, parsing the string form of compact references.
+   *
+   * @param reference the reference
+   * @throws KafkaStorageException if a malformed compact reference
+   */
   public ClaimCheck(String reference) {
+    if (reference.startsWith(COMPACT_REFERENCE_PREFIX)) {
+      String[] parts = reference.substring(COMPACT_REFERENCE_PREFIX.length()).split("/", 3);
+      if (parts.length != 3) {
+        throw new KafkaStorageException("Malformed compact claim check reference: " + reference);
+      }
+      try {
+        this.backendId = Byte.parseByte(parts[0]);
+      } catch (NumberFormatException e) {
+        throw new KafkaStorageException("Malformed compact claim check reference: " + reference);
+      }
+      this.container = parts[1];
+      this.objectId = fromHex(parts[2]);
+    } else {
+      this.backendId = 0;
+      this.container = null;
+      this.objectId = null;
+    }
     this.reference = reference;
   }
 
+  /**
+   * De-serialize a reference, compact or string.
+   *
+   * @param serializedReference the reference as serialized by {@link #serialize()}
+   * @throws KafkaStorageException if a malformed compact reference
+   */
   public ClaimCheck(byte[] serializedReference) {
-    this.reference = new String(serializedReference, StandardCharsets.UTF_8);
+    if (serializedReference.length > 0 && serializedReference[0] == COMPACT_FORMAT_VERSION) {
+      if (serializedReference.length < 4
+          || serializedReference.length < 4 + (serializedReference[2] & 0xff)) {
+        throw new KafkaStorageException("Malformed compact claim check reference of "
+            + serializedReference.length + " bytes");
+      }
+      int containerLength = serializedReference[2] & 0xff;
+      this.backendId = serializedReference[1];
+      this.container = new String(serializedReference, 3, containerLength,
+          StandardCharsets.UTF_8);
+      this.objectId = Arrays.copyOfRange(serializedReference, 3 + containerLength,
+          serializedReference.length);
+      this.reference = toReference(backendId, container, objectId);
+    } else {
+      this.reference = new String(serializedReference, StandardCharsets.UTF_8);
+      this.backendId = 0;
+      this.container = null;
+      this.objectId = null;
+    }
+  }
+
+  private ClaimCheck(byte backendId, String container, byte[] objectId) {
+    this.backendId = backendId;
+    this.container = container;
+    this.objectId = objectId;
+    this.reference = toReference(backendId, container, objectId);
+  }
+
+  /**
+   * Create a compact reference, serialized in fewer bytes than e.g. a URL.
+   *
+   * @param backendId id of the backend the reference is resolved by, e.g. to fail fast when read
+   *                  by a backend of another kind
+   * @param container name of the container, e.g. topic, of the object
+   * @param objectId  binary id of the object in the container
+   * @return the Claim Check
+   * @throws IllegalArgumentException if the container name is longer than 255 bytes, or the
+   *                                  object id empty
+   */
+  public static ClaimCheck compact(byte backendId, String container, byte[] objectId) {
+    if (container.isEmpty() || container.indexOf('/') >= 0
+        || container.getBytes(StandardCharsets.UTF_8).length > MAX_CONTAINER_LENGTH) {
+      throw new IllegalArgumentException("Invalid container for compact reference: "
+          + container);
+    }
+    if (objectId.length == 0) {
+      throw new IllegalArgumentException("Empty object id for compact reference");
+    }
+    return new ClaimCheck(backendId, container, objectId.clone());
   }
 
+  /**
+   * Serialize the reference, for the `message-claim-check` header.
+   *
+   * @return the compact serialization if compact, otherwise the UTF-8 reference
+   */
   public byte[] serialize() {
-    return reference.getBytes(StandardCharsets.UTF_8);
+    if (!isCompact()) {
+      return reference.getBytes(StandardCharsets.UTF_8);
+    }
+    byte[] containerBytes = container.getBytes(StandardCharsets.UTF_8);
+    byte[] serialized = new byte[3 + containerBytes.length + objectId.length];
+    serialized[0] = COMPACT_FORMAT_VERSION;
+    serialized[1] = backendId;
+    serialized[2] = (byte) containerBytes.length;
+    System.arraycopy(containerBytes, 0, serialized, 3, containerBytes.length);
+    System.arraycopy(objectId, 0, serialized, 3 + containerBytes.length, objectId.length);
+    return serialized;
   }
 
+  /**
+   * Get the reference as a string, also for compact references.
+   *
+   * @return the reference
+   */
   public String getReference() {
     return reference;
   }
+
+  public boolean isCompact() {
+    return container != null;
+  }
+
+  public byte getBackendId() {
+    return backendId;
+  }
+
+  /**
+   * Get the container of a compact reference.
+   *
+   * @return the container name, or null if not compact
+   */
+  public String getContainer() {
+    return container;
+  }
+
+  /**
+   * Get the object id of a compact reference.
+   *
+   * @return a copy of the object id, or null if not compact
+   */
+  public byte[] getObjectId() {
+    return objectId == null ? null : objectId.clone();
+  }
+
+  private static String toReference(byte backendId, String container, byte[] objectId) {
+    StringBuilder reference = new StringBuilder(COMPACT_REFERENCE_PREFIX)
+        .append(backendId).append('/').append(container).append('/');
+    for (byte b : objectId) {
+      reference.append(Character.forDigit((b >> 4) & 0xf, 16))
+          .append(Character.forDigit(b & 0xf, 16));
+    }
+    return reference.toString();
+  }
+
+  private static byte[] fromHex(String hex) {
+    if (hex.isEmpty() || hex.length() % 2 != 0) {
+      throw new KafkaStorageException("Malformed compact claim check object id: " + hex);
+    }
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      int high = Character.digit(hex.charAt(2 * i), 16);
+      int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new KafkaStorageException("Malformed compact claim check object id: " + hex);
+      }
+      bytes[i] = (byte) (high << 4 | low);
+    }
+    return bytes;
+  }
 }
@@ -0,0 +1,430 @@
+package se.irori.kafka.claimcheck;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.serialization.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig.Keys;
+
+/**
+ * Producer wrapper that checks in large records asynchronously, so that
+ * {@link #send(ProducerRecord, Callback)} does not block on the backend upload.
+ *
+ * <p>Records above the configured limit are checked in on a bounded pool of threads, with at
+ * most `claimcheck.checkin.async.max.in.flight` of them in flight, from send until handed to the
+ * wrapped producer; when reached, send blocks until one has been handed over. Records are handed
+ * to the wrapped producer in the order they were sent per topic, which keeps per-partition
+ * ordering for any partitioner, while check ins overlap.
+ *
+ * <p>With `claimcheck.checkin.async.linger.ms` set, records to check in are collected for up to
+ * the linger time, and checked in as one batch with
+ * {@link ClaimCheckBackend#checkInBatchAsync(List, java.util.concurrent.Executor)}.
+ *
+ * <p>Check in errors are propagated with the `message-claim-check-error` header, so the wrapped
+ * producer must be configured with the {@link ClaimCheckSerializer}, which fails the send. The
+ * wrapped producer should not also be configured with the {@link ClaimCheckProducerInterceptor}.
+ */
+public class ClaimCheckAsyncProducer<K, V> implements Producer<K, V> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClaimCheckAsyncProducer.class);
+
+  private static final CompletableFuture<Void> NOTHING_PENDING =
+      CompletableFuture.completedFuture(null);
+
+  private final Producer<K, V> producer;
+
+  private final long checkinUncompressedSizeOverBytes;
+
+  private final ClaimCheckCompressionType compressionType;
+
+  private final Integer compressionLevel;
+
+  private final Serializer<K> keySerializer;
+
+  private final Serializer<V> valueSerializer;
+
+  private final ClaimCheckBackend claimCheckBackend;
+
+  private final ClaimCheckBackendRegistry.Reference backendReference;
+
+  private final ClaimCheckMetrics metrics;
+
+  private final ExecutorService checkInExecutor;
+
+  private final Semaphore inFlightCheckIns;
+
+  // null unless check ins linger to be batched
+  private final CheckInAccumulator checkInAccumulator;
+
+  // last pending send per topic, removed once done, guarded by itself
+  private final Map<String, CompletableFuture<Void>> pendingSends = new HashMap<>();
+
+  /**
+   * Create a {@link KafkaProducer} from the configs, and wrap it.
+   *
+   * @param configs producer and claim check configs
+   */
+  public ClaimCheckAsyncProducer(Map<String, Object> configs) {
+    this(new KafkaProducer<>(configs), configs);
+  }
+
+  /**
+   * Wrap an existing producer.
+   *
+   * @param producer the producer to hand records to, once any check in has completed
+   * @param configs producer and claim check configs
+   */
+  @SuppressWarnings("unchecked")
+  public ClaimCheckAsyncProducer(Producer<K, V> producer, Map<String, ?> configs) {
+    this.producer = producer;
+
+    BaseClaimCheckConfig baseClaimCheckConfig = BaseClaimCheckConfig.validatedConfig(configs);
+    checkinUncompressedSizeOverBytes = baseClaimCheckConfig.getLong(
+        Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG);
+    compressionType = baseClaimCheckConfig.getCompressionType();
+    compressionLevel = baseClaimCheckConfig.getCompressionLevel();
+
+    Serializer<?> rootSerializer = baseClaimCheckConfig
+        .getConfiguredInstance(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, Serializer.class);
+
+    if (!(rootSerializer instanceof ClaimCheckSerializer)) {
+      throw new ConfigException("ClaimCheckAsyncProducer must be used with"
+          + " ClaimCheckSerializer as value.serializer to guarantee propagation of"
+          + " exceptions to the client.");
+    }
+
+    this.valueSerializer = baseClaimCheckConfig
+        .getConfiguredInstance(Keys.CLAIMCHECK_WRAPPED_VALUE_SERIALIZER_CLASS, Serializer.class);
+    this.valueSerializer.configure(baseClaimCheckConfig.originals(), false);
+
+    this.keySerializer = baseClaimCheckConfig
+        .getConfiguredInstance(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, Serializer.class);
+    this.keySerializer.configure(baseClaimCheckConfig.originals(), true);
+
+    this.backendReference = ClaimCheckBackendRegistry.acquire(baseClaimCheckConfig);
+    this.claimCheckBackend = backendReference.getBackend();
+    this.metrics = ClaimCheckMetrics.forBackend(claimCheckBackend);
+
+    this.inFlightCheckIns = new Semaphore(
+        baseClaimCheckConfig.getInt(Keys.CLAIMCHECK_CHECKIN_ASYNC_MAX_IN_FLIGHT_CONFIG));
+    this.checkInExecutor = baseClaimCheckConfig.getExecutorType().newExecutor(
+        baseClaimCheckConfig.getInt(Keys.CLAIMCHECK_CHECKIN_ASYNC_THREADS_CONFIG),
+        "claim-check-checkin");
+
+    long lingerMs = baseClaimCheckConfig.getLong(Keys.CLAIMCHECK_CHECKIN_ASYNC_LINGER_MS_CONFIG);
+    this.checkInAccumulator = lingerMs == 0 ? null : new CheckInAccumulator(claimCheckBackend,
+        metrics, checkInExecutor, lingerMs,
+        baseClaimCheckConfig.getInt(Keys.CLAIMCHECK_CHECKIN_ASYNC_BATCH_MAX_RECORDS_CONFIG));
+  }
+
+  @Override
+  public Future<RecordMetadata> send(ProducerRecord<K, V> producerRecord) {
+    return send(producerRecord, null);
+  }
+
+  @Override
+  public Future<RecordMetadata> send(ProducerRecord<K, V> producerRecord, Callback callback) {
+    CompletableFuture<ProducerRecord<K, V>> outgoing;
+    byte[] serializedValue = null;
+    boolean inFlight = false;
+    try {
+      final byte[] keyBytes = keySerializer.serialize(
+          producerRecord.topic(),
+          producerRecord.headers(),
+          producerRecord.key()
+      );
+
+      final byte[] valueBytes = valueSerializer.serialize(
+          producerRecord.topic(),
+          producerRecord.headers(),
+          producerRecord.value()
+      );
+
+      boolean aboveLimit = ClaimCheckProducerInterceptor.isAboveClaimCheckLimit(producerRecord,
+          keyBytes, valueBytes, checkinUncompressedSizeOverBytes);
+      metrics.recordSend(producerRecord.topic(), aboveLimit);
+      if (aboveLimit) {
+        outgoing = checkInAsync(producerRecord, valueBytes);
+        inFlight = true;
+      } else {
+        outgoing = CompletableFuture.completedFuture(producerRecord);
+        serializedValue = valueBytes;
+      }
+    } catch (InterruptException e) {
+      throw e;
+    } catch (Exception e) {
+      LOG.error("Error when processing claim check", e);
+      outgoing = CompletableFuture.completedFuture(
+          ClaimCheckProducerInterceptor.withClaimCheckError(producerRecord, e));
+    }
+
+    final byte[] handoverValue = serializedValue;
+    final boolean releaseInFlight = inFlight;
+    CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+    String topic = producerRecord.topic();
+    synchronized (pendingSends) {
+      CompletableFuture<Void> previous = pendingSends.getOrDefault(topic, NOTHING_PENDING);
+      CompletableFuture<Void> pending = previous.thenCombine(outgoing,
+          (ignored, outgoingRecord) -> {
+            doSend(outgoingRecord, handoverValue, callback, result);
+            return null;
+          });
+      pendingSends.put(topic, pending);
+      pending.whenComplete((ignored, e) -> {
+        if (releaseInFlight) {
+          inFlightCheckIns.release();
+        }
+        // forget topics with nothing pending, unless sent to again since
+        synchronized (pendingSends) {
+          pendingSends.remove(topic, pending);
+        }
+      });
+    }
+    return result;
+  }
+
+  /**
+   * Start a check in, holding a permit of the in flight check ins that the caller releases once
+   * the record is handed to the wrapped producer.
+   */
+  private CompletableFuture<ProducerRecord<K, V>> checkInAsync(ProducerRecord<K, V> producerRecord,
+                                                               byte[] valueBytes) {
+    // a null value is checked in too if a large key or headers put the record over the limit
+    int valueBytesLength = valueBytes == null ? 0 : valueBytes.length;
+    try {
+      inFlightCheckIns.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptException(e);
+    }
+
+    CompletableFuture<ClaimCheck> checkIn;
+    try {
+      if (compressionType == ClaimCheckCompressionType.NONE) {
+        checkIn = startCheckIn(checkInRecord(producerRecord, valueBytes));
+      } else {
+        // compress on a check in thread, not on the thread calling send
+        checkIn = CompletableFuture.supplyAsync(
+                () -> compressionType.compress(valueBytes, compressionLevel), checkInExecutor)
+            .thenCompose(compressed -> startCheckIn(checkInRecord(producerRecord, compressed)));
+      }
+    } catch (RuntimeException e) {
+      inFlightCheckIns.release();
+      throw e;
+    }
+
+    return checkIn
+        .thenApply(claimCheck -> {
+          LOG.debug("checked in claim check: topic={}, key={}, ref={}, length={}",
+              producerRecord.topic(), producerRecord.key(), claimCheck.getReference(),
+              valueBytesLength);
+
+          ClaimCheckUtils.setCompressionTypeHeader(producerRecord.headers(), compressionType);
+          producerRecord.headers().add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+              claimCheck.serialize());
+          ClaimCheckStreamingUtils.setPayloadSize(producerRecord.headers(), valueBytesLength);
+          return new ProducerRecord<K, V>(producerRecord.topic(),
+              producerRecord.partition(),
+              producerRecord.timestamp(),
+              producerRecord.key(),
+              null,
+              producerRecord.headers()
+          );
+        })
+        .exceptionally(e -> {
+          Throwable cause = e instanceof CompletionException && e.getCause() != null
+              ? e.getCause() : e;
+          LOG.error("Error when processing claim check", cause);
+          return ClaimCheckProducerInterceptor.withClaimCheckError(producerRecord, cause);
+        });
+  }
+
+  private CompletableFuture<ClaimCheck> startCheckIn(ProducerRecord<byte[], byte[]> record) {
+    if (checkInAccumulator != null) {
+      return checkInAccumulator.add(record);
+    }
+    return timedCheckIn(record);
+  }
+
+  private CompletableFuture<ClaimCheck> timedCheckIn(ProducerRecord<byte[], byte[]> record) {
+    ClaimCheckMetrics.Operation checkIn = metrics.startCheckIn(record.topic());
+    try {
+      return checkIn.whenComplete(claimCheckBackend.checkInAsync(record, checkInExecutor),
+          claimCheck -> record.value() == null ? 0 : record.value().length);
+    } catch (RuntimeException e) {
+      checkIn.fail(e);
+      throw e;
+    }
+  }
+
+  private static ProducerRecord<byte[], byte[]> checkInRecord(ProducerRecord<?, ?> producerRecord,
+                                                              byte[] payload) {
+    return new ProducerRecord<>(producerRecord.topic(),
+        producerRecord.partition(),
+        producerRecord.timestamp(),
+        null,
+        payload,
+        null);
+  }
+
+  private void doSend(ProducerRecord<K, V> producerRecord, byte[] serializedValue,
+                      Callback callback, CompletableFuture<RecordMetadata> result) {
+    try {
+      if (serializedValue != null) {
+        // send may run on a check in thread, hand over on the thread calling the producer
+        SerializedValueHandover.offer(producerRecord.headers(), producerRecord.value(),
+            serializedValue);
+      }
+      producer.send(producerRecord, (metadata, exception) -> {
+        if (callback != null) {
+          callback.onCompletion(metadata, exception);
+        }
+        if (exception != null) {
+          result.completeExceptionally(exception);
+        } else {
+          result.complete(metadata);
+        }
+      });
+    } catch (RuntimeException e) {
+      // the caller has already returned from send, report through the future and callback
+      if (callback != null) {
+        callback.onCompletion(null, e);
+      }
+      result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Wait until all records sent so far have been handed to the wrapped producer.
+   */
+  private void awaitPendingSends(long timeoutMs) {
+    if (checkInAccumulator != null) {
+      checkInAccumulator.flush();
+    }
+    CompletableFuture<?>[] pending;
+    synchronized (pendingSends) {
+      pending = pendingSends.values().toArray(new CompletableFuture<?>[0]);
+    }
+    try {
+      CompletableFuture.allOf(pending).get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptException(e);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new org.apache.kafka.common.errors.TimeoutException(
+          "Pending claim check sends did not complete", e);
+    }
+  }
+
+  int getPendingTopics() {
+    synchronized (pendingSends) {
+      return pendingSends.size();
+    }
+  }
+
+  private void awaitPendingSends() {
+    awaitPendingSends(Long.MAX_VALUE);
+  }
+
+  @Override
+  public void flush() {
+    awaitPendingSends();
+    producer.flush();
+  }
+
+  @Override
+  public void initTransactions() {
+    producer.initTransactions();
+  }
+
+  @Override
+  public void beginTransaction() throws ProducerFencedException {
+    producer.beginTransaction();
+  }
+
+  @Override
+  @Deprecated
+  public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets,
+                                       String consumerGroupId) throws ProducerFencedException {
+    awaitPendingSends();
+    producer.sendOffsetsToTransaction(offsets, consumerGroupId);
+  }
+
+  @Override
+  public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets,
+                                       ConsumerGroupMetadata groupMetadata)
+      throws ProducerFencedException {
+    awaitPendingSends();
+    producer.sendOffsetsToTransaction(offsets, groupMetadata);
+  }
+
+  @Override
+  public void commitTransaction() throws ProducerFencedException {
+    awaitPendingSends();
+    producer.commitTransaction();
+  }
+
+  @Override
+  public void abortTransaction() throws ProducerFencedException {
+    awaitPendingSends();
+    producer.abortTransaction();
+  }
+
+  @Override
+  public List<PartitionInfo> partitionsFor(String topic) {
+    return producer.partitionsFor(topic);
+  }
+
+  @Override
+  public Map<MetricName, ? extends Metric> metrics() {
+    return producer.metrics();
+  }
+
+  @Override
+  public void close() {
+    close(Duration.ofMillis(Long.MAX_VALUE));
+  }
+
+  @Override
+  public void close(Duration timeout) {
+    try {
+      awaitPendingSends(timeout.toMillis());
+    } finally {
+      if (checkInAccumulator != null) {
+        checkInAccumulator.close();
+      }
+      checkInExecutor.shutdownNow();
+      producer.close(timeout);
+      keySerializer.close();
+      valueSerializer.close();
+      metrics.close();
+      backendReference.release();
+    }
+  }
+}
@@ -1,6 +1,11 @@
 package se.irori.kafka.claimcheck;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.Configurable;
 
@@ -21,11 +26,75 @@ public interface ClaimCheckBackend extends Configurable  {
    */
   ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord);
 
+  /**
+   * Check in the record in the underlying storage system, without blocking the caller.
+   *
+   * <p>The default implementation runs {@link #checkIn(ProducerRecord)} on the given executor.
+   * Backends with a non-blocking client may override this, and are then free to ignore the
+   * executor.
+   *
+   * @param largeRecord the message record to check in with the claim check pattern
+   * @param executor the executor to run blocking backend calls on
+   * @return a future completed with the Claim Check, or exceptionally if the check in failed
+   */
+  default CompletableFuture<ClaimCheck> checkInAsync(ProducerRecord<byte[], byte[]> largeRecord,
+                                                     Executor executor) {
+    return CompletableFuture.supplyAsync(() -> checkIn(largeRecord), executor);
+  }
+
+  /**
+   * Check in a batch of records in the underlying storage system.
+   *
+   * <p>The default implementation checks in the records one at a time. Backends may override
+   * this to upload the records concurrently, or pipelined over one connection.
+   *
+   * @param largeRecords the message records to check in with the claim check pattern
+   * @return the Claim Checks, in the order of the records
+   */
+  default List<ClaimCheck> checkInBatch(List<ProducerRecord<byte[], byte[]>> largeRecords) {
+    List<ClaimCheck> claimChecks = new ArrayList<>(largeRecords.size());
+    for (ProducerRecord<byte[], byte[]> largeRecord : largeRecords) {
+      claimChecks.add(checkIn(largeRecord));
+    }
+    return claimChecks;
+  }
+
+  /**
+   * Check in a batch of records in the underlying storage system, without blocking the caller.
+   *
+   * <p>The default implementation runs {@link #checkInAsync(ProducerRecord, Executor)} for all
+   * records at once, so that they are uploaded concurrently. Backends with a non-blocking client
+   * may override this, and are then free to ignore the executor.
+   *
+   * @param largeRecords the message records to check in with the claim check pattern
+   * @param executor the executor to run blocking backend calls on
+   * @return a future completed with the Claim Checks in the order of the records, or
+   *     exceptionally if any check in failed
+   */
+  default CompletableFuture<List<ClaimCheck>> checkInBatchAsync(
+      List<ProducerRecord<byte[], byte[]>> largeRecords, Executor executor) {
+    List<CompletableFuture<ClaimCheck>> checkIns = new ArrayList<>(largeRecords.size());
+    for (ProducerRecord<byte[], byte[]> largeRecord : largeRecords) {
+      checkIns.add(checkInAsync(largeRecord, executor));
+    }
+    return CompletableFuture.allOf(checkIns.toArray(new CompletableFuture<?>[0]))
+        .thenApply(ignored -> {
+          List<ClaimCheck> claimChecks = new ArrayList<>(checkIns.size());
+          checkIns.forEach(checkIn -> claimChecks.add(checkIn.join()));
+          return claimChecks;
+        });
+  }
+
   /**
    * Check in a payload in the underlying storage system, from an input stream.
+   *
+   * <p>The size is not known up front when the payload is compressed as it is read, in which
+   * case the stream is read to its end.
+   *
    * @param topic Kafka topic from record
    * @param payload the payload input stream
-   * @param payloadSize the size (number of bytes) that will be provided in the stream.
+   * @param payloadSize the size (number of bytes) that will be provided in the stream, or -1 if
+   *                    not known
    * @return a Claim Check representing a reference to the underlying storage system.
    */
   ClaimCheck checkInStreaming(String topic, InputStream payload, long payloadSize);
@@ -38,6 +107,36 @@ public interface ClaimCheckBackend extends Configurable  {
    */
   byte[] checkOut(ClaimCheck claimCheck);
 
+  /**
+   * Retrieve a previously stored record, without blocking the caller.
+   *
+   * <p>The default implementation runs {@link #checkOut(ClaimCheck)} on the given executor.
+   * Backends with a non-blocking client may override this, and are then free to ignore the
+   * executor.
+   *
+   * @param claimCheck previously issued claim check for this backend
+   * @param executor the executor to run blocking backend calls on
+   * @return a future completed with the message payload, or exceptionally if the check out failed
+   */
+  default CompletableFuture<byte[]> checkOutAsync(ClaimCheck claimCheck, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> checkOut(claimCheck), executor);
+  }
+
+  /**
+   * Retrieve a previously stored record into a buffer, using the Claim Check (reference).
+   *
+   * <p>The default implementation wraps the array from {@link #checkOut(ClaimCheck)}. Backends
+   * may override this to transfer the payload into a direct buffer from the pool, off the heap.
+   * The caller releases the buffer to the pool when done with it.
+   *
+   * @param claimCheck previously issued claim check for this backend
+   * @param pool the pool to take direct buffers from
+   * @return the message payload previously checked in, from position to limit of the buffer
+   */
+  default ByteBuffer checkOutBuffer(ClaimCheck claimCheck, DirectBufferPool pool) {
+    return ByteBuffer.wrap(checkOut(claimCheck));
+  }
+
   /**
    * Retrieve a previously stored record as a stream, using the Claim Check (reference).
    *
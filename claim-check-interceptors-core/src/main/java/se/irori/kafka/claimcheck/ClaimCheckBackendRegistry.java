@@ -0,0 +1,158 @@
+package se.irori.kafka.claimcheck;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.types.Password;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig.Keys;
+
+/**
+ * Hands out the Claim Check backends of interceptors, (de)serializers and other clients.
+ *
+ * <p>With `claimcheck.backend.shared` set, clients in the JVM configured with the same backend
+ * configs share one backend, and with it e.g. its HTTP connection pool. The backend configs are
+ * the client configs, except for the Kafka producer and consumer configs, the wrapped
+ * (de)serializers and the `claimcheck.checkin.*` and `claimcheck.checkout.*` configs, so that
+ * producers and consumers of the same store share a backend too. Shared backends are counted
+ * references, and closed when the last client releases them.
+ *
+ * <p>Without it, every client gets a backend of its own, closed when released.
+ *
+ * <p>Each client releases its {@link Reference} once, however many times it is closed, so that
+ * it can not release the backend of another client.
+ */
+public final class ClaimCheckBackendRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClaimCheckBackendRegistry.class);
+
+  // guarded by the class
+  private static final Map<Map<String, String>, Shared> SHARED = new HashMap<>();
+
+  private ClaimCheckBackendRegistry() {
+  }
+
+  /**
+   * Get a backend for a client, to be released with {@link Reference#release()} when the client
+   * is closed.
+   *
+   * @param config the client config
+   * @return a reference to a configured backend, shared if `claimcheck.backend.shared` is set
+   */
+  public static Reference acquire(BaseClaimCheckConfig config) {
+    if (!config.getBoolean(Keys.CLAIMCHECK_BACKEND_SHARED_CONFIG)) {
+      return new Reference(newBackend(config), null);
+    }
+    Map<String, String> key = backendConfigs(config);
+    synchronized (ClaimCheckBackendRegistry.class) {
+      Shared shared = SHARED.get(key);
+      if (shared == null) {
+        shared = new Shared(key, newBackend(config));
+        SHARED.put(key, shared);
+        LOG.info("created shared backend: class={}",
+            shared.backend.getClass().getSimpleName());
+      }
+      shared.references++;
+      return new Reference(shared.backend, shared);
+    }
+  }
+
+  static synchronized int getReferences(Reference reference) {
+    return reference.shared == null ? 0 : reference.shared.references;
+  }
+
+  private static ClaimCheckBackend newBackend(BaseClaimCheckConfig config) {
+    return config.getConfiguredInstance(Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        ClaimCheckBackend.class);
+  }
+
+  private static Map<String, String> backendConfigs(BaseClaimCheckConfig config) {
+    Set<String> producerConfigs = ProducerConfig.configNames();
+    Set<String> consumerConfigs = ConsumerConfig.configNames();
+    Map<String, String> backendConfigs = new TreeMap<>();
+    for (Map.Entry<String, Object> entry : config.originals().entrySet()) {
+      String name = entry.getKey();
+      if (producerConfigs.contains(name) || consumerConfigs.contains(name)
+          || name.equals(Keys.CLAIMCHECK_WRAPPED_VALUE_SERIALIZER_CLASS)
+          || name.equals(Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS)
+          || name.startsWith("claimcheck.checkin.")
+          || name.startsWith("claimcheck.checkout.")) {
+        continue;
+      }
+      backendConfigs.put(name, configValue(entry.getValue()));
+    }
+    return backendConfigs;
+  }
+
+  private static String configValue(Object value) {
+    if (value instanceof Class) {
+      return ((Class<?>) value).getName();
+    }
+    if (value instanceof Password) {
+      return ((Password) value).value();
+    }
+    return String.valueOf(value);
+  }
+
+  /**
+   * The backend of a client, released once.
+   */
+  public static final class Reference {
+    private final ClaimCheckBackend backend;
+
+    // null if not shared
+    private final Shared shared;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Reference(ClaimCheckBackend backend, Shared shared) {
+      this.backend = backend;
+      this.shared = shared;
+    }
+
+    public ClaimCheckBackend getBackend() {
+      return backend;
+    }
+
+    /**
+     * Release the backend, closing it if it is not shared or when it is released by the last
+     * client sharing it. Releasing it again has no effect.
+     */
+    public void release() {
+      if (!released.compareAndSet(false, true)) {
+        return;
+      }
+      if (shared != null) {
+        synchronized (ClaimCheckBackendRegistry.class) {
+          if (--shared.references > 0) {
+            return;
+          }
+          SHARED.remove(shared.key);
+          LOG.info("closing shared backend: class={}", backend.getClass().getSimpleName());
+        }
+      }
+      backend.close();
+    }
+  }
+
+  /**
+   * A shared backend and the number of clients using it.
+   */
+  private static final class Shared {
+    final Map<String, String> key;
+
+    final ClaimCheckBackend backend;
+
+    int references;
+
+    Shared(Map<String, String> key, ClaimCheckBackend backend) {
+      this.key = key;
+      this.backend = backend;
+    }
+  }
+}
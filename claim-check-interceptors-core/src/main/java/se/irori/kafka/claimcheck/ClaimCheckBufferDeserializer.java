@@ -0,0 +1,28 @@
+package se.irori.kafka.claimcheck;
+
+import java.nio.ByteBuffer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * A de-serializer that can also read a payload from a buffer, so that
+ * {@link ClaimCheckDeserializer} can hand it a view of a checked out payload in a pooled direct
+ * buffer, instead of a new array.
+ *
+ * @param <T> The Java type to de-serialize to.
+ */
+public interface ClaimCheckBufferDeserializer<T> extends Deserializer<T> {
+
+  /**
+   * Deserialize a record value from a buffer into a value or object.
+   *
+   * <p>The buffer is returned to its pool when this returns, so neither it nor its bytes may be
+   * kept by the value, e.g. by wrapping or slicing it.
+   *
+   * @param topic   topic associated with the data
+   * @param headers headers associated with the record; may be empty.
+   * @param data    read-only buffer of the payload, from its position to its limit
+   * @return deserialized typed data; may be null
+   */
+  T deserialize(String topic, Headers headers, ByteBuffer data);
+}
@@ -0,0 +1,328 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.metrics.Measurable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig.Keys;
+
+/**
+ * Cache of checked out payloads, keyed by Claim Check reference, for consumers that read the
+ * same records again, e.g. after a rebalance, a seek or from a retry topic.
+ *
+ * <p>Payloads are kept in memory up to a byte budget, evicting the least recently used. With a
+ * disk directory configured, evicted payloads spill to files, up to a separate byte budget, and
+ * are read back from there on a later hit.
+ *
+ * <p>Caches are shared by all de-serializers in the JVM configured with the same
+ * `claimcheck.checkout.cache.name`, and are never closed. Hit and miss counts are published as
+ * metrics in group `claim-check-checkout-cache` of {@link ClaimCheckMetrics#registry()}.
+ */
+public class ClaimCheckCheckoutCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClaimCheckCheckoutCache.class);
+
+  static final String METRIC_GROUP = "claim-check-checkout-cache";
+
+  private static final Map<String, ClaimCheckCheckoutCache> SHARED = new ConcurrentHashMap<>();
+
+  private final long maxBytes;
+
+  private final long diskMaxBytes;
+
+  private final Path diskDirectory;
+
+  // guarded by this
+  private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long memoryBytes = 0;
+
+  // guarded by this
+  private final LinkedHashMap<String, DiskEntry> disk = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long diskBytes = 0;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong diskHits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Create a cache, not shared.
+   *
+   * @param maxBytes budget for payloads kept in memory
+   * @param diskDirectory directory to spill evicted payloads to, or null to not spill
+   * @param diskMaxBytes budget for payloads spilled to disk
+   */
+  ClaimCheckCheckoutCache(long maxBytes, Path diskDirectory, long diskMaxBytes) {
+    this.maxBytes = maxBytes;
+    this.diskMaxBytes = diskMaxBytes;
+    this.diskDirectory = diskDirectory;
+  }
+
+  /**
+   * Get the cache shared by all clients in the JVM with the same cache name.
+   *
+   * @param config claim check config
+   * @return the shared cache, or null if the cache is disabled
+   */
+  public static ClaimCheckCheckoutCache getShared(BaseClaimCheckConfig config) {
+    long maxBytes = config.getLong(Keys.CLAIMCHECK_CHECKOUT_CACHE_MAX_BYTES_CONFIG);
+    if (maxBytes == 0) {
+      return null;
+    }
+    String name = config.getString(Keys.CLAIMCHECK_CHECKOUT_CACHE_NAME_CONFIG);
+    String directory = config.getString(Keys.CLAIMCHECK_CHECKOUT_CACHE_DISK_DIRECTORY_CONFIG);
+    long diskMaxBytes = config.getLong(Keys.CLAIMCHECK_CHECKOUT_CACHE_DISK_MAX_BYTES_CONFIG);
+
+    return SHARED.computeIfAbsent(name, n -> {
+      ClaimCheckCheckoutCache cache = new ClaimCheckCheckoutCache(maxBytes,
+          directory == null ? null : createDiskDirectory(Paths.get(directory)), diskMaxBytes);
+      cache.registerMetrics(n);
+      LOG.info("created checkout cache: name={}, maxBytes={}, diskDirectory={}, diskMaxBytes={}",
+          n, maxBytes, cache.diskDirectory, diskMaxBytes);
+      return cache;
+    });
+  }
+
+  /**
+   * Get a payload.
+   *
+   * @param reference the Claim Check reference
+   * @return a copy of the cached payload, or null if not cached
+   */
+  public byte[] get(String reference) {
+    DiskEntry diskEntry;
+    synchronized (this) {
+      byte[] payload = memory.get(reference);
+      if (payload != null) {
+        hits.incrementAndGet();
+        // a copy, since de-serializers may hand the array over to the application
+        return payload.clone();
+      }
+      diskEntry = disk.remove(reference);
+      if (diskEntry != null) {
+        diskBytes -= diskEntry.size;
+      }
+    }
+
+    if (diskEntry != null) {
+      try {
+        byte[] payload = Files.readAllBytes(diskEntry.path);
+        diskHits.incrementAndGet();
+        put(reference, payload);
+        return payload.clone();
+      } catch (IOException e) {
+        LOG.warn("could not read cached payload: ref={}, path={}", reference, diskEntry.path, e);
+      } finally {
+        delete(diskEntry.path);
+      }
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Add a payload. The cache keeps the array, which must not be modified after.
+   *
+   * @param reference the Claim Check reference
+   * @param payload the checked out payload
+   */
+  public void put(String reference, byte[] payload) {
+    if (payload.length > maxBytes) {
+      spill(Collections.singletonList(new Evicted(reference, payload)));
+      return;
+    }
+
+    List<Evicted> evicted = new ArrayList<>();
+    synchronized (this) {
+      byte[] previous = memory.put(reference, payload);
+      memoryBytes += payload.length - (previous == null ? 0 : previous.length);
+
+      Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+      while (memoryBytes > maxBytes) {
+        Map.Entry<String, byte[]> entry = eldest.next();
+        memoryBytes -= entry.getValue().length;
+        evicted.add(new Evicted(entry.getKey(), entry.getValue()));
+        eldest.remove();
+      }
+    }
+    evictions.addAndGet(evicted.size());
+    spill(evicted);
+  }
+
+  /**
+   * Write evicted payloads to disk, outside the lock, and make room for them there.
+   */
+  private void spill(List<Evicted> evicted) {
+    if (diskDirectory == null) {
+      return;
+    }
+    for (Evicted entry : evicted) {
+      if (entry.payload.length > diskMaxBytes) {
+        continue;
+      }
+      Path path = diskDirectory.resolve(UUID.randomUUID().toString());
+      try {
+        Files.write(path, entry.payload);
+      } catch (IOException e) {
+        LOG.warn("could not spill cached payload: ref={}, path={}", entry.reference, path, e);
+        delete(path);
+        continue;
+      }
+
+      List<Path> deleted = new ArrayList<>();
+      synchronized (this) {
+        DiskEntry previous = disk.put(entry.reference, new DiskEntry(path, entry.payload.length));
+        if (previous != null) {
+          diskBytes -= previous.size;
+          deleted.add(previous.path);
+        }
+        diskBytes += entry.payload.length;
+
+        Iterator<DiskEntry> eldest = disk.values().iterator();
+        while (diskBytes > diskMaxBytes) {
+          DiskEntry diskEntry = eldest.next();
+          diskBytes -= diskEntry.size;
+          deleted.add(diskEntry.path);
+          eldest.remove();
+        }
+      }
+      deleted.forEach(ClaimCheckCheckoutCache::delete);
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getDiskHitCount() {
+    return diskHits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  public synchronized long getMemoryBytes() {
+    return memoryBytes;
+  }
+
+  public synchronized long getDiskBytes() {
+    return diskBytes;
+  }
+
+  /**
+   * Get the share of lookups found in memory or on disk.
+   *
+   * @return the hit rate since the cache was created, 0 before any lookup
+   */
+  public double getHitRate() {
+    long found = hits.get() + diskHits.get();
+    long total = found + misses.get();
+    return total == 0 ? 0.0 : (double) found / total;
+  }
+
+  private void registerMetrics(String name) {
+    addMetric(name, "hit-total", "Lookups found in memory", (c, now) -> getHitCount());
+    addMetric(name, "disk-hit-total", "Lookups found on disk", (c, now) -> getDiskHitCount());
+    addMetric(name, "miss-total", "Lookups not found", (c, now) -> getMissCount());
+    addMetric(name, "hit-rate", "Share of lookups found in memory or on disk",
+        (c, now) -> getHitRate());
+    addMetric(name, "eviction-total", "Payloads evicted from memory",
+        (c, now) -> getEvictionCount());
+    addMetric(name, "memory-bytes", "Payload bytes in memory", (c, now) -> getMemoryBytes());
+    addMetric(name, "disk-bytes", "Payload bytes on disk", (c, now) -> getDiskBytes());
+  }
+
+  private static void addMetric(String cacheName, String name, String description,
+                                Measurable measurable) {
+    MetricName metricName = ClaimCheckMetrics.registry().metricName(name, METRIC_GROUP,
+        description, Collections.singletonMap("cache", cacheName));
+    ClaimCheckMetrics.registry().addMetric(metricName, measurable);
+  }
+
+  /**
+   * Create a directory of our own for the disk tier, removed when the JVM exits.
+   */
+  private static Path createDiskDirectory(Path parent) {
+    try {
+      Files.createDirectories(parent);
+      Path directory = Files.createTempDirectory(parent, "claim-check-cache-");
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteRecursively(directory),
+          "claim-check-cache-cleanup"));
+      return directory;
+    } catch (IOException e) {
+      throw new ConfigException(Keys.CLAIMCHECK_CHECKOUT_CACHE_DISK_DIRECTORY_CONFIG,
+          parent.toString(), "Could not create cache directory: " + e);
+    }
+  }
+
+  private static void deleteRecursively(Path directory) {
+    File[] files = directory.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        delete(file.toPath());
+      }
+    }
+    delete(directory);
+  }
+
+  private static void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      LOG.warn("could not delete cached payload: {}", path, e);
+    }
+  }
+
+  private static class DiskEntry {
+    final Path path;
+
+    final long size;
+
+    DiskEntry(Path path, long size) {
+      this.path = path;
+      this.size = size;
+    }
+  }
+
+  private static class Evicted {
+    final String reference;
+
+    final byte[] payload;
+
+    Evicted(String reference, byte[] payload) {
+      this.reference = reference;
+      this.payload = payload;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ClaimCheckCheckoutCache{maxBytes=" + maxBytes + ", diskDirectory=" + diskDirectory
+        + ", diskMaxBytes=" + diskMaxBytes + ", hitRate=" + getHitRate() + "}";
+  }
+}
@@ -0,0 +1,247 @@
+package se.irori.kafka.claimcheck;
+
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import com.github.luben.zstd.ZstdOutputStreamNoFinalizer;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.KafkaStorageException;
+
+/**
+ * Compression applied to payloads before they are checked in.
+ *
+ * <p>Checked in payloads bypass the broker, so the producer `compression.type` never applies
+ * to them. The type used is recorded in the `message-claim-check-compression` header, for the
+ * de-serializers to decompress transparently.
+ */
+public enum ClaimCheckCompressionType {
+  NONE("none", 0, 0) {
+    @Override
+    OutputStream wrap(OutputStream out, Integer level) {
+      return out;
+    }
+
+    @Override
+    public InputStream wrapForInput(InputStream in) {
+      return in;
+    }
+  },
+
+  GZIP("gzip", Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION) {
+    @Override
+    OutputStream wrap(OutputStream out, Integer level) throws IOException {
+      return new GZIPOutputStream(out, BUFFER_SIZE) {
+        {
+          def.setLevel(level == null ? Deflater.DEFAULT_COMPRESSION : level);
+        }
+      };
+    }
+
+    @Override
+    public InputStream wrapForInput(InputStream in) throws IOException {
+      return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+    }
+  },
+
+  LZ4("lz4", 1, 17) {
+    @Override
+    OutputStream wrap(OutputStream out, Integer level) throws IOException {
+      // fast compressor by default, as for Kafka batches, high compression when a level is set
+      LZ4Factory factory = LZ4Factory.fastestInstance();
+      return new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB, -1L,
+          level == null ? factory.fastCompressor() : factory.highCompressor(level),
+          XXHashFactory.fastestInstance().hash32(),
+          LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
+    }
+
+    @Override
+    public InputStream wrapForInput(InputStream in) throws IOException {
+      return new LZ4FrameInputStream(in);
+    }
+  },
+
+  ZSTD("zstd", -131072, 22) {
+    @Override
+    OutputStream wrap(OutputStream out, Integer level) throws IOException {
+      return new ZstdOutputStreamNoFinalizer(out, level == null ? 3 : level);
+    }
+
+    @Override
+    public InputStream wrapForInput(InputStream in) throws IOException {
+      // the native stream is inefficient for small reads, like those of most de-serializers
+      return new BufferedInputStream(new ZstdInputStreamNoFinalizer(in), BUFFER_SIZE);
+    }
+  };
+
+  static final int BUFFER_SIZE = 16 * 1024;
+
+  private final String name;
+
+  private final int minLevel;
+
+  private final int maxLevel;
+
+  ClaimCheckCompressionType(String name, int minLevel, int maxLevel) {
+    this.name = name;
+    this.minLevel = minLevel;
+    this.maxLevel = maxLevel;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Wrap an output stream to compress everything written to it.
+   *
+   * @param out the stream to write compressed bytes to
+   * @param level the compression level, or null for the default of the compression type
+   * @return a stream to write uncompressed bytes to, that must be closed to finish the output
+   * @throws IOException if the compressor could not be set up
+   * @throws ConfigException if the level is out of range, see {@link #validateLevel(Integer)}
+   */
+  public OutputStream wrapForOutput(OutputStream out, Integer level) throws IOException {
+    validateLevel(level);
+    return wrap(out, level);
+  }
+
+  abstract OutputStream wrap(OutputStream out, Integer level) throws IOException;
+
+  /**
+   * Wrap an input stream of compressed bytes, to read them decompressed.
+   *
+   * @param in the stream to read compressed bytes from
+   * @return a stream of decompressed bytes
+   * @throws IOException if the stream could not be read or is not of this compression type
+   */
+  public abstract InputStream wrapForInput(InputStream in) throws IOException;
+
+  /**
+   * Compress a payload.
+   *
+   * @param payload the payload to compress, may be null
+   * @param level the compression level, or null for the default of the compression type
+   * @return the compressed payload, or the payload as is for {@link #NONE}
+   * @throws KafkaStorageException if the payload could not be compressed
+   */
+  public byte[] compress(byte[] payload, Integer level) {
+    if (this == NONE || payload == null) {
+      return payload;
+    }
+    validateLevel(level);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+        Math.max(32, payload.length / 2));
+    try (OutputStream out = wrap(compressed, level)) {
+      out.write(payload);
+    } catch (IOException e) {
+      throw new KafkaStorageException("Could not compress payload with " + name, e);
+    }
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Decompress a payload.
+   *
+   * @param payload the payload to decompress, may be null
+   * @return the decompressed payload, or the payload as is for {@link #NONE}
+   * @throws KafkaStorageException if the payload could not be decompressed
+   */
+  public byte[] decompress(byte[] payload) {
+    return decompress(payload, -1);
+  }
+
+  /**
+   * Decompress a payload of known size, directly into an array of that size.
+   *
+   * @param payload the payload to decompress, may be null
+   * @param payloadSize the decompressed size, e.g. from the `message-claim-check-payload-size`
+   *                    header, or -1 if unknown
+   * @return the decompressed payload, or the payload as is for {@link #NONE}
+   * @throws KafkaStorageException if the payload could not be decompressed, or is not of the
+   *                               given size
+   */
+  public byte[] decompress(byte[] payload, long payloadSize) {
+    if (this == NONE || payload == null) {
+      return payload;
+    }
+    if (ClaimCheckStreamingUtils.fitsInByteArray(payloadSize)) {
+      return decompressSized(payload, (int) payloadSize);
+    }
+    ByteArrayOutputStream decompressed = new ByteArrayOutputStream(
+        (int) Math.min(ParallelRangeDownloader.MAX_ARRAY_SIZE, payload.length * 2L));
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (InputStream in = wrapForInput(new ByteArrayInputStream(payload))) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        decompressed.write(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new KafkaStorageException("Could not decompress payload with " + name, e);
+    }
+    return decompressed.toByteArray();
+  }
+
+  private byte[] decompressSized(byte[] payload, int payloadSize) {
+    byte[] decompressed = new byte[payloadSize];
+    int position = 0;
+    try (InputStream in = wrapForInput(new ByteArrayInputStream(payload))) {
+      int read = 0;
+      while (position < payloadSize
+          && (read = in.read(decompressed, position, payloadSize - position)) != -1) {
+        position += read;
+      }
+      if (read == -1 || in.read() != -1) {
+        throw new KafkaStorageException("Decompressed payload is not of the declared size "
+            + payloadSize + " with " + name);
+      }
+    } catch (IOException e) {
+      throw new KafkaStorageException("Could not decompress payload with " + name, e);
+    }
+    return decompressed;
+  }
+
+  /**
+   * Check that a compression level is valid for this compression type.
+   *
+   * @param level the compression level, or null for the default of the compression type
+   * @throws ConfigException if the level is out of range
+   */
+  public void validateLevel(Integer level) {
+    if (level == null || this == NONE) {
+      // the default level, or no compression to apply a level to
+      return;
+    }
+    if (level < minLevel || level > maxLevel) {
+      throw new ConfigException(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_COMPRESSION_LEVEL,
+          level, "Compression type " + name + " takes levels in [" + minLevel + ","
+              + maxLevel + "]");
+    }
+  }
+
+  /**
+   * Look up a compression type by name.
+   *
+   * @param name the name, as used in config and headers
+   * @return the compression type
+   * @throws IllegalArgumentException if there is no compression type with the name
+   */
+  public static ClaimCheckCompressionType forName(String name) {
+    for (ClaimCheckCompressionType type : values()) {
+      if (type.name.equals(name)) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException("Unknown compression type: " + name);
+  }
+}
@@ -1,8 +1,6 @@
 package se.irori.kafka.claimcheck;
 
-import static se.irori.kafka.claimcheck.ClaimCheckUtils.getClaimCheckRefFromHeader;
-import static se.irori.kafka.claimcheck.ClaimCheckUtils.isClaimCheck;
-
+import java.nio.ByteBuffer;
 import java.util.Map;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.header.Headers;
@@ -16,6 +14,20 @@ import org.slf4j.LoggerFactory;
  * <p>If messages carry the `message-claim-check` header, the configured Claim Check backend
  * is used to fetch the real payload from the underlying store.
  *
+ * <p>Payloads checked in with compression, as recorded by the `message-claim-check-compression`
+ * header, are decompressed before being de-serialized.
+ *
+ * <p>With `claimcheck.checkout.cache.max.bytes` set, payloads are kept in a
+ * {@link ClaimCheckCheckoutCache} shared in the JVM, and not checked out again when the same
+ * record is read again.
+ *
+ * <p>With `claimcheck.checkout.buffer.pool.max.bytes` set, and a wrapped de-serializer
+ * implementing {@link ClaimCheckBufferDeserializer}, payloads are checked out into pooled direct
+ * buffers, off the heap, and the de-serializer is handed a view of them.
+ *
+ * <p>With `claimcheck.checkout.fetch.predicate.class` set, Claim Checks rejected by the
+ * {@link ClaimCheckFetchPredicate} are de-serialized to null, without a check out.
+ *
  * <p>The configured wrapped de-serializer is used to de-serialize the message bytes that either
  * come from the claim check backend or directly as Kafka message value.
  *
@@ -27,6 +39,12 @@ public class ClaimCheckDeserializer<T> implements Deserializer<T> {
 
   private Deserializer<T> valueDeserializer;
   private ClaimCheckBackend claimCheckBackend;
+  private ClaimCheckBackendRegistry.Reference backendReference;
+  private ClaimCheckCheckoutCache checkoutCache;
+  private DirectBufferPool bufferPool;
+  private ClaimCheckFetchPredicate fetchPredicate;
+
+  private ClaimCheckMetrics metrics;
 
   /**
    * Configure this class.
@@ -46,8 +64,17 @@ public class ClaimCheckDeserializer<T> implements Deserializer<T> {
         BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS, Deserializer.class);
     this.valueDeserializer.configure(configs, false);
 
-    this.claimCheckBackend = baseClaimCheckConfig.getConfiguredInstance(
-        BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG, ClaimCheckBackend.class);
+    this.backendReference = ClaimCheckBackendRegistry.acquire(baseClaimCheckConfig);
+    this.claimCheckBackend = backendReference.getBackend();
+
+    this.checkoutCache = ClaimCheckCheckoutCache.getShared(baseClaimCheckConfig);
+    if (checkoutCache == null && valueDeserializer instanceof ClaimCheckBufferDeserializer) {
+      this.bufferPool = DirectBufferPool.getShared(baseClaimCheckConfig);
+    }
+    this.fetchPredicate = baseClaimCheckConfig.getConfiguredInstance(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_FETCH_PREDICATE_CLASS_CONFIG,
+        ClaimCheckFetchPredicate.class);
+    this.metrics = ClaimCheckMetrics.forBackend(claimCheckBackend);
   }
 
   /**
@@ -76,13 +103,28 @@ public class ClaimCheckDeserializer<T> implements Deserializer<T> {
   @Override
   public T deserialize(String topic, Headers headers, byte[] data) {
 
-    if (isClaimCheck(headers)) {
+    ClaimCheckHeaders claimCheckHeaders = ClaimCheckHeaders.of(headers);
+    byte[] claimCheckRef = claimCheckHeaders.getRef();
+    if (claimCheckRef != null) {
 
-      ClaimCheck claimCheck = new ClaimCheck(getClaimCheckRefFromHeader(headers));
+      ClaimCheck claimCheck = new ClaimCheck(claimCheckRef);
       LOG.trace("received claim check: topic={}, ref={}",
           topic, claimCheck.getReference());
-      T deserializedValue = valueDeserializer
-          .deserialize(topic, headers, claimCheckBackend.checkOut(claimCheck));
+      if (fetchPredicate != null && !fetchPredicate.test(topic, null, headers)) {
+        LOG.trace("skipped claim check: topic={}, ref={}",
+            topic, claimCheck.getReference());
+        return null;
+      }
+      ClaimCheckCompressionType compressionType = claimCheckHeaders.getCompressionType();
+      T deserializedValue;
+      if (bufferPool != null && compressionType == ClaimCheckCompressionType.NONE) {
+        deserializedValue = deserializeFromBuffer(topic, headers, claimCheck);
+      } else {
+        byte[] payload = compressionType.decompress(
+            checkOut(topic, claimCheck, compressionType == ClaimCheckCompressionType.NONE),
+            claimCheckHeaders.getPayloadSize(-1));
+        deserializedValue = valueDeserializer.deserialize(topic, headers, payload);
+      }
       LOG.trace("checked out claim check: topic={}, ref={}",
           topic, claimCheck.getReference());
       return deserializedValue;
@@ -92,8 +134,59 @@ public class ClaimCheckDeserializer<T> implements Deserializer<T> {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private T deserializeFromBuffer(String topic, Headers headers, ClaimCheck claimCheck) {
+    ClaimCheckMetrics.Operation checkOut = metrics.startCheckOut(topic);
+    ByteBuffer payload;
+    try {
+      payload = claimCheckBackend.checkOutBuffer(claimCheck, bufferPool);
+    } catch (RuntimeException e) {
+      checkOut.fail(e);
+      throw e;
+    }
+    checkOut.complete(payload.remaining());
+    try {
+      return ((ClaimCheckBufferDeserializer<T>) valueDeserializer)
+          .deserialize(topic, headers, payload.asReadOnlyBuffer());
+    } finally {
+      bufferPool.release(payload);
+    }
+  }
+
+  private byte[] checkOut(String topic, ClaimCheck claimCheck, boolean handedOver) {
+    if (checkoutCache == null) {
+      return timedCheckOut(topic, claimCheck);
+    }
+    byte[] payload = checkoutCache.get(claimCheck.getReference());
+    if (payload == null) {
+      payload = timedCheckOut(topic, claimCheck);
+      // the cache keeps the array, hand over a copy, unless only read to decompress it
+      checkoutCache.put(claimCheck.getReference(), handedOver ? payload.clone() : payload);
+    }
+    return payload;
+  }
+
+  private byte[] timedCheckOut(String topic, ClaimCheck claimCheck) {
+    ClaimCheckMetrics.Operation checkOut = metrics.startCheckOut(topic);
+    byte[] payload;
+    try {
+      payload = claimCheckBackend.checkOut(claimCheck);
+    } catch (RuntimeException e) {
+      checkOut.fail(e);
+      throw e;
+    }
+    checkOut.complete(payload.length);
+    return payload;
+  }
+
   @Override
   public void close() {
     valueDeserializer.close();
+    if (metrics != null) {
+      metrics.close();
+    }
+    if (backendReference != null) {
+      backendReference.release();
+    }
   }
 }
@@ -0,0 +1,216 @@
+package se.irori.kafka.claimcheck;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.config.ConfigException;
+
+/**
+ * How blocking backend calls are run by {@link ClaimCheckAsyncProducer},
+ * {@link ClaimCheckPrefetcher} and {@link ParallelRangeDownloader}.
+ *
+ * <p>Virtual threads need Java 21, and are looked up at runtime so the library still builds and
+ * runs on Java 8.
+ */
+public enum ClaimCheckExecutorType {
+  /**
+   * A fixed pool of daemon threads.
+   */
+  PLATFORM("platform") {
+    @Override
+    public ExecutorService newExecutor(int threads, String threadNamePrefix) {
+      return Executors.newFixedThreadPool(threads, new ClaimCheckThreadFactory(threadNamePrefix));
+    }
+  },
+
+  /**
+   * A new virtual thread per call. The number of threads is not bounded, concurrency is bounded
+   * by the in-flight limits of the callers instead.
+   */
+  VIRTUAL("virtual") {
+    @Override
+    public ExecutorService newExecutor(int threads, String threadNamePrefix) {
+      return VirtualThreads.newThreadPerTaskExecutor(threadNamePrefix);
+    }
+  },
+
+  /**
+   * The calling thread, so that async calls complete before they return.
+   */
+  CALLER("caller") {
+    @Override
+    public ExecutorService newExecutor(int threads, String threadNamePrefix) {
+      return new CallerExecutorService();
+    }
+  };
+
+  private final String name;
+
+  ClaimCheckExecutorType(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Create an executor for backend calls.
+   *
+   * @param threads the number of threads, for types with a pool
+   * @param threadNamePrefix prefix of the names of the threads
+   * @return a new executor, to shut down when done
+   * @throws ConfigException if the type is not supported by the running JVM
+   */
+  public abstract ExecutorService newExecutor(int threads, String threadNamePrefix);
+
+  /**
+   * Check that the type is supported by the running JVM.
+   *
+   * @throws ConfigException if not supported
+   */
+  void validate() {
+    if (this == VIRTUAL && !VirtualThreads.isAvailable()) {
+      throw new ConfigException(BaseClaimCheckConfig.Keys.CLAIMCHECK_EXECUTOR_TYPE_CONFIG, name,
+          "Virtual threads need Java 21 or later, running on "
+              + System.getProperty("java.version"));
+    }
+  }
+
+  /**
+   * Get a type by its config name.
+   *
+   * @param name the config name
+   * @return the type
+   * @throws IllegalArgumentException if unknown
+   */
+  public static ClaimCheckExecutorType forName(String name) {
+    for (ClaimCheckExecutorType type : values()) {
+      if (type.name.equals(name)) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException("Unknown executor type: " + name);
+  }
+
+  /**
+   * Get the configured type from the configs given to a backend, which are not validated as a
+   * {@link BaseClaimCheckConfig}.
+   *
+   * @param configs configs in key/value pairs
+   * @return the configured type, or {@link #PLATFORM} if not set
+   * @throws ConfigException if the type is unknown or not supported by the running JVM
+   */
+  public static ClaimCheckExecutorType fromConfigs(Map<String, ?> configs) {
+    Object value = configs.get(BaseClaimCheckConfig.Keys.CLAIMCHECK_EXECUTOR_TYPE_CONFIG);
+    if (value == null) {
+      return PLATFORM;
+    }
+    ClaimCheckExecutorType type;
+    try {
+      type = forName(value.toString().trim());
+    } catch (IllegalArgumentException e) {
+      throw new ConfigException(BaseClaimCheckConfig.Keys.CLAIMCHECK_EXECUTOR_TYPE_CONFIG, value,
+          e.getMessage());
+    }
+    type.validate();
+    return type;
+  }
+
+  /**
+   * The Java 21 virtual thread methods, looked up once.
+   */
+  private static class VirtualThreads {
+    private static final Method OF_VIRTUAL;
+
+    private static final Method NAME;
+
+    private static final Method FACTORY;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+      Method ofVirtual = null;
+      Method name = null;
+      Method factory = null;
+      Method newThreadPerTaskExecutor = null;
+      try {
+        ofVirtual = Thread.class.getMethod("ofVirtual");
+        Class<?> builder = Class.forName("java.lang.Thread$Builder");
+        name = builder.getMethod("name", String.class, long.class);
+        factory = builder.getMethod("factory");
+        newThreadPerTaskExecutor =
+            Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      } catch (ReflectiveOperationException e) {
+        // before Java 21
+      }
+      OF_VIRTUAL = ofVirtual;
+      NAME = name;
+      FACTORY = factory;
+      NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    static boolean isAvailable() {
+      return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(String threadNamePrefix) {
+      if (!isAvailable()) {
+        throw new ConfigException("Virtual threads need Java 21 or later, running on "
+            + System.getProperty("java.version"));
+      }
+      try {
+        Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), threadNamePrefix + "-", 1L);
+        ThreadFactory threadFactory = (ThreadFactory) FACTORY.invoke(builder);
+        return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        throw new IllegalStateException("Could not create virtual thread executor", e);
+      }
+    }
+  }
+
+  /**
+   * Runs tasks in the thread submitting them.
+   */
+  static class CallerExecutorService extends AbstractExecutorService {
+    private volatile boolean shutdown;
+
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+
+    @Override
+    public void shutdown() {
+      shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      shutdown = true;
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return shutdown;
+    }
+  }
+}
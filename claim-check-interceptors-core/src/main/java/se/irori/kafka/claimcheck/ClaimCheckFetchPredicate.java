@@ -0,0 +1,29 @@
+package se.irori.kafka.claimcheck;
+
+import org.apache.kafka.common.Configurable;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Decides which Claim Checks to check out, before anything is downloaded.
+ *
+ * <p>Configured with `claimcheck.checkout.fetch.predicate.class`, and evaluated by
+ * {@link ClaimCheckDeserializer}, {@link ClaimCheckStreamingDeserializer} and
+ * {@link ClaimCheckPrefetcher} for every record carrying the `message-claim-check` header.
+ * Records the predicate rejects are de-serialized to null, without a check out. Records sent
+ * without a Claim Check are always de-serialized.
+ *
+ * <p>Kafka does not pass record keys to value de-serializers, so the key is only known to
+ * {@link ClaimCheckPrefetcher}, for consumers reading keys as bytes.
+ */
+public interface ClaimCheckFetchPredicate extends Configurable {
+
+  /**
+   * Decide whether to check out the payload of a record.
+   *
+   * @param topic   topic associated with the record
+   * @param key     serialized key bytes; null if the key is null or not known
+   * @param headers headers associated with the record
+   * @return true to check out the payload, false to de-serialize the value to null
+   */
+  boolean test(String topic, byte[] key, Headers headers);
+}
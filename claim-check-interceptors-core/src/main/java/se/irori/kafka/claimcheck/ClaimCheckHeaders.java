@@ -0,0 +1,120 @@
+package se.irori.kafka.claimcheck;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * The Claim Check headers of a record, found in a single pass over its headers.
+ *
+ * <p>Where a header is repeated, e.g. when a record carries the headers of an upstream record it
+ * was forwarded from, the first one is used.
+ *
+ * <p>Records without a claim check reference or error, the common case, are told apart with
+ * {@link Headers#lastHeader(String)}, which for Kafka's own headers implementation is an indexed
+ * scan without allocation, and share one instance, without a compression type or payload size.
+ * Only the headers of other records are iterated.
+ */
+public final class ClaimCheckHeaders {
+
+  private static final ClaimCheckHeaders NONE = new ClaimCheckHeaders(null, null, null, null);
+
+  private final Header ref;
+
+  private final Header error;
+
+  private final Header compression;
+
+  private final Header payloadSize;
+
+  private ClaimCheckHeaders(Header ref, Header error, Header compression, Header payloadSize) {
+    this.ref = ref;
+    this.error = error;
+    this.compression = compression;
+    this.payloadSize = payloadSize;
+  }
+
+  /**
+   * Find the Claim Check headers of a record.
+   *
+   * @param headers the Kafka message headers to process
+   * @return the Claim Check headers, never null
+   */
+  public static ClaimCheckHeaders of(Headers headers) {
+    if (headers.lastHeader(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK) == null
+        && headers.lastHeader(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_ERROR)
+        == null) {
+      return NONE;
+    }
+    Header ref = null;
+    Header error = null;
+    Header compression = null;
+    Header payloadSize = null;
+    for (Header header : headers) {
+      String key = header.key();
+      if (ref == null
+          && key.equals(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK)) {
+        ref = header;
+      } else if (error == null
+          && key.equals(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_ERROR)) {
+        error = header;
+      } else if (compression == null
+          && key.equals(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_COMPRESSION)) {
+        compression = header;
+      } else if (payloadSize == null && key.equals(
+          ClaimCheckStreamingProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_PAYLOAD_SIZE)) {
+        payloadSize = header;
+      }
+    }
+    return new ClaimCheckHeaders(ref, error, compression, payloadSize);
+  }
+
+  public boolean isClaimCheck() {
+    return ref != null;
+  }
+
+  public boolean isClaimCheckError() {
+    return error != null;
+  }
+
+  /**
+   * Get the claim check reference.
+   *
+   * @return the claim check reference, or null if the message is not a Claim Check
+   */
+  public byte[] getRef() {
+    return ref == null ? null : ref.value();
+  }
+
+  /**
+   * Get the stacktrace of a Claim Check processing error.
+   *
+   * @return the error stacktrace, or null if not found
+   */
+  public String getErrorStackTrace() {
+    return error == null ? null : new String(error.value(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get the compression type a Claim Check payload was checked in with.
+   *
+   * @return the compression type, {@link ClaimCheckCompressionType#NONE} if no header is found
+   * @throws IllegalArgumentException if the compression type is unknown
+   */
+  public ClaimCheckCompressionType getCompressionType() {
+    return compression == null ? ClaimCheckCompressionType.NONE
+        : ClaimCheckCompressionType.forName(
+            new String(compression.value(), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Get the uncompressed size of the payload, if known.
+   *
+   * @param defaultSize the size to return if there is no payload size header
+   * @return the payload size, or the default size if no header was found
+   */
+  public long getPayloadSize(long defaultSize) {
+    return payloadSize == null ? defaultSize
+        : ClaimCheckStreamingUtils.toPayloadSize(payloadSize.value());
+  }
+}
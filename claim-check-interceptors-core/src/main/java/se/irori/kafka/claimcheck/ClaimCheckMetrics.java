@@ -0,0 +1,332 @@
+package se.irori.kafka.claimcheck;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Meter;
+import org.apache.kafka.common.metrics.stats.Percentile;
+import org.apache.kafka.common.metrics.stats.Percentiles;
+import org.apache.kafka.common.metrics.stats.WindowedCount;
+import org.apache.kafka.common.utils.Time;
+
+/**
+ * Metrics of Claim Check operations, registered with Kafka {@link Metrics} and published over
+ * JMX with prefix `se.irori.kafka.claimcheck`.
+ *
+ * <p>Metrics in group `claim-check-metrics` are tagged by `topic` and by `backend`, the simple
+ * class name of the {@link ClaimCheckBackend}:
+ * <ul>
+ *   <li>`check-in-latency-avg`, `-max`, `-p50`, `-p99` and the same for `check-out`, in ms</li>
+ *   <li>`check-in-rate`, `check-in-total` and the same for `check-out`</li>
+ *   <li>`check-in-bytes-rate`, `check-in-bytes-total` and the same for `check-out`, the bytes
+ *   uploaded to and downloaded from the backend, after compression</li>
+ *   <li>`check-in-in-flight` and `check-out-in-flight`</li>
+ *   <li>`claim-check-ratio`, the share of records sent above the claim check limit</li>
+ *   <li>`check-in-error-rate`, `check-in-error-total` and the same for `check-out`, also tagged
+ *   by `error`, the simple class name of the exception</li>
+ * </ul>
+ *
+ * <p>All clients in the JVM share the registry, see {@link #registry()} to bridge it to other
+ * metrics systems. The metrics of a backend and topic are removed when the last client using them
+ * is closed.
+ */
+public class ClaimCheckMetrics {
+
+  public static final String JMX_PREFIX = "se.irori.kafka.claimcheck";
+
+  static final String METRIC_GROUP = "claim-check-metrics";
+
+  static final String CHECK_IN = "check-in";
+
+  static final String CHECK_OUT = "check-out";
+
+  /**
+   * Upper bound of the latency percentile histograms, in ms. Longer operations count as this in
+   * the percentiles, but not in the average and max.
+   */
+  private static final double LATENCY_HISTOGRAM_MAX_MS = TimeUnit.SECONDS.toMillis(10);
+
+  /**
+   * Size of the latency percentile histograms, for 2048 buckets growing linearly in width, from
+   * under 1 ms for latencies of tens of ms to 5 ms at the upper bound.
+   */
+  private static final int LATENCY_HISTOGRAM_BYTES = 8 * 1024;
+
+  private static final Metrics METRICS = new Metrics(new MetricConfig(),
+      Collections.singletonList(new JmxReporter()), Time.SYSTEM,
+      new KafkaMetricsContext(JMX_PREFIX));
+
+  /**
+   * Metrics by backend and topic, shared by all instances using them.
+   */
+  private static final Map<String, TopicMetrics> TOPICS = new ConcurrentHashMap<>();
+
+  private final String backend;
+
+  /**
+   * Metrics by topic used by this instance, to release when closed.
+   */
+  private final Map<String, TopicMetrics> topics = new ConcurrentHashMap<>();
+
+  private ClaimCheckMetrics(String backend) {
+    this.backend = backend;
+  }
+
+  /**
+   * Get the metrics of operations on a backend.
+   *
+   * @param claimCheckBackend the backend, for the `backend` tag
+   * @return metrics tagged with the backend class
+   */
+  public static ClaimCheckMetrics forBackend(ClaimCheckBackend claimCheckBackend) {
+    return new ClaimCheckMetrics(claimCheckBackend.getClass().getSimpleName());
+  }
+
+  /**
+   * Get the registry shared by all Claim Check clients in the JVM, e.g. to add a
+   * {@link org.apache.kafka.common.metrics.MetricsReporter} bridging to another metrics system.
+   *
+   * @return the metrics registry
+   */
+  public static Metrics registry() {
+    return METRICS;
+  }
+
+  /**
+   * Record a record sent, above the claim check limit or not.
+   *
+   * @param topic the topic of the record
+   * @param claimChecked true if the record is above the claim check limit
+   */
+  public void recordSend(String topic, boolean claimChecked) {
+    topicMetrics(topic).claimCheckRatio.record(claimChecked ? 1.0 : 0.0);
+  }
+
+  /**
+   * Start timing a check in.
+   *
+   * @param topic the topic checked in to
+   * @return the operation, to complete or fail exactly once
+   */
+  public Operation startCheckIn(String topic) {
+    return new Operation(topicMetrics(topic).checkIn);
+  }
+
+  /**
+   * Start timing a check out.
+   *
+   * @param topic the topic of the record checked out
+   * @return the operation, to complete or fail exactly once
+   */
+  public Operation startCheckOut(String topic) {
+    return new Operation(topicMetrics(topic).checkOut);
+  }
+
+  /**
+   * Release the metrics used by this instance, removing those no other instance uses. Operations
+   * still in flight are recorded, but no longer published.
+   */
+  public void close() {
+    for (String topic : topics.keySet()) {
+      topics.remove(topic);
+      TOPICS.computeIfPresent(backend + "/" + topic, (key, metrics) -> {
+        if (--metrics.users > 0) {
+          return metrics;
+        }
+        metrics.remove();
+        return null;
+      });
+    }
+  }
+
+  private TopicMetrics topicMetrics(String topic) {
+    TopicMetrics metrics = topics.get(topic);
+    if (metrics != null) {
+      return metrics;
+    }
+    return topics.computeIfAbsent(topic, t -> TOPICS.compute(backend + "/" + t,
+        (key, shared) -> {
+          TopicMetrics used = shared == null ? new TopicMetrics(t, backend) : shared;
+          used.users++;
+          return used;
+        }));
+  }
+
+  /**
+   * A timed check in or check out.
+   */
+  public static class Operation {
+    private final OperationMetrics metrics;
+
+    private final long startNanos;
+
+    Operation(OperationMetrics metrics) {
+      this.metrics = metrics;
+      this.startNanos = System.nanoTime();
+      metrics.inFlight.incrementAndGet();
+    }
+
+    /**
+     * Record the operation as done.
+     *
+     * @param bytes the bytes transferred, or -1 if not known
+     */
+    public void complete(long bytes) {
+      metrics.inFlight.decrementAndGet();
+      metrics.latency.record((System.nanoTime() - startNanos) / 1_000_000.0);
+      if (bytes >= 0) {
+        metrics.bytes.record(bytes);
+      }
+    }
+
+    /**
+     * Record the operation as failed.
+     *
+     * @param error the error, unwrapped if a {@link CompletionException}
+     */
+    public void fail(Throwable error) {
+      metrics.inFlight.decrementAndGet();
+      Throwable cause = error instanceof CompletionException && error.getCause() != null
+          ? error.getCause() : error;
+      metrics.errors(cause.getClass().getSimpleName()).record();
+    }
+
+    /**
+     * Complete or fail the operation when a future completes.
+     *
+     * @param future the future result of the operation
+     * @param bytes the bytes transferred given the result, or -1 if not known
+     * @param <T> the result type
+     * @return a future completing after the operation is recorded
+     */
+    public <T> CompletableFuture<T> whenComplete(CompletableFuture<T> future,
+                                                 ToLongFunction<? super T> bytes) {
+      return future.whenComplete((result, e) -> {
+        if (e == null) {
+          complete(bytes.applyAsLong(result));
+        } else {
+          fail(e);
+        }
+      });
+    }
+  }
+
+  private static class TopicMetrics {
+    /**
+     * Number of instances using these metrics, only changed when computing the map entry.
+     */
+    int users;
+
+    final Sensor claimCheckRatio;
+
+    final OperationMetrics checkIn;
+
+    final OperationMetrics checkOut;
+
+    TopicMetrics(String topic, String backend) {
+      Map<String, String> tags = new HashMap<>();
+      tags.put("topic", topic);
+      tags.put("backend", backend);
+
+      claimCheckRatio = METRICS.sensor(sensorName("claim-check-ratio", tags));
+      claimCheckRatio.add(METRICS.metricName("claim-check-ratio", METRIC_GROUP,
+          "The share of records sent above the claim check limit", tags), new Avg());
+
+      checkIn = new OperationMetrics(CHECK_IN, tags);
+      checkOut = new OperationMetrics(CHECK_OUT, tags);
+    }
+
+    void remove() {
+      METRICS.removeSensor(claimCheckRatio.name());
+      checkIn.remove();
+      checkOut.remove();
+    }
+  }
+
+  private static class OperationMetrics {
+    final String operation;
+
+    final Map<String, String> tags;
+
+    final Sensor latency;
+
+    final Sensor bytes;
+
+    final AtomicInteger inFlight = new AtomicInteger();
+
+    final Map<String, Sensor> errors = new ConcurrentHashMap<>();
+
+    OperationMetrics(String operation, Map<String, String> tags) {
+      this.operation = operation;
+      this.tags = tags;
+
+      latency = METRICS.sensor(sensorName(operation + "-latency", tags));
+      latency.add(metricName("-latency-avg", "The average latency of a " + operation + " in ms"),
+          new Avg());
+      latency.add(metricName("-latency-max", "The max latency of a " + operation + " in ms"),
+          new Max());
+      latency.add(new Percentiles(LATENCY_HISTOGRAM_BYTES, LATENCY_HISTOGRAM_MAX_MS,
+          Percentiles.BucketSizing.LINEAR,
+          new Percentile(metricName("-latency-p50", "The median latency of a " + operation
+              + " in ms"), 50),
+          new Percentile(metricName("-latency-p99", "The 99th percentile latency of a "
+              + operation + " in ms"), 99)));
+      latency.add(new Meter(new WindowedCount(),
+          metricName("-rate", "The number of " + operation + "s per second"),
+          metricName("-total", "The total number of " + operation + "s")));
+
+      bytes = METRICS.sensor(sensorName(operation + "-bytes", tags));
+      bytes.add(new Meter(
+          metricName("-bytes-rate", "The bytes per second of " + operation + "s"),
+          metricName("-bytes-total", "The total bytes of " + operation + "s")));
+
+      METRICS.addMetric(metricName("-in-flight", "The number of " + operation + "s in flight"),
+          (config, now) -> inFlight.get());
+    }
+
+    void remove() {
+      METRICS.removeSensor(latency.name());
+      METRICS.removeSensor(bytes.name());
+      for (Sensor sensor : errors.values()) {
+        METRICS.removeSensor(sensor.name());
+      }
+      METRICS.removeMetric(metricName("-in-flight", ""));
+    }
+
+    Sensor errors(String error) {
+      return errors.computeIfAbsent(error, e -> {
+        Map<String, String> errorTags = new HashMap<>(tags);
+        errorTags.put("error", e);
+        Sensor sensor = METRICS.sensor(sensorName(operation + "-error", errorTags));
+        sensor.add(new Meter(new WindowedCount(),
+            METRICS.metricName(operation + "-error-rate", METRIC_GROUP,
+                "The number of failed " + operation + "s per second", errorTags),
+            METRICS.metricName(operation + "-error-total", METRIC_GROUP,
+                "The total number of failed " + operation + "s", errorTags)));
+        return sensor;
+      });
+    }
+
+    private MetricName metricName(String suffix, String description) {
+      return METRICS.metricName(operation + suffix, METRIC_GROUP, description, tags);
+    }
+  }
+
+  private static String sensorName(String name, Map<String, String> tags) {
+    return METRIC_GROUP + ":" + name + ":" + tags;
+  }
+}
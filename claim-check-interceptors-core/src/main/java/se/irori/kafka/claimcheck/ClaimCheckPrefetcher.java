@@ -0,0 +1,270 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig.Keys;
+
+/**
+ * Checks out the Claim Checks of a whole poll batch concurrently, ahead of deserialization.
+ *
+ * <p>{@link ClaimCheckDeserializer} checks out each Claim Check inside poll, one after the other.
+ * Instead, configure the consumer to read values as bytes, with `ByteArrayDeserializer`, and pass
+ * each poll batch through {@link #checkOut(ConsumerRecords)}. Records carrying the
+ * `message-claim-check` header are then checked out with bounded concurrency, while records are
+ * de-serialized in order with the configured wrapped de-serializer.
+ *
+ * <p>Check outs are started ahead of the record being de-serialized as long as
+ * `claimcheck.checkout.prefetch.buffer.max.bytes` is not used up. Payload sizes are taken from
+ * the `message-claim-check-payload-size` header when present, and otherwise counted once checked
+ * out.
+ *
+ * <p>With `claimcheck.checkout.fetch.predicate.class` set, Claim Checks rejected by the
+ * {@link ClaimCheckFetchPredicate} are neither prefetched nor checked out, and their values are
+ * null. The predicate is passed the record key when keys are read as bytes.
+ *
+ * @param <K> The Java type of record keys, passed through as is.
+ * @param <V> The Java type to de-serialize values to.
+ */
+public class ClaimCheckPrefetcher<K, V> implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClaimCheckPrefetcher.class);
+
+  private final Deserializer<V> valueDeserializer;
+
+  private final ClaimCheckBackend claimCheckBackend;
+
+  private final ClaimCheckBackendRegistry.Reference backendReference;
+
+  private final ClaimCheckCheckoutCache checkoutCache;
+
+  private final ClaimCheckFetchPredicate fetchPredicate;
+
+  private final ClaimCheckMetrics metrics;
+
+  private final ExecutorService checkOutExecutor;
+
+  private final int maxInFlight;
+
+  private final long bufferMaxBytes;
+
+  /**
+   * Create a prefetcher from consumer and claim check configs.
+   *
+   * @param configs configs in key/value pairs
+   */
+  @SuppressWarnings("unchecked")
+  public ClaimCheckPrefetcher(Map<String, ?> configs) {
+    BaseClaimCheckConfig baseClaimCheckConfig = BaseClaimCheckConfig.validatedConfig(configs);
+
+    this.valueDeserializer = baseClaimCheckConfig.getConfiguredInstance(
+        Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS, Deserializer.class);
+    this.valueDeserializer.configure(configs, false);
+
+    this.backendReference = ClaimCheckBackendRegistry.acquire(baseClaimCheckConfig);
+    this.claimCheckBackend = backendReference.getBackend();
+
+    this.maxInFlight =
+        baseClaimCheckConfig.getInt(Keys.CLAIMCHECK_CHECKOUT_PREFETCH_MAX_IN_FLIGHT_CONFIG);
+    this.bufferMaxBytes =
+        baseClaimCheckConfig.getLong(Keys.CLAIMCHECK_CHECKOUT_PREFETCH_BUFFER_MAX_BYTES_CONFIG);
+    this.checkoutCache = ClaimCheckCheckoutCache.getShared(baseClaimCheckConfig);
+    this.fetchPredicate = baseClaimCheckConfig.getConfiguredInstance(
+        Keys.CLAIMCHECK_CHECKOUT_FETCH_PREDICATE_CLASS_CONFIG, ClaimCheckFetchPredicate.class);
+    this.metrics = ClaimCheckMetrics.forBackend(claimCheckBackend);
+    this.checkOutExecutor = baseClaimCheckConfig.getExecutorType().newExecutor(maxInFlight,
+        "claim-check-checkout");
+  }
+
+  /**
+   * Check out and de-serialize all records of a poll batch, keeping record order.
+   *
+   * @param records records as polled, with values as bytes
+   * @return the records with de-serialized values
+   * @throws RuntimeException the first check out or de-serialization error in record order
+   */
+  public ConsumerRecords<K, V> checkOut(ConsumerRecords<K, byte[]> records) {
+    List<ConsumerRecord<K, byte[]>> batch = new ArrayList<>(records.count());
+    records.forEach(batch::add);
+    // the headers are scanned and the predicate asked once per record, so that it may sample
+    ClaimCheckHeaders[] claimCheckHeaders = new ClaimCheckHeaders[batch.size()];
+    boolean[] fetch = new boolean[batch.size()];
+    for (int i = 0; i < batch.size(); i++) {
+      claimCheckHeaders[i] = ClaimCheckHeaders.of(batch.get(i).headers());
+      fetch[i] = claimCheckHeaders[i].isClaimCheck() && shouldCheckOut(batch.get(i));
+    }
+
+    Map<TopicPartition, List<ConsumerRecord<K, V>>> checkedOut = new LinkedHashMap<>();
+    Prefetch prefetch = new Prefetch(batch, claimCheckHeaders, fetch);
+    try {
+      for (int i = 0; i < batch.size(); i++) {
+        ConsumerRecord<K, byte[]> record = batch.get(i);
+        V deserializedValue;
+        if (!claimCheckHeaders[i].isClaimCheck()) {
+          deserializedValue = valueDeserializer.deserialize(record.topic(), record.headers(),
+              record.value());
+        } else if (fetch[i]) {
+          deserializedValue = valueDeserializer.deserialize(record.topic(), record.headers(),
+              prefetch.take(i));
+        } else {
+          deserializedValue = null;
+        }
+        checkedOut.computeIfAbsent(new TopicPartition(record.topic(), record.partition()),
+            tp -> new ArrayList<>())
+            .add(new ConsumerRecord<>(record.topic(),
+                record.partition(),
+                record.offset(),
+                record.timestamp(),
+                record.timestampType(),
+                record.serializedKeySize(),
+                record.serializedValueSize(),
+                record.key(),
+                deserializedValue,
+                record.headers(),
+                record.leaderEpoch()));
+      }
+    } catch (RuntimeException e) {
+      prefetch.cancel();
+      throw e;
+    }
+    return new ConsumerRecords<>(checkedOut);
+  }
+
+  @Override
+  public void close() {
+    checkOutExecutor.shutdownNow();
+    valueDeserializer.close();
+    metrics.close();
+    backendReference.release();
+  }
+
+  /**
+   * Read-ahead window of check outs over a batch, consumed in record order.
+   */
+  private class Prefetch {
+    private final List<ConsumerRecord<K, byte[]>> batch;
+
+    private final ClaimCheckHeaders[] claimCheckHeaders;
+
+    private final boolean[] fetch;
+
+    private final ArrayDeque<CompletableFuture<byte[]>> window = new ArrayDeque<>();
+
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private int next = 0;
+
+    Prefetch(List<ConsumerRecord<K, byte[]>> batch, ClaimCheckHeaders[] claimCheckHeaders,
+             boolean[] fetch) {
+      this.batch = batch;
+      this.claimCheckHeaders = claimCheckHeaders;
+      this.fetch = fetch;
+    }
+
+    /**
+     * Take the payload for the Claim Check record at the given batch index.
+     */
+    byte[] take(int index) {
+      next = Math.max(next, index);
+      fill();
+      try {
+        byte[] payload = window.remove().join();
+        bufferedBytes.addAndGet(-payload.length);
+        return payload;
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw e;
+      }
+    }
+
+    private void fill() {
+      // always allow one check out, to make progress with payloads larger than the budget
+      while (next < batch.size() && window.size() < maxInFlight
+          && (window.isEmpty() || bufferedBytes.get() < bufferMaxBytes)) {
+        int index = next++;
+        if (fetch[index]) {
+          window.add(start(batch.get(index), claimCheckHeaders[index]));
+        }
+      }
+    }
+
+    private CompletableFuture<byte[]> start(ConsumerRecord<K, byte[]> record,
+                                            ClaimCheckHeaders headers) {
+      ClaimCheck claimCheck = new ClaimCheck(headers.getRef());
+      long payloadSize = headers.getPayloadSize(-1);
+      long declaredSize = Math.max(0, payloadSize);
+      bufferedBytes.addAndGet(declaredSize);
+      LOG.trace("prefetching claim check: topic={}, ref={}",
+          record.topic(), claimCheck.getReference());
+
+      ClaimCheckCompressionType compressionType = headers.getCompressionType();
+      return checkOutAsync(record.topic(), claimCheck,
+          compressionType == ClaimCheckCompressionType.NONE)
+          .thenApplyAsync(payload -> compressionType.decompress(payload, payloadSize),
+              checkOutExecutor)
+          .thenApply(payload -> {
+            bufferedBytes.addAndGet(payload.length - declaredSize);
+            LOG.trace("checked out claim check: topic={}, ref={}",
+                record.topic(), claimCheck.getReference());
+            return payload;
+          });
+    }
+
+    private CompletableFuture<byte[]> checkOutAsync(String topic, ClaimCheck claimCheck,
+                                                    boolean handedOver) {
+      if (checkoutCache == null) {
+        return timedCheckOutAsync(topic, claimCheck);
+      }
+      byte[] cached = checkoutCache.get(claimCheck.getReference());
+      if (cached != null) {
+        return CompletableFuture.completedFuture(cached);
+      }
+      return timedCheckOutAsync(topic, claimCheck)
+          .thenApply(payload -> {
+            // the cache keeps the array, hand over a copy, unless only read to decompress it
+            checkoutCache.put(claimCheck.getReference(), handedOver ? payload.clone() : payload);
+            return payload;
+          });
+    }
+
+    private CompletableFuture<byte[]> timedCheckOutAsync(String topic, ClaimCheck claimCheck) {
+      ClaimCheckMetrics.Operation checkOut = metrics.startCheckOut(topic);
+      try {
+        return checkOut.whenComplete(claimCheckBackend.checkOutAsync(claimCheck, checkOutExecutor),
+            payload -> payload.length);
+      } catch (RuntimeException e) {
+        checkOut.fail(e);
+        throw e;
+      }
+    }
+
+    void cancel() {
+      window.forEach(f -> f.cancel(false));
+      window.clear();
+    }
+  }
+
+  private boolean shouldCheckOut(ConsumerRecord<K, byte[]> record) {
+    if (fetchPredicate == null) {
+      return true;
+    }
+    byte[] key = record.key() instanceof byte[] ? (byte[]) record.key() : null;
+    return fetchPredicate.test(record.topic(), key, record.headers());
+  }
+}
@@ -3,16 +3,12 @@ package se.irori.kafka.claimcheck;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
 import java.util.Map;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerInterceptor;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.config.ConfigException;
-import org.apache.kafka.common.header.Headers;
-import org.apache.kafka.common.record.DefaultRecordBatch;
-import org.apache.kafka.common.record.SimpleRecord;
 import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +30,8 @@ public class ClaimCheckProducerInterceptor<K, V>
 
   public static final String HEADER_MESSAGE_CLAIM_CHECK = "message-claim-check";
   public static final String HEADER_MESSAGE_CLAIM_CHECK_ERROR = "message-claim-check-error";
+  public static final String HEADER_MESSAGE_CLAIM_CHECK_COMPRESSION =
+      "message-claim-check-compression";
 
   private long checkinUncompressedSizeOverBytes =
       BaseClaimCheckConfig.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_DEFAULT;
@@ -44,12 +42,22 @@ public class ClaimCheckProducerInterceptor<K, V>
 
   private ClaimCheckBackend claimCheckBackend;
 
+  private ClaimCheckBackendRegistry.Reference backendReference;
+
+  private ClaimCheckMetrics metrics;
+
+  private ClaimCheckCompressionType compressionType = ClaimCheckCompressionType.NONE;
+
+  private Integer compressionLevel;
+
   @Override
   @SuppressWarnings("unchecked")
   public void configure(Map<String, ?> configs) {
     BaseClaimCheckConfig baseClaimCheckConfig = BaseClaimCheckConfig.validatedConfig(configs);
     checkinUncompressedSizeOverBytes = baseClaimCheckConfig.getLong(
       Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG);
+    compressionType = baseClaimCheckConfig.getCompressionType();
+    compressionLevel = baseClaimCheckConfig.getCompressionLevel();
 
     this.valueSerializer = baseClaimCheckConfig
         .getConfiguredInstance(Keys.CLAIMCHECK_WRAPPED_VALUE_SERIALIZER_CLASS, Serializer.class);
@@ -59,8 +67,9 @@ public class ClaimCheckProducerInterceptor<K, V>
             .getConfiguredInstance(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, Serializer.class);
     this.keySerializer.configure(baseClaimCheckConfig.originals(), true);
 
-    this.claimCheckBackend = baseClaimCheckConfig.getConfiguredInstance(
-        Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG, ClaimCheckBackend.class);
+    this.backendReference = ClaimCheckBackendRegistry.acquire(baseClaimCheckConfig);
+    this.claimCheckBackend = backendReference.getBackend();
+    this.metrics = ClaimCheckMetrics.forBackend(claimCheckBackend);
 
     Serializer<?> rootSerializer = baseClaimCheckConfig
         .getConfiguredInstance(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, Serializer.class);
@@ -89,19 +98,26 @@ public class ClaimCheckProducerInterceptor<K, V>
       int valueBytesLength = valueBytes == null ? 0 : valueBytes.length;
 
 
-      if (isAboveClaimCheckLimit(producerRecord, keyBytes, valueBytes)) {
-        ClaimCheck claimCheck = claimCheckBackend.checkIn(
+      boolean aboveLimit = isAboveClaimCheckLimit(producerRecord, keyBytes, valueBytes,
+          checkinUncompressedSizeOverBytes);
+      metrics.recordSend(producerRecord.topic(), aboveLimit);
+      if (aboveLimit) {
+        ClaimCheck claimCheck = timedCheckIn(
             new ProducerRecord<>(producerRecord.topic(),
             producerRecord.partition(),
             producerRecord.timestamp(),
             null,
-            valueBytes,
+            compressionType.compress(valueBytes, compressionLevel),
             null)
         );
 
         LOG.debug("checked in claim check: topic={}, key={}, ref={}, length={}",
             producerRecord.topic(), producerRecord.key(), claimCheck.getReference(),
             valueBytesLength);
+        ClaimCheckUtils.setCompressionTypeHeader(producerRecord.headers(), compressionType);
+        producerRecord.headers().add(HEADER_MESSAGE_CLAIM_CHECK, claimCheck.serialize());
+        // lets consumers size the payload without checking it out
+        ClaimCheckStreamingUtils.setPayloadSize(producerRecord.headers(), valueBytesLength);
 
         // note: if using ClaimCheckSerializer this can probably be made to work
         // somewhat with log compaction, since null will be replaced
@@ -110,42 +126,60 @@ public class ClaimCheckProducerInterceptor<K, V>
             producerRecord.timestamp(),
             producerRecord.key(),
             null,
-            producerRecord.headers().add(HEADER_MESSAGE_CLAIM_CHECK, claimCheck.serialize())
+            producerRecord.headers()
         );
       } else {
         LOG.debug("not checking in claim check: topic={}, key={}, length={}",
             producerRecord.topic(), producerRecord.key(), valueBytesLength);
+        SerializedValueHandover.offer(producerRecord.headers(), producerRecord.value(),
+            valueBytes);
         return producerRecord;
       }
     } catch (Exception e) {
       LOG.error("Error when processing claim check", e);
-      // exception that would have been silent for producer
-      // propagate for ClaimCheckSerializer to pick up and rethrow
-      StringWriter stackTraceWriter = new StringWriter();
-      PrintWriter out = new PrintWriter(stackTraceWriter);
-      e.printStackTrace(out);
-
-      return new ProducerRecord<>(producerRecord.topic(),
-          producerRecord.partition(),
-          producerRecord.timestamp(),
-          producerRecord.key(),
-          // might as well pass the original to serializer for debugging purposes
-          producerRecord.value(),
-          producerRecord.headers().add(HEADER_MESSAGE_CLAIM_CHECK_ERROR,
-              stackTraceWriter.toString().getBytes(StandardCharsets.UTF_8))
-      );
+      return withClaimCheckError(producerRecord, e);
+    }
+  }
+
+  private ClaimCheck timedCheckIn(ProducerRecord<byte[], byte[]> record) {
+    ClaimCheckMetrics.Operation checkIn = metrics.startCheckIn(record.topic());
+    ClaimCheck claimCheck;
+    try {
+      claimCheck = claimCheckBackend.checkIn(record);
+    } catch (RuntimeException e) {
+      checkIn.fail(e);
+      throw e;
     }
+    checkIn.complete(record.value() == null ? 0 : record.value().length);
+    return claimCheck;
   }
 
-  private boolean isAboveClaimCheckLimit(ProducerRecord<?, ?> originalRecord,
-                                        byte[] keyBytes, byte[] valueBytes) {
-    Headers headers = originalRecord.headers();
-    long timestamp = originalRecord.timestamp() == null ? 0 : originalRecord.timestamp();
-    int batchSizeInBytes = DefaultRecordBatch.sizeInBytes(Collections.singleton(
-        new SimpleRecord(timestamp, keyBytes, valueBytes,
-            headers.toArray())));
+  /**
+   * Exception that would have been silent for producer: propagate for
+   * {@link ClaimCheckSerializer} to pick up and rethrow.
+   */
+  static <K, V> ProducerRecord<K, V> withClaimCheckError(ProducerRecord<K, V> producerRecord,
+                                                         Throwable e) {
+    StringWriter stackTraceWriter = new StringWriter();
+    PrintWriter out = new PrintWriter(stackTraceWriter);
+    e.printStackTrace(out);
+
+    return new ProducerRecord<>(producerRecord.topic(),
+        producerRecord.partition(),
+        producerRecord.timestamp(),
+        producerRecord.key(),
+        // might as well pass the original to serializer for debugging purposes
+        producerRecord.value(),
+        producerRecord.headers().add(HEADER_MESSAGE_CLAIM_CHECK_ERROR,
+            stackTraceWriter.toString().getBytes(StandardCharsets.UTF_8))
+    );
+  }
 
-    return batchSizeInBytes > checkinUncompressedSizeOverBytes;
+  static boolean isAboveClaimCheckLimit(ProducerRecord<?, ?> originalRecord,
+                                        byte[] keyBytes, byte[] valueBytes,
+                                        long checkinUncompressedSizeOverBytes) {
+    return RecordSizeEstimator.isAboveLimit(originalRecord.headers(), keyBytes, valueBytes,
+        checkinUncompressedSizeOverBytes);
   }
 
   @Override
@@ -157,6 +191,11 @@ public class ClaimCheckProducerInterceptor<K, V>
   public void close() {
     keySerializer.close();
     valueSerializer.close();
-    claimCheckBackend.close();
+    if (metrics != null) {
+      metrics.close();
+    }
+    if (backendReference != null) {
+      backendReference.release();
+    }
   }
 }
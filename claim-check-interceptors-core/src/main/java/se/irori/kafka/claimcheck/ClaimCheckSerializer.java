@@ -44,13 +44,18 @@ public class ClaimCheckSerializer<T> implements Serializer<T> {
    */
   @Override
   public byte[] serialize(String topic, Headers headers, T data) {
-    if (ClaimCheckUtils.isClaimCheckError(headers)) {
-      String error = ClaimCheckUtils.getClaimCheckErrorStackTraceFromHeader(headers);
+    // serialized already by the producer interceptor, to determine the size
+    byte[] serializedValue = SerializedValueHandover.take(headers, data);
 
-      throw new KafkaStorageException("Claim check interceptor error:\n" + error);
-    } else if (ClaimCheckUtils.isClaimCheck(headers)) {
+    ClaimCheckHeaders claimCheckHeaders = ClaimCheckHeaders.of(headers);
+    if (claimCheckHeaders.isClaimCheckError()) {
+      throw new KafkaStorageException("Claim check interceptor error:\n"
+          + claimCheckHeaders.getErrorStackTrace());
+    } else if (claimCheckHeaders.isClaimCheck()) {
       // we need non-null value to trigger consumer serializer
       return EMPTY_BYTE_ARRAY;
+    } else if (serializedValue != null) {
+      return serializedValue;
     } else {
       return valueSerializer.serialize(topic, headers, data);
     }
@@ -1,12 +1,11 @@
 package se.irori.kafka.claimcheck;
 
-import static se.irori.kafka.claimcheck.ClaimCheckUtils.getClaimCheckRefFromHeader;
-import static se.irori.kafka.claimcheck.ClaimCheckUtils.isClaimCheck;
-
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
 import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.KafkaStorageException;
 import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.slf4j.Logger;
@@ -18,6 +17,12 @@ import org.slf4j.LoggerFactory;
  * <p>If messages carry the `message-claim-check` header, the configured Claim Check backend
  * is used to fetch the real payload from the underlying store.
  *
+ * <p>Payloads checked in with compression, as recorded by the `message-claim-check-compression`
+ * header, are decompressed as the returned stream is read.
+ *
+ * <p>With `claimcheck.checkout.fetch.predicate.class` set, Claim Checks rejected by the
+ * {@link ClaimCheckFetchPredicate} are de-serialized to null, without opening a stream.
+ *
  * <p>The configured wrapped de-serializer is used to de-serialize the message bytes that either
  * come from the claim check backend or directly as Kafka message value.
  *
@@ -28,6 +33,12 @@ public class ClaimCheckStreamingDeserializer implements Deserializer<InputStream
 
   private ClaimCheckBackend claimCheckBackend;
 
+  private ClaimCheckBackendRegistry.Reference backendReference;
+
+  private ClaimCheckFetchPredicate fetchPredicate;
+
+  private ClaimCheckMetrics metrics;
+
   /**
    * Configure this class.
    *
@@ -42,8 +53,12 @@ public class ClaimCheckStreamingDeserializer implements Deserializer<InputStream
       throw new ConfigException("Should not be used to wrap key serializer, only value");
     }
 
-    this.claimCheckBackend = baseClaimCheckConfig.getConfiguredInstance(
-        BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG, ClaimCheckBackend.class);
+    this.backendReference = ClaimCheckBackendRegistry.acquire(baseClaimCheckConfig);
+    this.claimCheckBackend = backendReference.getBackend();
+    this.fetchPredicate = baseClaimCheckConfig.getConfiguredInstance(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_FETCH_PREDICATE_CLASS_CONFIG,
+        ClaimCheckFetchPredicate.class);
+    this.metrics = ClaimCheckMetrics.forBackend(claimCheckBackend);
   }
 
   /**
@@ -72,12 +87,30 @@ public class ClaimCheckStreamingDeserializer implements Deserializer<InputStream
   @Override
   public InputStream deserialize(String topic, Headers headers, byte[] data) {
 
-    if (isClaimCheck(headers)) {
-      ClaimCheck claimCheck = new ClaimCheck(getClaimCheckRefFromHeader(headers));
+    ClaimCheckHeaders claimCheckHeaders = ClaimCheckHeaders.of(headers);
+    byte[] claimCheckRef = claimCheckHeaders.getRef();
+    if (claimCheckRef != null) {
+      ClaimCheck claimCheck = new ClaimCheck(claimCheckRef);
 
       LOG.trace("received claim check: topic={}, ref={}",
           topic, claimCheck.getReference());
-      InputStream deserializedValue = claimCheckBackend.checkOutStreaming(claimCheck);
+      if (fetchPredicate != null && !fetchPredicate.test(topic, null, headers)) {
+        LOG.trace("skipped claim check: topic={}, ref={}",
+            topic, claimCheck.getReference());
+        return null;
+      }
+      // times opening the stream, the payload is read later by the application
+      ClaimCheckMetrics.Operation checkOut = metrics.startCheckOut(topic);
+      InputStream payload;
+      try {
+        payload = claimCheckBackend.checkOutStreaming(claimCheck);
+      } catch (RuntimeException e) {
+        checkOut.fail(e);
+        throw e;
+      }
+      checkOut.complete(-1L);
+      InputStream deserializedValue = decompressing(payload,
+          claimCheckHeaders.getCompressionType());
       LOG.trace("checked out claim check: topic={}, ref={}",
           topic, claimCheck.getReference());
       return deserializedValue;
@@ -85,4 +118,28 @@ public class ClaimCheckStreamingDeserializer implements Deserializer<InputStream
       return new ByteArrayInputStream(data);
     }
   }
+
+  /**
+   * Close this de-serializer, and release its backend. Returned payload streams must be read
+   * before.
+   */
+  @Override
+  public void close() {
+    if (metrics != null) {
+      metrics.close();
+    }
+    if (backendReference != null) {
+      backendReference.release();
+    }
+  }
+
+  private static InputStream decompressing(InputStream payload,
+                                           ClaimCheckCompressionType compressionType) {
+    try {
+      return compressionType.wrapForInput(payload);
+    } catch (IOException e) {
+      throw new KafkaStorageException("Could not decompress payload with "
+          + compressionType.getName(), e);
+    }
+  }
 }
@@ -4,16 +4,12 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
 import java.util.Map;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerInterceptor;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.config.ConfigException;
-import org.apache.kafka.common.header.Headers;
-import org.apache.kafka.common.record.DefaultRecordBatch;
-import org.apache.kafka.common.record.SimpleRecord;
 import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +42,13 @@ public class ClaimCheckStreamingProducerInterceptor<K>
 
   private ClaimCheckBackend claimCheckBackend;
 
+  private ClaimCheckBackendRegistry.Reference backendReference;
+
+  private ClaimCheckMetrics metrics;
+
+  private ClaimCheckCompressionType compressionType = ClaimCheckCompressionType.NONE;
+
+  private Integer compressionLevel;
 
   @Override
   @SuppressWarnings("unchecked")
@@ -53,14 +56,16 @@ public class ClaimCheckStreamingProducerInterceptor<K>
     BaseClaimCheckConfig baseClaimCheckConfig = BaseClaimCheckConfig.validatedConfig(configs);
     checkinUncompressedSizeOverBytes = baseClaimCheckConfig.getLong(
       Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG);
-
+    compressionType = baseClaimCheckConfig.getCompressionType();
+    compressionLevel = baseClaimCheckConfig.getCompressionLevel();
 
     this.keySerializer = baseClaimCheckConfig
             .getConfiguredInstance(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, Serializer.class);
     this.keySerializer.configure(baseClaimCheckConfig.originals(), true);
 
-    this.claimCheckBackend = baseClaimCheckConfig.getConfiguredInstance(
-        Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG, ClaimCheckBackend.class);
+    this.backendReference = ClaimCheckBackendRegistry.acquire(baseClaimCheckConfig);
+    this.claimCheckBackend = backendReference.getBackend();
+    this.metrics = ClaimCheckMetrics.forBackend(claimCheckBackend);
 
     Serializer<?> rootSerializer = baseClaimCheckConfig
         .getConfiguredInstance(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, Serializer.class);
@@ -85,12 +90,23 @@ public class ClaimCheckStreamingProducerInterceptor<K>
 
       InputStream payloadStream = producerRecord.value();
 
-      if (isAboveClaimCheckLimit(producerRecord, keyBytes, payloadSize)) {
+      // payloads that do not fit in a byte array can not be sent inline, whatever the limit
+      boolean aboveLimit = !ClaimCheckStreamingUtils.fitsInByteArray(payloadSize)
+          || isAboveClaimCheckLimit(producerRecord, keyBytes, payloadSize);
+      metrics.recordSend(producerRecord.topic(), aboveLimit);
+      if (aboveLimit) {
         LOG.debug("starting  claim check streaming upload: topic={}, key={}, length={}",
             producerRecord.topic(), producerRecord.key(), payloadSize);
-        ClaimCheck claimCheck = claimCheckBackend.checkInStreaming(producerRecord.topic(),
-            payloadStream,
-            payloadSize);
+        long uploadSize = payloadSize;
+        if (compressionType != ClaimCheckCompressionType.NONE) {
+          // compressed while the backend reads it, the compressed size is not known up front
+          payloadStream =
+              new CompressingInputStream(payloadStream, compressionType, compressionLevel);
+          uploadSize = -1L;
+          ClaimCheckUtils.setCompressionTypeHeader(producerRecord.headers(), compressionType);
+        }
+
+        ClaimCheck claimCheck = timedCheckIn(producerRecord.topic(), payloadStream, uploadSize);
 
         LOG.debug("checked in claim check streaming: topic={}, key={}, ref={}, length={}",
             producerRecord.topic(), producerRecord.key(), claimCheck.getReference(),
@@ -130,15 +146,23 @@ public class ClaimCheckStreamingProducerInterceptor<K>
     }
   }
 
+  private ClaimCheck timedCheckIn(String topic, InputStream payload, long payloadSize) {
+    ClaimCheckMetrics.Operation checkIn = metrics.startCheckIn(topic);
+    ClaimCheck claimCheck;
+    try {
+      claimCheck = claimCheckBackend.checkInStreaming(topic, payload, payloadSize);
+    } catch (RuntimeException e) {
+      checkIn.fail(e);
+      throw e;
+    }
+    checkIn.complete(payloadSize);
+    return claimCheck;
+  }
+
   private boolean isAboveClaimCheckLimit(ProducerRecord<?, ?> originalRecord,
                                          byte[] keyBytes, long valueSize) {
-    Headers headers = originalRecord.headers();
-    long timestamp = originalRecord.timestamp() == null ? 0 : originalRecord.timestamp();
-    int batchSizeInBytes = DefaultRecordBatch.sizeInBytes(Collections.singleton(
-        new SimpleRecord(timestamp, keyBytes, new byte[] {},
-            headers.toArray())));
-
-    return batchSizeInBytes + valueSize > checkinUncompressedSizeOverBytes;
+    return RecordSizeEstimator.isAboveLimit(originalRecord.headers(), keyBytes, valueSize,
+        checkinUncompressedSizeOverBytes);
   }
 
   @Override
@@ -149,7 +173,12 @@ public class ClaimCheckStreamingProducerInterceptor<K>
   @Override
   public void close() {
     keySerializer.close();
-    claimCheckBackend.close();
+    if (metrics != null) {
+      metrics.close();
+    }
+    if (backendReference != null) {
+      backendReference.release();
+    }
   }
 
 
@@ -32,7 +32,11 @@ public class ClaimCheckStreamingUtils {
           + ClaimCheckStreamingProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_PAYLOAD_SIZE
           + "' header in streaming mode.");
     }
-    return payloadSizeDeserializer.deserialize("dummy", payloadSizeHeader.value());
+    return toPayloadSize(payloadSizeHeader.value());
+  }
+
+  static long toPayloadSize(byte[] payloadSizeHeaderValue) {
+    return payloadSizeDeserializer.deserialize("dummy", payloadSizeHeaderValue);
   }
 
   /**
@@ -48,19 +52,32 @@ public class ClaimCheckStreamingUtils {
   }
 
   /**
-   * Convert an InputStream to a byte array.
+   * Check if a streaming payload fits in a byte array, and so can be sent inline in a record.
+   *
+   * @param payloadSize the payload size in bytes
+   * @return true if the payload fits in a byte array
+   */
+  public static boolean fitsInByteArray(long payloadSize) {
+    return payloadSize >= 0 && payloadSize <= ParallelRangeDownloader.MAX_ARRAY_SIZE;
+  }
+
+  /**
+   * Convert an InputStream to a byte array. Only for payloads known to be small, streaming mode
+   * passes large payloads on as streams.
    *
    * @param dataStream input stream
    * @param payloadSize number of bytes in input stream
    * @return a byte array with the fully read stream
-   * @throws IOException in case of read errors
+   * @throws IOException in case of read errors, or if the payload does not fit in a byte array
    */
   public static byte[] streamToBytes(InputStream dataStream, long payloadSize) throws IOException {
+    if (!fitsInByteArray(payloadSize)) {
+      throw new IOException("Payload of " + payloadSize + " bytes does not fit in a byte array");
+    }
     byte[] data = new byte[(int) payloadSize];
     DataInputStream dis = new DataInputStream(dataStream);
     dis.readFully(data);
     dis.close();
     return data;
   }
-  
 }
@@ -0,0 +1,24 @@
+package se.irori.kafka.claimcheck;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for running backend calls.
+ */
+class ClaimCheckThreadFactory implements ThreadFactory {
+  private final String namePrefix;
+
+  private final AtomicInteger threadCount = new AtomicInteger();
+
+  ClaimCheckThreadFactory(String namePrefix) {
+    this.namePrefix = namePrefix;
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -1,12 +1,16 @@
 package se.irori.kafka.claimcheck;
 
 import java.nio.charset.StandardCharsets;
-import java.util.stream.StreamSupport;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.Headers;
 
 /**
  * Utility methods for Claim Check related Kafka headers.
+ *
+ * <p>Where a header is repeated, the first one is used. Absent headers, the common case, are told
+ * apart with {@link Headers#lastHeader(String)}, which for Kafka's own headers implementation is
+ * an indexed scan without allocation. The serializers and de-serializers find all the Claim Check
+ * headers of a record in a single pass with {@link ClaimCheckHeaders} instead.
  */
 public class ClaimCheckUtils {
 
@@ -16,9 +20,7 @@ public class ClaimCheckUtils {
    * @return true if record headers indicate the message is a Claim Check.
    */
   public static boolean isClaimCheck(Headers headers) {
-    return StreamSupport.stream(headers.spliterator(), false)
-        .map(Header::key)
-        .anyMatch(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK::equals);
+    return headers.lastHeader(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK) != null;
   }
 
   /**
@@ -27,24 +29,19 @@ public class ClaimCheckUtils {
    * @param headers message headers
    */
   public static boolean isClaimCheckError(Headers headers) {
-    return StreamSupport.stream(headers.spliterator(), false)
-        .map(Header::key)
-        .anyMatch(ClaimCheckProducerInterceptor
-            .HEADER_MESSAGE_CLAIM_CHECK_ERROR::equals);
+    return headers.lastHeader(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_ERROR)
+        != null;
   }
 
   /**
    * Get claim check reference from header.
    *
    * @param headers the Kafka message headers to process
+   * @return the claim check reference, or null if the message is not a Claim Check
    */
   public static byte[] getClaimCheckRefFromHeader(Headers headers) {
-    return StreamSupport.stream(headers.spliterator(), false)
-        .filter(h ->
-            ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK.equals(h.key()))
-        .findFirst()
-        .map(Header::value)
-        .orElse(null);
+    Header header = firstHeader(headers, ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK);
+    return header == null ? null : header.value();
   }
 
   /**
@@ -55,11 +52,49 @@ public class ClaimCheckUtils {
    * @return the error stacktrace, or null if not found
    */
   public static String getClaimCheckErrorStackTraceFromHeader(Headers headers) {
-    return StreamSupport.stream(headers.spliterator(), false)
-        .filter(h -> ClaimCheckProducerInterceptor
-            .HEADER_MESSAGE_CLAIM_CHECK_ERROR.equals(h.key()))
-        .findFirst()
-        .map(h -> new String(h.value(), StandardCharsets.UTF_8))
-        .orElse(null);
+    Header header =
+        firstHeader(headers, ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_ERROR);
+    return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get the compression type a Claim Check payload was checked in with.
+   *
+   * @param headers the Kafka message headers to process
+   * @return the compression type, {@link ClaimCheckCompressionType#NONE} if no header is found
+   * @throws IllegalArgumentException if the compression type is unknown
+   */
+  public static ClaimCheckCompressionType getCompressionTypeFromHeader(Headers headers) {
+    Header header =
+        firstHeader(headers, ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_COMPRESSION);
+    return header == null ? ClaimCheckCompressionType.NONE
+        : ClaimCheckCompressionType.forName(new String(header.value(), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Record the compression type a Claim Check payload was checked in with, if any.
+   *
+   * @param headers where to set the header
+   * @param compressionType the compression type, no header is set for
+   *                        {@link ClaimCheckCompressionType#NONE}
+   */
+  public static void setCompressionTypeHeader(Headers headers,
+                                              ClaimCheckCompressionType compressionType) {
+    if (compressionType != ClaimCheckCompressionType.NONE) {
+      headers.add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_COMPRESSION,
+          compressionType.getName().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static Header firstHeader(Headers headers, String key) {
+    if (headers.lastHeader(key) == null) {
+      return null;
+    }
+    for (Header header : headers) {
+      if (header.key().equals(key)) {
+        return header;
+      }
+    }
+    return null;
   }
 }
@@ -0,0 +1,87 @@
+package se.irori.kafka.claimcheck;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * A record value de-serialized on first access, as returned by
+ * {@link ClaimCheckValueDeserializer}. For a Claim Check, the payload is only checked out when
+ * the value is first accessed, so that records skipped by key or headers are never checked out.
+ *
+ * <p>The value is kept once de-serialized. A failed check out is tried again on the next access.
+ *
+ * @param <T> The Java type of the value.
+ */
+public class ClaimCheckValue<T> {
+
+  private final String reference;
+
+  private final long size;
+
+  private final Supplier<T> loader;
+
+  private volatile boolean loaded;
+
+  private T value;
+
+  ClaimCheckValue(String reference, long size, Supplier<T> loader) {
+    this.reference = reference;
+    this.size = size;
+    this.loader = loader;
+  }
+
+  /**
+   * Get the Claim Check reference.
+   *
+   * @return the reference, or null if the value was sent in the record
+   */
+  public String getReference() {
+    return reference;
+  }
+
+  public boolean isClaimCheck() {
+    return reference != null;
+  }
+
+  /**
+   * Get the size of the serialized value, without checking it out.
+   *
+   * @return the size in bytes, from the `message-claim-check-payload-size` header for a Claim
+   *     Check, or -1 if the header is missing
+   */
+  public long getSize() {
+    return size;
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Get the value, checking out and de-serializing it on first access.
+   *
+   * @return the de-serialized value; may be null
+   */
+  public synchronized T get() {
+    if (!loaded) {
+      value = loader.get();
+      loaded = true;
+    }
+    return value;
+  }
+
+  /**
+   * Get the value without blocking the caller, checking out and de-serializing it on the given
+   * executor on first access.
+   *
+   * @param executor the executor to run the check out and de-serialization on
+   * @return a future completed with the value, or exceptionally if the check out failed
+   */
+  public CompletableFuture<T> getAsync(Executor executor) {
+    if (loaded) {
+      return CompletableFuture.completedFuture(get());
+    }
+    return CompletableFuture.supplyAsync(this::get, executor);
+  }
+}
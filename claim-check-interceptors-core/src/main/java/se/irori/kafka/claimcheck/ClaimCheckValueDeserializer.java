@@ -0,0 +1,65 @@
+package se.irori.kafka.claimcheck;
+
+import java.util.Map;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Deserializes Kafka messages that are potentially Claim Check messages into
+ * {@link ClaimCheckValue} handles, that check out and de-serialize the value on first access.
+ *
+ * <p>For consumers routing or filtering on keys and headers, so that skipped records cost no
+ * check out. Takes the same configuration as {@link ClaimCheckDeserializer}, which does the
+ * check out and de-serialization on access, with its cache and buffer pool.
+ *
+ * <p>Values must be accessed before the consumer is closed, as closing it closes the backend.
+ * With {@link ClaimCheckValue#getAsync(java.util.concurrent.Executor)}, the backend and the
+ * wrapped de-serializer are called on the executor threads.
+ *
+ * @param <T> The Java type the wrapped de-serializer de-serializes to.
+ */
+public class ClaimCheckValueDeserializer<T> implements Deserializer<ClaimCheckValue<T>> {
+
+  private final ClaimCheckDeserializer<T> deserializer = new ClaimCheckDeserializer<>();
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    deserializer.configure(configs, isKey);
+  }
+
+  @Override
+  public ClaimCheckValue<T> deserialize(String topic, byte[] data) {
+    throw new IllegalArgumentException("Need to use Kafka Client library >2.1.0 that passes "
+        + "headers to deserializer");
+  }
+
+  /**
+   * Wrap a record value in a handle, without checking it out.
+   *
+   * @param topic   topic associated with the data
+   * @param headers headers associated with the record; may be empty.
+   * @param data    serialized bytes; may be null
+   * @return a handle to the value, or null for a tombstone, a null value that is not a Claim
+   *     Check, so that consumers can tell deletes apart as with other de-serializers
+   */
+  @Override
+  public ClaimCheckValue<T> deserialize(String topic, Headers headers, byte[] data) {
+    ClaimCheckHeaders claimCheckHeaders = ClaimCheckHeaders.of(headers);
+    byte[] claimCheckRef = claimCheckHeaders.getRef();
+    if (claimCheckRef == null) {
+      if (data == null) {
+        return null;
+      }
+      return new ClaimCheckValue<>(null, data.length,
+          () -> deserializer.deserialize(topic, headers, data));
+    }
+    return new ClaimCheckValue<>(new ClaimCheck(claimCheckRef).getReference(),
+        claimCheckHeaders.getPayloadSize(-1),
+        () -> deserializer.deserialize(topic, headers, data));
+  }
+
+  @Override
+  public void close() {
+    deserializer.close();
+  }
+}
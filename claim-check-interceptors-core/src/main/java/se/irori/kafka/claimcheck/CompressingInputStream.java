@@ -0,0 +1,120 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses a stream as it is read, for backends that pull the payload to upload.
+ *
+ * <p>Reads the source in chunks, and passes each chunk through the compressor only when the
+ * compressed bytes of the previous chunk have been read. At most a chunk and the compressed
+ * output of a chunk are held in memory, whatever the size of the payload.
+ */
+class CompressingInputStream extends InputStream {
+
+  private final InputStream source;
+
+  private final byte[] chunk = new byte[ClaimCheckCompressionType.BUFFER_SIZE];
+
+  private final Sink sink = new Sink();
+
+  private final OutputStream compressor;
+
+  private boolean sourceDone = false;
+
+  CompressingInputStream(InputStream source, ClaimCheckCompressionType compressionType,
+                         Integer level) throws IOException {
+    this.source = source;
+    this.compressor = compressionType.wrapForOutput(sink, level);
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] single = new byte[1];
+    int read = read(single, 0, 1);
+    return read == -1 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (sink.available() == 0) {
+      if (sourceDone) {
+        return -1;
+      }
+      fill();
+    }
+    return sink.drain(b, off, len);
+  }
+
+  private void fill() throws IOException {
+    sink.reset();
+    int read = source.read(chunk);
+    if (read == -1) {
+      sourceDone = true;
+      // writes any buffered input and the end of the compressed format
+      compressor.close();
+    } else {
+      compressor.write(chunk, 0, read);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!sourceDone) {
+        // the backend stopped reading early, free the compressor, e.g. a native zstd context
+        sourceDone = true;
+        compressor.close();
+      }
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Collects compressed bytes until read, growing to the output of the largest chunk.
+   */
+  private static class Sink extends OutputStream {
+    private byte[] buffer = new byte[ClaimCheckCompressionType.BUFFER_SIZE];
+
+    private int position = 0;
+
+    private int limit = 0;
+
+    @Override
+    public void write(int b) {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      if (limit + len > buffer.length) {
+        byte[] grown = new byte[Math.max(buffer.length * 2, limit + len)];
+        System.arraycopy(buffer, 0, grown, 0, limit);
+        buffer = grown;
+      }
+      System.arraycopy(b, off, buffer, limit, len);
+      limit += len;
+    }
+
+    int available() {
+      return limit - position;
+    }
+
+    int drain(byte[] b, int off, int len) {
+      int drained = Math.min(len, available());
+      System.arraycopy(buffer, position, b, off, drained);
+      position += drained;
+      return drained;
+    }
+
+    void reset() {
+      position = 0;
+      limit = 0;
+    }
+  }
+}
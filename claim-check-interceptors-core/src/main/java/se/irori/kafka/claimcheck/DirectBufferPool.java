@@ -0,0 +1,156 @@
+package se.irori.kafka.claimcheck;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig.Keys;
+
+/**
+ * A pool of direct (off-heap) buffers, for backends to transfer large payloads into without
+ * allocating them on the heap.
+ *
+ * <p>Buffers come in size classes of powers of two, from {@link #MIN_BUFFER_SIZE} up to
+ * {@link #MAX_POOLED_BUFFER_SIZE} or the budget, whichever is smaller, so that a released buffer
+ * can be reused for payloads of similar size. Released buffers are kept for reuse up to a budget
+ * of bytes, and beyond it left to the garbage collector. Larger payloads get buffers of their
+ * exact size, that are never kept.
+ */
+public class DirectBufferPool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DirectBufferPool.class);
+
+  /**
+   * Capacity of the smallest buffers handed out.
+   */
+  public static final int MIN_BUFFER_SIZE = 1 << 12;
+
+  /**
+   * Capacity of the largest buffers kept for reuse.
+   */
+  public static final int MAX_POOLED_BUFFER_SIZE = 1 << 26;
+
+  private static final int MIN_SIZE_CLASS = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+
+  private static DirectBufferPool shared;
+
+  private final long maxBytes;
+
+  private final Deque<ByteBuffer>[] sizeClasses;
+
+  /**
+   * Capacity of the largest buffers kept for reuse, that fit in the budget.
+   */
+  private final int maxPooledBufferSize;
+
+  private final AtomicLong pooledBytes = new AtomicLong();
+
+  /**
+   * Create a pool.
+   *
+   * @param maxBytes the budget in bytes for released buffers kept for reuse
+   */
+  @SuppressWarnings("unchecked")
+  public DirectBufferPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.maxPooledBufferSize = maxBytes < MIN_BUFFER_SIZE ? 0
+        : Integer.highestOneBit((int) Math.min(maxBytes, MAX_POOLED_BUFFER_SIZE));
+    int count = maxPooledBufferSize == 0 ? 0
+        : Integer.numberOfTrailingZeros(maxPooledBufferSize) - MIN_SIZE_CLASS + 1;
+    this.sizeClasses = new Deque[count];
+    for (int i = 0; i < count; i++) {
+      sizeClasses[i] = new ConcurrentLinkedDeque<>();
+    }
+  }
+
+  /**
+   * Get the pool shared by all consumers in the JVM, if configured with
+   * `claimcheck.checkout.buffer.pool.max.bytes`. The first consumer to use it decides its size.
+   *
+   * @param config the consumer config
+   * @return the shared pool, or null if disabled
+   */
+  public static synchronized DirectBufferPool getShared(BaseClaimCheckConfig config) {
+    long maxBytes = config.getLong(Keys.CLAIMCHECK_CHECKOUT_BUFFER_POOL_MAX_BYTES_CONFIG);
+    if (maxBytes == 0) {
+      return null;
+    }
+    if (shared == null) {
+      shared = new DirectBufferPool(maxBytes);
+      LOG.info("created direct buffer pool: maxBytes={}", maxBytes);
+    }
+    return shared;
+  }
+
+  /**
+   * Get a buffer of at least a size, from the pool or newly allocated.
+   *
+   * @param size the number of bytes needed
+   * @return a direct buffer, with position 0 and limit at the size
+   */
+  public ByteBuffer acquire(int size) {
+    ByteBuffer buffer;
+    int sizeClass = sizeClass(size);
+    if (sizeClass >= 0) {
+      buffer = sizeClasses[sizeClass].pollFirst();
+      if (buffer != null) {
+        pooledBytes.addAndGet(-buffer.capacity());
+      } else {
+        buffer = ByteBuffer.allocateDirect(MIN_BUFFER_SIZE << sizeClass);
+      }
+    } else {
+      buffer = ByteBuffer.allocateDirect(size);
+    }
+    // through Buffer, as ByteBuffer only overrides these from Java 9
+    ((Buffer) buffer).clear().limit(size);
+    return buffer;
+  }
+
+  /**
+   * Give a buffer back for reuse. The buffer, and any view of it, must not be used after.
+   * Buffers not from a pool, e.g. heap buffers, are ignored.
+   *
+   * @param buffer a buffer from {@link #acquire(int)}
+   */
+  public void release(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    int capacity = buffer.capacity();
+    int sizeClass = sizeClass(capacity);
+    if (sizeClass < 0 || MIN_BUFFER_SIZE << sizeClass != capacity) {
+      return;
+    }
+    if (pooledBytes.addAndGet(capacity) > maxBytes) {
+      // over budget, leave it to the garbage collector
+      pooledBytes.addAndGet(-capacity);
+      return;
+    }
+    sizeClasses[sizeClass].offerFirst(buffer);
+  }
+
+  /**
+   * Get the bytes of released buffers kept for reuse.
+   *
+   * @return the capacity of all pooled buffers
+   */
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+
+  /**
+   * The index of the smallest size class holding a size, or -1 if larger than all.
+   */
+  private int sizeClass(int size) {
+    if (size > maxPooledBufferSize) {
+      return -1;
+    }
+    if (size <= MIN_BUFFER_SIZE) {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SIZE_CLASS;
+  }
+}
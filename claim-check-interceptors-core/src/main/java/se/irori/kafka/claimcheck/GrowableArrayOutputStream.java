@@ -0,0 +1,37 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Writes into an array grown as needed, for reading the first range of a payload of unknown size
+ * with SDKs that write to streams, without allocating a whole range up front.
+ */
+public class GrowableArrayOutputStream extends ByteArrayOutputStream {
+
+  /**
+   * Create a stream starting with a small array.
+   *
+   * @param maxSize the most bytes expected, to not start with a larger array
+   */
+  public GrowableArrayOutputStream(int maxSize) {
+    super(Math.min(maxSize, 64 * 1024));
+  }
+
+  /**
+   * Get the bytes written, without copying them if they fill the array exactly.
+   *
+   * @return the bytes written, not to be written to after
+   */
+  public byte[] toArray() {
+    return count == buf.length ? buf : toByteArray();
+  }
+
+  /**
+   * Copy the bytes written to the start of an array.
+   *
+   * @param target array with room for {@link #size()} bytes
+   */
+  public void copyTo(byte[] target) {
+    System.arraycopy(buf, 0, target, 0, count);
+  }
+}
@@ -4,11 +4,15 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.serialization.Serializer;
 
 /**
  * Serialize InputStreams to bytes, for small streaming mode payloads.
+ *
+ * <p>Payloads above the claim check limit are checked in as streams by
+ * {@link ClaimCheckStreamingProducerInterceptor}, and never reach this serializer.
  */
 public class InputStreamSerializer implements Serializer<InputStream> {
   @Override
@@ -20,6 +24,10 @@ public class InputStreamSerializer implements Serializer<InputStream> {
   @Override
   public byte[] serialize(String topic, Headers headers, InputStream dataStream) {
     long payloadSize = ClaimCheckStreamingUtils.getPayloadSize(headers);
+    if (!ClaimCheckStreamingUtils.fitsInByteArray(payloadSize)) {
+      throw new SerializationException("Payload of " + payloadSize + " bytes can not be sent"
+          + " inline, it must be checked in with ClaimCheckStreamingProducerInterceptor");
+    }
 
     byte[] data = new byte[(int) payloadSize];
     DataInputStream dis = new DataInputStream(dataStream);
@@ -0,0 +1,217 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.Closeable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.kafka.common.errors.KafkaStorageException;
+
+/**
+ * Downloads a payload of known size as concurrent range reads, straight into a pre-sized array.
+ *
+ * <p>For use by backends, to check out large payloads faster than with one sequential read, and
+ * without the repeated copies of a growing buffer. Payloads can also be downloaded into a direct
+ * buffer from a {@link DirectBufferPool}, off the heap.
+ */
+public class ParallelRangeDownloader implements Closeable {
+
+  /**
+   * Largest array size that can be allocated on common JVMs.
+   */
+  public static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private final int chunkSize;
+
+  private final int maxConcurrency;
+
+  private final ExecutorService executor;
+
+  /**
+   * Create a downloader on a pool of platform threads.
+   *
+   * @param chunkSize size of each range read, in bytes
+   * @param maxConcurrency maximum number of range reads in parallel, shared by all downloads
+   * @param threadNamePrefix prefix of the names of the download threads
+   */
+  public ParallelRangeDownloader(int chunkSize, int maxConcurrency, String threadNamePrefix) {
+    this(chunkSize, maxConcurrency, threadNamePrefix, ClaimCheckExecutorType.PLATFORM);
+  }
+
+  /**
+   * Create a downloader.
+   *
+   * @param chunkSize size of each range read, in bytes
+   * @param maxConcurrency maximum number of range reads in parallel per download, and for
+   *     {@link ClaimCheckExecutorType#PLATFORM} shared by all downloads
+   * @param threadNamePrefix prefix of the names of the download threads
+   * @param executorType how to run the range reads
+   */
+  public ParallelRangeDownloader(int chunkSize, int maxConcurrency, String threadNamePrefix,
+                                 ClaimCheckExecutorType executorType) {
+    this.chunkSize = chunkSize;
+    this.maxConcurrency = maxConcurrency;
+    this.executor = executorType.newExecutor(maxConcurrency, threadNamePrefix);
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Allocate the array for a payload.
+   *
+   * @param size payload size in bytes
+   * @return an array of the size
+   * @throws KafkaStorageException if the payload does not fit in an array
+   */
+  public static byte[] allocate(long size) {
+    if (size > MAX_ARRAY_SIZE) {
+      throw new KafkaStorageException("Payload of " + size + " bytes is too large for a byte"
+          + " array, use streaming mode");
+    }
+    return new byte[(int) size];
+  }
+
+  /**
+   * Allocate a direct buffer for a payload, from a pool.
+   *
+   * @param size payload size in bytes
+   * @param pool the pool to take the buffer from
+   * @return a buffer with position 0 and limit at the size
+   * @throws KafkaStorageException if the payload does not fit in a buffer
+   */
+  public static ByteBuffer allocate(long size, DirectBufferPool pool) {
+    if (size > MAX_ARRAY_SIZE) {
+      throw new KafkaStorageException("Payload of " + size + " bytes is too large for a buffer,"
+          + " use streaming mode");
+    }
+    return pool.acquire((int) size);
+  }
+
+  /**
+   * Fill the target array from an offset to its end, reading chunks concurrently.
+   *
+   * @param target array to download into, sized to the payload
+   * @param fromOffset offset to start from, e.g. after an already read first chunk
+   * @param reader reads a range of the payload into the target array
+   * @throws KafkaStorageException if any range read failed
+   */
+  public void download(byte[] target, int fromOffset, RangeReader reader) {
+    download(target.length, fromOffset,
+        (offset, length) -> reader.readRange(offset, target, (int) offset, length));
+  }
+
+  /**
+   * Fill the target buffer from an offset to its limit, reading chunks concurrently.
+   *
+   * @param target buffer to download into, from position 0 with the limit at the payload size
+   * @param fromOffset offset to start from, e.g. after an already read first chunk
+   * @param reader reads a range of the payload into a view of the target buffer
+   * @throws KafkaStorageException if any range read failed
+   */
+  public void download(ByteBuffer target, int fromOffset, BufferRangeReader reader) {
+    download(target.limit(), fromOffset, (offset, length) -> {
+      // a view per range, as concurrent reads can not share a position
+      ByteBuffer range = target.duplicate();
+      ((Buffer) range).limit((int) offset + length).position((int) offset);
+      reader.readRange(offset, range.slice());
+    });
+  }
+
+  private void download(int size, int fromOffset, ChunkReader reader) {
+    // a bounded number of workers taking the next range, so a large payload does not queue all
+    // its ranges at once, and concurrency stays bounded with a thread per task
+    AtomicLong nextOffset = new AtomicLong(fromOffset);
+    AtomicBoolean failed = new AtomicBoolean();
+    long ranges = (size - (long) fromOffset + chunkSize - 1) / chunkSize;
+    List<CompletableFuture<Void>> workers = new ArrayList<>();
+    for (int i = 0; i < Math.min(maxConcurrency, ranges); i++) {
+      workers.add(CompletableFuture.runAsync(() -> {
+        long offset;
+        while (!failed.get() && (offset = nextOffset.getAndAdd(chunkSize)) < size) {
+          int length = (int) Math.min(chunkSize, size - offset);
+          try {
+            reader.read(offset, length);
+          } catch (Exception e) {
+            failed.set(true);
+            throw new CompletionException(e);
+          }
+        }
+      }, executor));
+    }
+
+    try {
+      CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof KafkaStorageException) {
+        throw (KafkaStorageException) cause;
+      }
+      throw new KafkaStorageException("Ranged download failed", cause);
+    }
+  }
+
+  /**
+   * Open a stream of a payload, reading chunks ahead with range reads on the download threads.
+   *
+   * @param size the payload size in bytes
+   * @param readAheadChunks the number of chunks to read ahead of the one being read
+   * @param budget the bytes shared with other streams
+   * @param reader reads a range of the payload into an array
+   * @return a stream of the payload
+   */
+  public ReadAheadInputStream openStream(long size, int readAheadChunks,
+                                         ReadAheadInputStream.Budget budget,
+                                         RangeReader reader) {
+    return new ReadAheadInputStream(size, chunkSize, readAheadChunks, executor, budget, reader);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Reads a range of a payload into an array.
+   */
+  @FunctionalInterface
+  public interface RangeReader {
+
+    /**
+     * Read a range of the payload.
+     *
+     * @param offset offset in the payload to read from
+     * @param target array to read into
+     * @param targetOffset offset in the array to write to
+     * @param length number of bytes to read
+     * @throws Exception if the read failed
+     */
+    void readRange(long offset, byte[] target, int targetOffset, int length) throws Exception;
+  }
+
+  /**
+   * Reads a range of a payload into a buffer.
+   */
+  @FunctionalInterface
+  public interface BufferRangeReader {
+
+    /**
+     * Read a range of the payload.
+     *
+     * @param offset offset in the payload to read from
+     * @param target buffer to read into, with the range length remaining
+     * @throws Exception if the read failed
+     */
+    void readRange(long offset, ByteBuffer target) throws Exception;
+  }
+
+  private interface ChunkReader {
+    void read(long offset, int length) throws Exception;
+  }
+}
@@ -0,0 +1,263 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams a payload of known size, reading chunks ahead of the reader with background range
+ * reads.
+ *
+ * <p>For use by backends, to stream large payloads at the throughput of concurrent range reads,
+ * in constant memory. A stream holds the chunk being read and at most `readAheadChunks` more.
+ * All streams sharing a {@link Budget} hold at most its bytes in chunks read ahead. When the
+ * budget is used up, streams read ahead less, and a stream with no chunk left to read reads just
+ * the next one, outside the budget. Streams never wait for the budget, as they could wait for
+ * streams the caller only reads later.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+  private static Budget sharedBudget;
+
+  private final long size;
+
+  private final int chunkSize;
+
+  private final int readAheadChunks;
+
+  private final Executor executor;
+
+  private final Budget budget;
+
+  private final ParallelRangeDownloader.RangeReader reader;
+
+  private final ArrayDeque<Chunk> window = new ArrayDeque<>();
+
+  private long nextReadOffset;
+
+  private Chunk current;
+
+  private int position;
+
+  private volatile boolean closed;
+
+  /**
+   * Create a stream. No range is read until the first read.
+   *
+   * @param size the payload size in bytes
+   * @param chunkSize the size of each range read, in bytes
+   * @param readAheadChunks the number of chunks to read ahead of the one being read
+   * @param executor runs the range reads
+   * @param budget the bytes shared with other streams
+   * @param reader reads a range of the payload into an array
+   */
+  public ReadAheadInputStream(long size, int chunkSize, int readAheadChunks, Executor executor,
+                              Budget budget, ParallelRangeDownloader.RangeReader reader) {
+    this.size = size;
+    this.chunkSize = chunkSize;
+    this.readAheadChunks = readAheadChunks;
+    this.executor = executor;
+    this.budget = budget;
+    this.reader = reader;
+  }
+
+  /**
+   * Get the budget shared by all streams in the JVM. The first call decides its size.
+   *
+   * @param maxBytes the budget in bytes, if not already created
+   * @return the shared budget
+   */
+  public static synchronized Budget sharedBudget(long maxBytes) {
+    if (sharedBudget == null) {
+      sharedBudget = new Budget(maxBytes);
+    }
+    return sharedBudget;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureCurrent()) {
+      return -1;
+    }
+    return current.data[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureCurrent()) {
+      return -1;
+    }
+    int read = Math.min(len, current.length - position);
+    System.arraycopy(current.data, position, b, off, read);
+    position += read;
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0 || !ensureCurrent()) {
+      return 0;
+    }
+    int skipped = (int) Math.min(n, current.length - position);
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return current == null ? 0 : current.length - position;
+  }
+
+  /**
+   * Make sure there is a current chunk with bytes left to read, moving on to the next chunk.
+   *
+   * @return false at the end of the payload
+   */
+  private boolean ensureCurrent() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (current != null && position < current.length) {
+      return true;
+    }
+    if (current != null) {
+      current.release();
+      current = null;
+    }
+    readAhead();
+    if (window.isEmpty()) {
+      return false;
+    }
+
+    Chunk next = window.remove();
+    try {
+      next.read.join();
+    } catch (CompletionException e) {
+      next.release();
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Range read at " + next.offset + " failed", cause);
+    }
+    current = next;
+    position = 0;
+    readAhead();
+    return current.length > 0;
+  }
+
+  /**
+   * Start range reads up to the read-ahead limit, or for a stream with nothing read ahead, at
+   * least the next chunk.
+   */
+  private void readAhead() {
+    int limit = current == null ? readAheadChunks + 1 : readAheadChunks;
+    while (window.size() < limit && nextReadOffset < size) {
+      int length = (int) Math.min(chunkSize, size - nextReadOffset);
+      int permits = budget.permits(length);
+      if (!budget.bytes.tryAcquire(permits)) {
+        if (!window.isEmpty() || current != null) {
+          return;
+        }
+        // waiting for the budget could deadlock with streams the caller reads later
+        permits = 0;
+      }
+      window.add(startRead(nextReadOffset, length, permits));
+      nextReadOffset += length;
+    }
+  }
+
+  private Chunk startRead(long offset, int length, int permits) {
+    Chunk chunk = new Chunk(offset, length, permits);
+    chunk.read = CompletableFuture.runAsync(() -> {
+      if (closed) {
+        return;
+      }
+      try {
+        reader.readRange(offset, chunk.data, 0, length);
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+    return chunk;
+  }
+
+  /**
+   * Release all chunks, those still being read once the read is done.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (current != null) {
+      current.release();
+      current = null;
+    }
+    for (Chunk chunk : window) {
+      chunk.read.whenComplete((v, e) -> chunk.release());
+    }
+    window.clear();
+  }
+
+  private class Chunk {
+    final long offset;
+
+    final int length;
+
+    final int permits;
+
+    final byte[] data;
+
+    CompletableFuture<Void> read;
+
+    Chunk(long offset, int length, int permits) {
+      this.offset = offset;
+      this.length = length;
+      this.permits = permits;
+      this.data = new byte[length];
+    }
+
+    void release() {
+      budget.bytes.release(permits);
+    }
+  }
+
+  /**
+   * Bytes that streams can hold in chunks.
+   */
+  public static class Budget {
+    private final Semaphore bytes;
+
+    private final int maxBytes;
+
+    /**
+     * Create a budget.
+     *
+     * @param maxBytes the budget in bytes, at most {@link Integer#MAX_VALUE}
+     */
+    public Budget(long maxBytes) {
+      this.maxBytes = (int) Math.min(Integer.MAX_VALUE, maxBytes);
+      this.bytes = new Semaphore(this.maxBytes);
+    }
+
+    /**
+     * The permits for a chunk, so that a chunk larger than the whole budget can still be read.
+     */
+    int permits(int length) {
+      return Math.min(length, maxBytes);
+    }
+
+    public int getAvailableBytes() {
+      return bytes.availablePermits();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package se.irori.kafka.claimcheck;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.record.DefaultRecord;
+import org.apache.kafka.common.record.DefaultRecordBatch;
+
+/**
+ * Decides if a record is above the claim check limit, measured as the size of a batch holding
+ * only that record.
+ *
+ * <p>Most records are far from the limit, so the decision is first made from bounds on the
+ * exact size, from key and value lengths plus a bound on record and header overhead. Only records
+ * within that overhead of the limit are sized exactly, the way the producer sizes batches.
+ */
+final class RecordSizeEstimator {
+
+  /**
+   * Smallest record overhead: length, attributes, timestamp delta, offset delta, key length,
+   * value length and header count all fit in one byte each.
+   */
+  static final int MIN_RECORD_OVERHEAD = 7;
+
+  /**
+   * Largest record overhead: the length varints take up to five bytes each, the attributes,
+   * timestamp delta and offset delta are one byte each for a batch of one record.
+   */
+  static final int MAX_RECORD_OVERHEAD = 5 + 1 + 1 + 1 + 5 + 5 + 5;
+
+  /**
+   * Largest overhead per header, besides the key and value themselves: two length varints.
+   */
+  static final int MAX_HEADER_OVERHEAD = 5 + 5;
+
+  /**
+   * Largest number of UTF-8 bytes per Java char.
+   */
+  private static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+
+  private RecordSizeEstimator() {
+  }
+
+  /**
+   * Check if a record is above the limit.
+   *
+   * @param headers the record headers
+   * @param keyBytes the serialized key, or null
+   * @param valueBytes the serialized value, or null
+   * @param limit the size in bytes a single record batch must be above
+   * @return true if the record is above the limit
+   */
+  static boolean isAboveLimit(Headers headers, byte[] keyBytes, byte[] valueBytes, long limit) {
+    int keySize = keyBytes == null ? -1 : keyBytes.length;
+    int valueSize = valueBytes == null ? -1 : valueBytes.length;
+
+    if (lowerBound(keySize, valueSize) > limit) {
+      return true;
+    }
+    if (upperBound(headers, keySize, valueSize, limit) <= limit) {
+      return false;
+    }
+    return exactSize(headers, keySize, valueSize) > limit;
+  }
+
+  /**
+   * Check if a record with a streamed value is above the limit. The value is sized as an empty
+   * value followed by the stream.
+   *
+   * @param headers the record headers
+   * @param keyBytes the serialized key, or null
+   * @param valueSize the number of bytes in the value stream
+   * @param limit the size in bytes a single record batch must be above
+   * @return true if the record is above the limit
+   */
+  static boolean isAboveLimit(Headers headers, byte[] keyBytes, long valueSize, long limit) {
+    int keySize = keyBytes == null ? -1 : keyBytes.length;
+
+    // the bounds hold both for a value of valueSize, and an empty value plus valueSize
+    if (lowerBound(keySize, valueSize) > limit) {
+      return true;
+    }
+    if (upperBound(headers, keySize, valueSize, limit) <= limit) {
+      return false;
+    }
+    return exactSize(headers, keySize, 0) + valueSize > limit;
+  }
+
+  static long lowerBound(int keySize, long valueSize) {
+    return DefaultRecordBatch.RECORD_BATCH_OVERHEAD + MIN_RECORD_OVERHEAD
+        + (long) Math.max(keySize, 0) + Math.max(valueSize, 0);
+  }
+
+  /**
+   * Upper bound on the batch size, walking the headers only while the bound is within the limit.
+   *
+   * @return an upper bound on the batch size, or a value above the limit if that is passed
+   */
+  static long upperBound(Headers headers, int keySize, long valueSize, long limit) {
+    long upperBound = DefaultRecordBatch.RECORD_BATCH_OVERHEAD + MAX_RECORD_OVERHEAD
+        + (long) Math.max(keySize, 0) + Math.max(valueSize, 0);
+    if (upperBound > limit) {
+      return upperBound;
+    }
+    for (Header header : headers) {
+      byte[] headerValue = header.value();
+      upperBound += MAX_HEADER_OVERHEAD
+          + (long) header.key().length() * MAX_UTF8_BYTES_PER_CHAR
+          + (headerValue == null ? 0 : headerValue.length);
+      if (upperBound > limit) {
+        return upperBound;
+      }
+    }
+    return upperBound;
+  }
+
+  static int exactSize(Headers headers, int keySize, int valueSize) {
+    return DefaultRecordBatch.RECORD_BATCH_OVERHEAD
+        + DefaultRecord.sizeInBytes(0, 0L, keySize, valueSize, headers.toArray());
+  }
+}
@@ -0,0 +1,52 @@
+package se.irori.kafka.claimcheck;
+
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Hands the value bytes serialized by the producer side over to the {@link ClaimCheckSerializer},
+ * so that values below the claim check limit are serialized once per send.
+ *
+ * <p>Kafka calls the interceptors and then the serializer on the thread calling send, so the
+ * bytes are kept thread confined, and only used for the exact same value and headers instances.
+ */
+final class SerializedValueHandover {
+
+  private static final ThreadLocal<SerializedValueHandover> CURRENT =
+      ThreadLocal.withInitial(SerializedValueHandover::new);
+
+  private Headers headers;
+
+  private Object value;
+
+  private byte[] serializedValue;
+
+  private SerializedValueHandover() {
+  }
+
+  /**
+   * Offer the serialized bytes of a value about to be serialized by the
+   * {@link ClaimCheckSerializer} on this thread.
+   */
+  static void offer(Headers headers, Object value, byte[] serializedValue) {
+    SerializedValueHandover handover = CURRENT.get();
+    handover.headers = headers;
+    handover.value = value;
+    handover.serializedValue = serializedValue;
+  }
+
+  /**
+   * Take the bytes offered on this thread, if offered for this value and headers instance.
+   *
+   * @return the serialized value, or null if none was offered for these instances
+   */
+  static byte[] take(Headers headers, Object value) {
+    SerializedValueHandover handover = CURRENT.get();
+    byte[] serializedValue = handover.headers == headers && handover.value == value
+        && value != null ? handover.serializedValue : null;
+
+    handover.headers = null;
+    handover.value = null;
+    handover.serializedValue = null;
+    return serializedValue;
+  }
+}
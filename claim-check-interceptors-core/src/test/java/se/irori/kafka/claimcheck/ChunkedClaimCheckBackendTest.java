@@ -0,0 +1,207 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkedClaimCheckBackendTest {
+
+  private static final String TOPIC = "my-topic";
+
+  ChunkedClaimCheckBackend unit;
+
+  @Before
+  public void setup() {
+    MapClaimCheckBackend.reset();
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        ChunkedClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHUNKED_BACKEND_CLASS_CONFIG,
+        MapClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHUNKED_CHUNK_SIZE_BYTES_CONFIG, 100);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHUNKED_MAX_CONCURRENCY_CONFIG, 4);
+    unit = new ChunkedClaimCheckBackend();
+    unit.configure(config);
+  }
+
+  @After
+  public void tearDown() {
+    unit.close();
+  }
+
+  @Test
+  public void checkInChunks() throws IOException {
+    // GIVEN a payload of a little more than 10 chunks
+    byte[] payload = TestUtils.getRandomBytes(1050);
+
+    // WHEN checking it in
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>(TOPIC, payload));
+
+    // THEN it is stored as 11 chunks and a manifest
+    assertTrue(claimCheck.getReference()
+        .startsWith(ChunkedClaimCheckBackend.MANIFEST_REFERENCE_PREFIX));
+    assertEquals(12, MapClaimCheckBackend.STORE.size());
+    assertArrayEquals(payload, unit.checkOut(claimCheck));
+    assertArrayEquals(payload, readAll(unit.checkOutStreaming(claimCheck)));
+  }
+
+  @Test
+  public void checkInSmallPayloadAsIs() {
+    // GIVEN a payload of one chunk
+    byte[] payload = TestUtils.getRandomBytes(100);
+
+    // WHEN checking it in
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>(TOPIC, payload));
+
+    // THEN it is stored as one object, without a manifest
+    assertFalse(claimCheck.getReference()
+        .startsWith(ChunkedClaimCheckBackend.MANIFEST_REFERENCE_PREFIX));
+    assertEquals(1, MapClaimCheckBackend.STORE.size());
+    assertArrayEquals(payload, unit.checkOut(claimCheck));
+  }
+
+  @Test
+  public void checkInStreamingUnknownSize() throws IOException {
+    // GIVEN a stream of unknown size
+    byte[] payload = TestUtils.getRandomBytes(1050);
+
+    // WHEN checking it in
+    ClaimCheck claimCheck = unit.checkInStreaming(TOPIC, new ByteArrayInputStream(payload), -1);
+
+    // THEN it is stored as chunks
+    assertEquals(12, MapClaimCheckBackend.STORE.size());
+    assertArrayEquals(payload, unit.checkOut(claimCheck));
+    assertArrayEquals(payload, readAll(unit.checkOutStreaming(claimCheck)));
+  }
+
+  @Test
+  public void checkInChunkRetried() {
+    // GIVEN a backend failing the next two check ins
+    MapClaimCheckBackend.FAILURES.set(2);
+    byte[] payload = TestUtils.getRandomBytes(1050);
+
+    // WHEN checking in
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>(TOPIC, payload));
+
+    // THEN the failed chunks are retried
+    assertArrayEquals(payload, unit.checkOut(claimCheck));
+  }
+
+  @Test
+  public void checkOutCorruptedChunk() {
+    // GIVEN a chunk changed after check in
+    byte[] payload = TestUtils.getRandomBytes(250);
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>(TOPIC, payload));
+    MapClaimCheckBackend.STORE.replaceAll((reference, stored) ->
+        stored.length == 100 ? TestUtils.getRandomBytes(100) : stored);
+
+    // WHEN checking out
+    try {
+      unit.checkOut(claimCheck);
+      fail("Expected exception from check out");
+    } catch (KafkaStorageException e) {
+      // THEN the checksum does not match
+      assertTrue(e.getMessage().contains("checksum"));
+    }
+  }
+
+  @Test
+  public void configureOwnReadAheadBudget() {
+    // GIVEN the JVM wide read-ahead budget, e.g. created by a wrapped Azure v12 backend
+    ReadAheadInputStream.sharedBudget(1024);
+
+    // WHEN configuring a backend with a chunked read-ahead budget
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        ChunkedClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHUNKED_BACKEND_CLASS_CONFIG,
+        MapClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHUNKED_CHECKOUT_BUFFER_MAX_BYTES_CONFIG,
+        4096L);
+    ChunkedClaimCheckBackend backend = new ChunkedClaimCheckBackend();
+    backend.configure(config);
+
+    // THEN it has a budget of its own, of the configured size
+    assertEquals(4096, backend.getReadAheadBudget().getAvailableBytes());
+    backend.close();
+  }
+
+  @Test(expected = ConfigException.class)
+  public void configureWithoutBackend() {
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        ChunkedClaimCheckBackend.class);
+    new ChunkedClaimCheckBackend().configure(config);
+  }
+
+  private static byte[] readAll(InputStream stream) throws IOException {
+    byte[] result = new byte[1050];
+    try (DataInputStream dis = new DataInputStream(stream)) {
+      dis.readFully(result);
+      assertEquals(-1, dis.read());
+    }
+    return result;
+  }
+
+  /**
+   * Stores payloads in a map, and can fail check ins.
+   */
+  public static class MapClaimCheckBackend implements ClaimCheckBackend {
+
+    static final Map<String, byte[]> STORE = new ConcurrentHashMap<>();
+
+    static final AtomicInteger FAILURES = new AtomicInteger();
+
+    static void reset() {
+      STORE.clear();
+      FAILURES.set(0);
+    }
+
+    @Override
+    public ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord) {
+      if (FAILURES.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0) {
+        throw new KafkaStorageException("Some fake check in exception");
+      }
+      String reference = "map://" + UUID.randomUUID();
+      STORE.put(reference, largeRecord.value());
+      return new ClaimCheck(reference);
+    }
+
+    @Override
+    public ClaimCheck checkInStreaming(String topic, InputStream payload, long payloadSize) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] checkOut(ClaimCheck claimCheck) {
+      return STORE.get(claimCheck.getReference());
+    }
+
+    @Override
+    public InputStream checkOutStreaming(ClaimCheck claimCheck) {
+      return new ByteArrayInputStream(checkOut(claimCheck));
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+  }
+}
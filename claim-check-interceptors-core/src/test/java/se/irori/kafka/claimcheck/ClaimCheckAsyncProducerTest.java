@@ -0,0 +1,229 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test the ClaimCheckAsyncProducer with String datatypes.
+ */
+public class ClaimCheckAsyncProducerTest {
+
+  MockProducer<String, String> mockProducer;
+
+  ClaimCheckAsyncProducer<String, String> unit;
+
+  @Before
+  public void setup() {
+    FakeClaimCheckBackend.reset();
+
+    // mock producer does not pass headers to serializers, use plain ones
+    mockProducer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+    unit = new ClaimCheckAsyncProducer<>(mockProducer, config());
+  }
+
+  private static HashMap<String, Object> config() {
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG,
+        200);
+    // fake backend is not thread safe
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_ASYNC_THREADS_CONFIG, 1);
+
+    config.put(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG, FakeClaimCheckBackend.class);
+
+    config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ClaimCheckSerializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_SERIALIZER_CLASS,
+        StringSerializer.class);
+    config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    return config;
+  }
+
+  private static HashMap<String, Object> lingeringConfig(long lingerMs, int batchMaxRecords) {
+    HashMap<String, Object> config = config();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_ASYNC_LINGER_MS_CONFIG, lingerMs);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_ASYNC_BATCH_MAX_RECORDS_CONFIG,
+        batchMaxRecords);
+    return config;
+  }
+
+  @After
+  public void tearDown() {
+    unit.close();
+  }
+
+  @Test
+  public void sendLargeString() throws Exception {
+    // GIVEN the producer is configured with max limit 200 bytes
+
+    // WHEN sending a record with body > 200 bytes
+    String body = TestUtils.getRandomString(300);
+    Future<RecordMetadata> result = unit.send(new ProducerRecord<>("dummyTopic", body));
+    result.get();
+
+    // THEN the wrapped producer should get a claim check reference, with null value
+    ProducerRecord<String, String> sent = mockProducer.history().get(0);
+    assertNull(sent.value());
+    assertEquals("1", new ClaimCheck(ClaimCheckUtils.getClaimCheckRefFromHeader(
+        sent.headers())).getReference());
+    assertEquals(1, FakeClaimCheckBackend.getCount());
+  }
+
+  @Test
+  public void sendSmallString() throws Exception {
+    // GIVEN the producer is configured with max limit 200 bytes
+
+    // WHEN sending a record with body < 200 bytes
+    String body = TestUtils.getRandomString(10);
+    unit.send(new ProducerRecord<>("dummyTopic", body)).get();
+
+    // THEN the wrapped producer should get the record as is
+    ProducerRecord<String, String> sent = mockProducer.history().get(0);
+    assertEquals(body, sent.value());
+    assertFalse(ClaimCheckUtils.isClaimCheck(sent.headers()));
+    assertEquals(0, FakeClaimCheckBackend.getCount());
+  }
+
+  @Test
+  public void sendNullValueWithLargeKey() throws Exception {
+    // GIVEN the producer is configured with max limit 200 bytes
+
+    // WHEN sending a record with a null value, and a key > 200 bytes
+    String key = TestUtils.getRandomString(300);
+    unit.send(new ProducerRecord<>("dummyTopic", key, null)).get();
+
+    // THEN the wrapped producer should get a claim check reference, of an empty payload
+    ProducerRecord<String, String> sent = mockProducer.history().get(0);
+    assertNull(sent.value());
+    assertTrue(ClaimCheckUtils.isClaimCheck(sent.headers()));
+    assertFalse(ClaimCheckUtils.isClaimCheckError(sent.headers()));
+    assertEquals(0, ClaimCheckStreamingUtils.getPayloadSize(sent.headers()));
+  }
+
+  @Test
+  public void sendKeepsOrderBehindSlowCheckIn() {
+    // GIVEN a slow backend
+    FakeClaimCheckBackend.setCheckInDelayMillis(200);
+
+    // WHEN sending a large record followed by a small record on the same topic
+    String largeBody = TestUtils.getRandomString(300);
+    String smallBody = TestUtils.getRandomString(10);
+    unit.send(new ProducerRecord<>("dummyTopic", "large", largeBody));
+    unit.send(new ProducerRecord<>("dummyTopic", "small", smallBody));
+    unit.flush();
+
+    // THEN the small record should not overtake the large record
+    List<ProducerRecord<String, String>> history = mockProducer.history();
+    assertEquals(2, history.size());
+    assertEquals("large", history.get(0).key());
+    assertTrue(ClaimCheckUtils.isClaimCheck(history.get(0).headers()));
+    assertEquals("small", history.get(1).key());
+    assertEquals(smallBody, history.get(1).value());
+  }
+
+  @Test
+  public void sendBatchedWhenFull() throws Exception {
+    // GIVEN a producer lingering long for batches of 3
+    unit.close();
+    mockProducer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+    unit = new ClaimCheckAsyncProducer<>(mockProducer, lingeringConfig(60_000, 3));
+
+    // WHEN sending three large records
+    for (int i = 0; i < 3; i++) {
+      unit.send(new ProducerRecord<>("dummyTopic", "" + i, TestUtils.getRandomString(300)));
+    }
+    Future<RecordMetadata> last = unit.send(new ProducerRecord<>("dummyTopic", "3",
+        TestUtils.getRandomString(300)));
+    unit.flush();
+
+    // THEN the full batch is checked in without lingering, the fourth record on flush
+    assertTrue(last.isDone());
+    assertEquals(2, FakeClaimCheckBackend.getBatchCount());
+    List<ProducerRecord<String, String>> history = mockProducer.history();
+    assertEquals(4, history.size());
+    for (int i = 0; i < 4; i++) {
+      assertEquals("" + i, history.get(i).key());
+      assertEquals("" + (i + 1), new ClaimCheck(ClaimCheckUtils.getClaimCheckRefFromHeader(
+          history.get(i).headers())).getReference());
+    }
+  }
+
+  @Test
+  public void sendBatchedAfterLinger() throws Exception {
+    // GIVEN a producer lingering shortly
+    unit.close();
+    mockProducer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+    unit = new ClaimCheckAsyncProducer<>(mockProducer, lingeringConfig(50, 16));
+
+    // WHEN sending a large record, and not flushing
+    unit.send(new ProducerRecord<>("dummyTopic", TestUtils.getRandomString(300)))
+        .get(10, TimeUnit.SECONDS);
+
+    // THEN it is checked in once the linger time has passed
+    assertEquals(1, FakeClaimCheckBackend.getBatchCount());
+    assertTrue(ClaimCheckUtils.isClaimCheck(mockProducer.history().get(0).headers()));
+  }
+
+  @Test
+  public void sendBoundedUntilHandedOver() throws Exception {
+    // GIVEN one record to check in at a time, and a slow backend
+    unit.close();
+    HashMap<String, Object> config = config();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_ASYNC_MAX_IN_FLIGHT_CONFIG, 1);
+    mockProducer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+    unit = new ClaimCheckAsyncProducer<>(mockProducer, config);
+    FakeClaimCheckBackend.setCheckInDelayMillis(50);
+
+    // WHEN sending large records to two topics
+    Future<RecordMetadata> first = unit.send(new ProducerRecord<>("topic-1",
+        TestUtils.getRandomString(300)));
+    unit.send(new ProducerRecord<>("topic-2", TestUtils.getRandomString(300)));
+
+    // THEN the second send waits until the first record is handed to the producer
+    assertTrue(first.isDone());
+    unit.flush();
+    assertEquals(2, mockProducer.history().size());
+
+    // AND the topics are forgotten once nothing is pending
+    long deadline = System.currentTimeMillis() + 1000;
+    while (unit.getPendingTopics() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, unit.getPendingTopics());
+  }
+
+  @Test
+  public void sendBackendError() throws Exception {
+    // GIVEN the fake backend is set to throw errors
+    FakeClaimCheckBackend.setErrorModeOn(true);
+
+    // WHEN sending a record with body > 200 bytes
+    String body = TestUtils.getRandomString(300);
+    unit.send(new ProducerRecord<>("dummyTopic", body));
+    unit.flush();
+
+    // THEN the wrapped producer should get the original record with the claim check error header
+    ProducerRecord<String, String> sent = mockProducer.history().get(0);
+    assertEquals(body, sent.value());
+    assertFalse(ClaimCheckUtils.isClaimCheck(sent.headers()));
+    assertTrue(ClaimCheckUtils.isClaimCheckError(sent.headers()));
+
+    String stackTrace = ClaimCheckUtils.getClaimCheckErrorStackTraceFromHeader(sent.headers());
+    assertTrue(stackTrace.contains("Some fake backend exception"));
+  }
+}
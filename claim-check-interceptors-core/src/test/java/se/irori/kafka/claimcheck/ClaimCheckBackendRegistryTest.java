@@ -0,0 +1,132 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClaimCheckBackendRegistryTest {
+
+  @Before
+  public void setup() {
+    ClosingClaimCheckBackend.CLOSED.set(0);
+  }
+
+  @Test
+  public void shareBackendOfSameConfigs() {
+    // GIVEN two consumers with the same backend configs, in different groups
+    Map<String, Object> config = config(true);
+    config.put(ConsumerConfig.GROUP_ID_CONFIG, "group-1");
+    Map<String, Object> otherConfig = config(true);
+    otherConfig.put(ConsumerConfig.GROUP_ID_CONFIG, "group-2");
+    otherConfig.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_CACHE_MAX_BYTES_CONFIG, 1024L);
+
+    // WHEN acquiring their backends
+    ClaimCheckBackendRegistry.Reference backend = acquire(config);
+    ClaimCheckBackendRegistry.Reference otherBackend = acquire(otherConfig);
+
+    // THEN they share one backend, closed when released by both
+    assertSame(backend.getBackend(), otherBackend.getBackend());
+    assertEquals(2, ClaimCheckBackendRegistry.getReferences(backend));
+    backend.release();
+    assertEquals(0, ClosingClaimCheckBackend.CLOSED.get());
+    otherBackend.release();
+    assertEquals(1, ClosingClaimCheckBackend.CLOSED.get());
+
+    // THEN a new backend is created when acquired again
+    ClaimCheckBackendRegistry.Reference newBackend = acquire(config);
+    assertNotSame(backend.getBackend(), newBackend.getBackend());
+    newBackend.release();
+  }
+
+  @Test
+  public void doNotShareBackendOfOtherConfigs() {
+    // GIVEN two consumers with different backend configs
+    Map<String, Object> config = config(true);
+    Map<String, Object> otherConfig = config(true);
+    otherConfig.put("my.backend.endpoint", "https://other.claimcheck.com");
+
+    // WHEN acquiring their backends
+    ClaimCheckBackendRegistry.Reference backend = acquire(config);
+    ClaimCheckBackendRegistry.Reference otherBackend = acquire(otherConfig);
+
+    // THEN they each have their own backend
+    assertNotSame(backend.getBackend(), otherBackend.getBackend());
+    backend.release();
+    otherBackend.release();
+    assertEquals(2, ClosingClaimCheckBackend.CLOSED.get());
+  }
+
+  @Test
+  public void doNotShareBackendByDefault() {
+    // GIVEN two consumers with the same configs, without sharing
+    Map<String, Object> config = config(false);
+
+    // WHEN acquiring their backends
+    ClaimCheckBackendRegistry.Reference backend = acquire(config);
+    ClaimCheckBackendRegistry.Reference otherBackend = acquire(config);
+
+    // THEN each backend is closed on release
+    assertNotSame(backend.getBackend(), otherBackend.getBackend());
+    backend.release();
+    assertEquals(1, ClosingClaimCheckBackend.CLOSED.get());
+    otherBackend.release();
+    assertEquals(2, ClosingClaimCheckBackend.CLOSED.get());
+  }
+
+  @Test
+  public void releaseOnce() {
+    // GIVEN two clients sharing a backend, and one with its own
+    Map<String, Object> config = config(true);
+    ClaimCheckBackendRegistry.Reference backend = acquire(config);
+    ClaimCheckBackendRegistry.Reference otherBackend = acquire(config);
+    ClaimCheckBackendRegistry.Reference ownBackend = acquire(config(false));
+
+    // WHEN one of each is released twice, e.g. when closed twice
+    backend.release();
+    backend.release();
+    ownBackend.release();
+    ownBackend.release();
+
+    // THEN the shared backend is kept for the other client, and the own backend closed once
+    assertEquals(1, ClaimCheckBackendRegistry.getReferences(otherBackend));
+    assertEquals(1, ClosingClaimCheckBackend.CLOSED.get());
+    otherBackend.release();
+    assertEquals(2, ClosingClaimCheckBackend.CLOSED.get());
+  }
+
+  private static ClaimCheckBackendRegistry.Reference acquire(Map<String, Object> config) {
+    return ClaimCheckBackendRegistry.acquire(BaseClaimCheckConfig.validatedConfig(config));
+  }
+
+  private static Map<String, Object> config(boolean shared) {
+    Map<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        StringDeserializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        ClosingClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_SHARED_CONFIG, shared);
+    config.put("my.backend.endpoint", "https://my.claimcheck.com");
+    return config;
+  }
+
+  /**
+   * Counts the backends closed.
+   */
+  public static class ClosingClaimCheckBackend extends FakeClaimCheckBackend {
+
+    static final AtomicInteger CLOSED = new AtomicInteger();
+
+    @Override
+    public void close() {
+      CLOSED.incrementAndGet();
+    }
+  }
+}
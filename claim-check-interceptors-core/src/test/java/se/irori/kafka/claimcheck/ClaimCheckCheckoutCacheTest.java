@@ -0,0 +1,185 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClaimCheckCheckoutCacheTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    // GIVEN a cache with room for two payloads
+    ClaimCheckCheckoutCache unit = new ClaimCheckCheckoutCache(20, null, 0);
+    unit.put("a", new byte[10]);
+    unit.put("b", new byte[10]);
+
+    // WHEN using a, and adding a third payload
+    byte[] a = unit.get("a");
+    unit.put("c", new byte[10]);
+
+    // THEN b was evicted, and hits are copies
+    assertEquals(10, a.length);
+    assertNull(unit.get("b"));
+    assertEquals(10, unit.get("a").length);
+    assertEquals(10, unit.get("c").length);
+    assertEquals(1, unit.getEvictionCount());
+    assertEquals(20, unit.getMemoryBytes());
+    assertNotSame(unit.get("a"), unit.get("a"));
+  }
+
+  @Test
+  public void payloadOverBudgetNotCached() {
+    ClaimCheckCheckoutCache unit = new ClaimCheckCheckoutCache(10, null, 0);
+
+    unit.put("a", new byte[11]);
+
+    assertNull(unit.get("a"));
+    assertEquals(0, unit.getMemoryBytes());
+  }
+
+  @Test
+  public void spillToDisk() throws IOException {
+    // GIVEN a cache with room for one payload in memory, and two on disk
+    Path directory = temporaryFolder.newFolder().toPath();
+    ClaimCheckCheckoutCache unit = new ClaimCheckCheckoutCache(10, directory, 20);
+
+    // WHEN adding four payloads
+    for (int i = 0; i < 4; i++) {
+      unit.put("" + i, payload(i));
+    }
+
+    // THEN the eldest is gone, the two after it are on disk, the last in memory
+    assertEquals(20, unit.getDiskBytes());
+    assertNull(unit.get("0"));
+    assertArrayEquals(payload(3), unit.get("3"));
+    assertArrayEquals(payload(1), unit.get("1"));
+    assertEquals(1, unit.getDiskHitCount());
+
+    // AND a disk hit is moved back to memory, spilling the payload it evicts
+    assertEquals(10, unit.getMemoryBytes());
+    assertEquals(20, unit.getDiskBytes());
+    assertArrayEquals(payload(1), unit.get("1"));
+    assertArrayEquals(payload(2), unit.get("2"));
+    assertArrayEquals(payload(3), unit.get("3"));
+  }
+
+  @Test
+  public void hitRate() {
+    ClaimCheckCheckoutCache unit = new ClaimCheckCheckoutCache(100, null, 0);
+    assertEquals(0.0, unit.getHitRate(), 0.0);
+
+    unit.put("a", new byte[1]);
+    unit.get("a");
+    unit.get("a");
+    unit.get("a");
+    unit.get("b");
+
+    assertEquals(3, unit.getHitCount());
+    assertEquals(1, unit.getMissCount());
+    assertEquals(0.75, unit.getHitRate(), 0.0);
+  }
+
+  @Test
+  public void sharedByName() {
+    HashMap<String, Object> config = config("shared-by-name");
+    BaseClaimCheckConfig baseConfig = BaseClaimCheckConfig.validatedConfig(config);
+
+    ClaimCheckCheckoutCache cache = ClaimCheckCheckoutCache.getShared(baseConfig);
+
+    assertSame(cache, ClaimCheckCheckoutCache.getShared(baseConfig));
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_CACHE_MAX_BYTES_CONFIG, 0L);
+    assertNull(ClaimCheckCheckoutCache.getShared(BaseClaimCheckConfig.validatedConfig(config)));
+  }
+
+  @Test
+  public void deserializerCachesCheckOut() {
+    // GIVEN a de-serializer with a cache
+    FakeClaimCheckBackend.reset();
+    ClaimCheckDeserializer<String> deserializer = new ClaimCheckDeserializer<>();
+    HashMap<String, Object> config = config("deserializer-caches-check-out");
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        StringDeserializer.class);
+    deserializer.configure(config, false);
+    Headers headers = new RecordHeaders()
+        .add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+            "https://my.claimcheck.com/ref".getBytes(StandardCharsets.UTF_8));
+
+    // WHEN de-serializing the same record twice
+    String first = deserializer.deserialize("my-topic", headers, new byte[0]);
+    String second = deserializer.deserialize("my-topic", headers, new byte[0]);
+
+    // THEN it is checked out once
+    assertEquals("0", first);
+    assertEquals("0", second);
+    assertEquals(1, FakeClaimCheckBackend.getCount());
+  }
+
+  @Test
+  public void deserializerCachesCompressedCheckOut() {
+    // GIVEN a de-serializer with a cache, and a record with a compressed payload
+    FakeClaimCheckBackend.reset();
+    ClaimCheckDeserializer<String> deserializer = new ClaimCheckDeserializer<>();
+    HashMap<String, Object> config = config("deserializer-caches-compressed-check-out");
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        GzipClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        StringDeserializer.class);
+    deserializer.configure(config, false);
+    Headers headers = new RecordHeaders()
+        .add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+            "https://my.claimcheck.com/ref".getBytes(StandardCharsets.UTF_8));
+    ClaimCheckUtils.setCompressionTypeHeader(headers, ClaimCheckCompressionType.GZIP);
+    ClaimCheckStreamingUtils.setPayloadSize(headers, 1);
+
+    // WHEN de-serializing the same record twice
+    String first = deserializer.deserialize("my-topic", headers, new byte[0]);
+    String second = deserializer.deserialize("my-topic", headers, new byte[0]);
+
+    // THEN it is checked out once, and the cached payload decompressed again
+    assertEquals("0", first);
+    assertEquals("0", second);
+    assertEquals(1, FakeClaimCheckBackend.getCount());
+  }
+
+  private static HashMap<String, Object> config(String cacheName) {
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_CACHE_MAX_BYTES_CONFIG, 1024L);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_CACHE_NAME_CONFIG, cacheName);
+    return config;
+  }
+
+  /**
+   * Checks out gzip compressed payloads.
+   */
+  public static class GzipClaimCheckBackend extends FakeClaimCheckBackend {
+
+    @Override
+    public byte[] checkOut(ClaimCheck claimCheck) {
+      return ClaimCheckCompressionType.GZIP.compress(super.checkOut(claimCheck), null);
+    }
+  }
+
+  private static byte[] payload(int i) {
+    byte[] payload = new byte[10];
+    payload[0] = (byte) i;
+    return payload;
+  }
+}
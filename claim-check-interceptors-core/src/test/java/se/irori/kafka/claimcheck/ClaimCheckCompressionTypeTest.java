@@ -0,0 +1,231 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.Test;
+
+public class ClaimCheckCompressionTypeTest {
+
+  @Test
+  public void compressRoundTrip() {
+    // GIVEN a compressible payload
+    byte[] payload = compressiblePayload(100 * 1024);
+
+    for (ClaimCheckCompressionType type : ClaimCheckCompressionType.values()) {
+      // WHEN compressing and decompressing it
+      byte[] compressed = type.compress(payload, null);
+      byte[] decompressed = type.decompress(compressed);
+
+      // THEN we get the payload back, smaller in between unless not compressed
+      assertArrayEquals(type.getName(), payload, decompressed);
+      if (type == ClaimCheckCompressionType.NONE) {
+        assertSame(payload, compressed);
+      } else {
+        assertTrue(type.getName(), compressed.length < payload.length / 2);
+      }
+    }
+  }
+
+  @Test
+  public void compressRoundTripWithLevel() {
+    byte[] payload = compressiblePayload(10 * 1024);
+
+    assertArrayEquals(payload, ClaimCheckCompressionType.GZIP.decompress(
+        ClaimCheckCompressionType.GZIP.compress(payload, 9)));
+    assertArrayEquals(payload, ClaimCheckCompressionType.LZ4.decompress(
+        ClaimCheckCompressionType.LZ4.compress(payload, 9)));
+    assertArrayEquals(payload, ClaimCheckCompressionType.ZSTD.decompress(
+        ClaimCheckCompressionType.ZSTD.compress(payload, 19)));
+  }
+
+  @Test
+  public void decompressSized() {
+    // GIVEN a compressed payload and its declared size
+    byte[] payload = compressiblePayload(100 * 1024);
+
+    for (ClaimCheckCompressionType type : ClaimCheckCompressionType.values()) {
+      byte[] compressed = type.compress(payload, null);
+
+      // WHEN decompressing it into an array of the declared size
+      byte[] decompressed = type.decompress(compressed, payload.length);
+
+      // THEN we get the payload back
+      assertArrayEquals(type.getName(), payload, decompressed);
+    }
+  }
+
+  @Test
+  public void decompressSizedMismatch() {
+    byte[] compressed = ClaimCheckCompressionType.LZ4.compress(compressiblePayload(1024), null);
+
+    assertDecompressFails(compressed, 1023);
+    assertDecompressFails(compressed, 1025);
+  }
+
+  @Test
+  public void compressNull() {
+    assertNull(ClaimCheckCompressionType.ZSTD.compress(null, null));
+    assertNull(ClaimCheckCompressionType.ZSTD.decompress(null));
+  }
+
+  @Test
+  public void compressingInputStreamRoundTrip() throws IOException {
+    // GIVEN a payload spanning many chunks
+    byte[] payload = compressiblePayload(1024 * 1024 + 17);
+
+    for (ClaimCheckCompressionType type : ClaimCheckCompressionType.values()) {
+      // WHEN compressing while reading it, with reads not aligned to chunks
+      InputStream compressing =
+          new CompressingInputStream(new ByteArrayInputStream(payload), type, null);
+      byte[] compressed = readAll(compressing, 1000);
+
+      // THEN it decompresses to the payload
+      byte[] decompressed = readAll(type.wrapForInput(new ByteArrayInputStream(compressed)), 777);
+      assertArrayEquals(type.getName(), payload, decompressed);
+    }
+  }
+
+  @Test
+  public void compressingInputStreamEmpty() throws IOException {
+    InputStream compressing = new CompressingInputStream(new ByteArrayInputStream(new byte[0]),
+        ClaimCheckCompressionType.ZSTD, null);
+    byte[] compressed = readAll(compressing, 100);
+
+    assertEquals(0, ClaimCheckCompressionType.ZSTD.decompress(compressed).length);
+  }
+
+  @Test
+  public void compressingInputStreamClosedEarly() throws IOException {
+    // GIVEN a payload spanning many chunks
+    byte[] payload = compressiblePayload(1024 * 1024 + 17);
+
+    for (ClaimCheckCompressionType type : new ClaimCheckCompressionType[] {
+        ClaimCheckCompressionType.GZIP, ClaimCheckCompressionType.LZ4,
+        ClaimCheckCompressionType.ZSTD}) {
+      // WHEN closing the stream after one partial read, as a backend failing an upload would
+      AtomicBoolean sourceClosed = new AtomicBoolean();
+      InputStream source = new ByteArrayInputStream(payload) {
+        @Override
+        public void close() {
+          sourceClosed.set(true);
+        }
+      };
+      InputStream compressing = new CompressingInputStream(source, type, null);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1000];
+      compressed.write(buffer, 0, compressing.read(buffer));
+      compressing.close();
+
+      // THEN the source is closed, and the compressor closed, ending the output after the chunks
+      // read so far
+      assertTrue(type.getName(), sourceClosed.get());
+      compressed.write(readAll(compressing, 1000));
+      byte[] decompressed = type.decompress(compressed.toByteArray());
+      assertTrue(type.getName(), decompressed.length < payload.length);
+      assertArrayEquals(type.getName(), Arrays.copyOf(payload, decompressed.length),
+          decompressed);
+    }
+  }
+
+  @Test
+  public void validateLevel() {
+    ClaimCheckCompressionType.GZIP.validateLevel(null);
+    ClaimCheckCompressionType.GZIP.validateLevel(1);
+    ClaimCheckCompressionType.ZSTD.validateLevel(-5);
+    ClaimCheckCompressionType.NONE.validateLevel(100);
+
+    assertInvalidLevel(ClaimCheckCompressionType.GZIP, 10);
+    assertInvalidLevel(ClaimCheckCompressionType.LZ4, 0);
+    assertInvalidLevel(ClaimCheckCompressionType.ZSTD, 23);
+  }
+
+  @Test(expected = ConfigException.class)
+  public void configInvalidLevel() {
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_COMPRESSION_TYPE, "gzip");
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_COMPRESSION_LEVEL, 12);
+
+    BaseClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test(expected = ConfigException.class)
+  public void configUnknownType() {
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_COMPRESSION_TYPE, "brotli");
+
+    BaseClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test
+  public void compressionTypeHeader() {
+    Headers headers = new RecordHeaders();
+    assertEquals(ClaimCheckCompressionType.NONE,
+        ClaimCheckUtils.getCompressionTypeFromHeader(headers));
+
+    ClaimCheckUtils.setCompressionTypeHeader(headers, ClaimCheckCompressionType.NONE);
+    assertNull(headers.lastHeader(
+        ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_COMPRESSION));
+
+    ClaimCheckUtils.setCompressionTypeHeader(headers, ClaimCheckCompressionType.LZ4);
+    assertEquals(ClaimCheckCompressionType.LZ4,
+        ClaimCheckUtils.getCompressionTypeFromHeader(headers));
+  }
+
+  private static void assertInvalidLevel(ClaimCheckCompressionType type, int level) {
+    try {
+      type.validateLevel(level);
+    } catch (ConfigException e) {
+      return;
+    }
+    throw new AssertionError("Expected level " + level + " to be invalid for " + type);
+  }
+
+  private static void assertDecompressFails(byte[] compressed, long payloadSize) {
+    try {
+      ClaimCheckCompressionType.LZ4.decompress(compressed, payloadSize);
+    } catch (KafkaStorageException e) {
+      return;
+    }
+    throw new AssertionError("Expected decompressing to " + payloadSize + " bytes to fail");
+  }
+
+  private static byte[] compressiblePayload(int size) {
+    byte[] payload = new byte[size];
+    byte[] text = TestUtils.getRandomString(64).getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < size; i++) {
+      payload[i] = text[i % text.length];
+    }
+    return payload;
+  }
+
+  private static byte[] readAll(InputStream in, int readSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[readSize];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+}
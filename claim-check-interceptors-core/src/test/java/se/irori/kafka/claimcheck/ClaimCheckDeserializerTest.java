@@ -2,8 +2,10 @@ package se.irori.kafka.claimcheck;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Map;
 import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -74,4 +76,84 @@ public class ClaimCheckDeserializerTest {
       assertTrue(e.getMessage().contains("Some fake backend exception"));
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void deserializeClaimCheckFromBuffer() {
+    // GIVEN a buffer pool, and a de-serializer reading buffers
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        BufferStringDeserializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_BUFFER_POOL_MAX_BYTES_CONFIG,
+        1024 * 1024L);
+    ClaimCheckDeserializer<String> bufferUnit = new ClaimCheckDeserializer<>();
+    bufferUnit.configure(config, false);
+    Headers headers = new RecordHeaders()
+        .add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+            "https://my.claimcheck.com/ref".getBytes(StandardCharsets.UTF_8));
+
+    // WHEN deserializing
+    String deserialized = bufferUnit.deserialize("my-topic", headers, new byte[0]);
+
+    // THEN the payload is handed over as a buffer
+    assertEquals("buffer:0", deserialized);
+    bufferUnit.close();
+  }
+
+  @Test
+  public void skipClaimCheckRejectedByFetchPredicate() {
+    // GIVEN a fetch predicate only passing audited records
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        StringDeserializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_FETCH_PREDICATE_CLASS_CONFIG,
+        AuditHeaderFetchPredicate.class);
+    ClaimCheckDeserializer<String> filteringUnit = new ClaimCheckDeserializer<>();
+    filteringUnit.configure(config, false);
+    Headers headers = new RecordHeaders()
+        .add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+            "https://my.claimcheck.com/ref".getBytes(StandardCharsets.UTF_8));
+
+    // WHEN deserializing a claim check without and with the audit header
+    String skipped = filteringUnit.deserialize("my-topic", headers, new byte[0]);
+    headers.add(AuditHeaderFetchPredicate.HEADER, new byte[0]);
+    String checkedOut = filteringUnit.deserialize("my-topic", headers, new byte[0]);
+
+    // THEN only the audited record is checked out
+    assertNull(skipped);
+    assertEquals("0", checkedOut);
+    assertEquals(1, FakeClaimCheckBackend.getCount());
+    filteringUnit.close();
+  }
+
+  /**
+   * Passes records carrying the `audit` header.
+   */
+  public static class AuditHeaderFetchPredicate implements ClaimCheckFetchPredicate {
+    static final String HEADER = "audit";
+
+    @Override
+    public boolean test(String topic, byte[] key, Headers headers) {
+      return headers.lastHeader(HEADER) != null;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+  }
+
+  public static class BufferStringDeserializer extends StringDeserializer
+      implements ClaimCheckBufferDeserializer<String> {
+
+    @Override
+    public String deserialize(String topic, Headers headers, ByteBuffer data) {
+      assertTrue(data.isReadOnly());
+      byte[] bytes = new byte[data.remaining()];
+      data.get(bytes);
+      return "buffer:" + new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+}
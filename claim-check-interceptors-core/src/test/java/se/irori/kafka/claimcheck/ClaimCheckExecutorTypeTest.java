@@ -0,0 +1,88 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import org.apache.kafka.common.config.ConfigException;
+import org.junit.Test;
+
+public class ClaimCheckExecutorTypeTest {
+
+  @Test
+  public void platformThreads() {
+    ExecutorService executor = ClaimCheckExecutorType.PLATFORM.newExecutor(2, "test-platform");
+    try {
+      Thread thread = CompletableFuture.supplyAsync(Thread::currentThread, executor).join();
+
+      assertTrue(thread.getName().startsWith("test-platform-"));
+      assertTrue(thread.isDaemon());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void callerThread() {
+    ExecutorService executor = ClaimCheckExecutorType.CALLER.newExecutor(2, "test-caller");
+
+    CompletableFuture<Thread> thread =
+        CompletableFuture.supplyAsync(Thread::currentThread, executor);
+
+    assertTrue(thread.isDone());
+    assertSame(Thread.currentThread(), thread.join());
+    executor.shutdownNow();
+    assertTrue(executor.isShutdown());
+  }
+
+  @Test
+  public void virtualThreadsWhenAvailable() {
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_EXECUTOR_TYPE_CONFIG, "virtual");
+
+    BaseClaimCheckConfig baseConfig;
+    try {
+      baseConfig = BaseClaimCheckConfig.validatedConfig(config);
+    } catch (ConfigException e) {
+      // before Java 21
+      assertTrue(e.getMessage().contains("Java 21"));
+      return;
+    }
+
+    ExecutorService executor =
+        baseConfig.getExecutorType().newExecutor(1, "test-virtual");
+    try {
+      Thread thread = CompletableFuture.supplyAsync(Thread::currentThread, executor).join();
+
+      assertEquals("test-virtual-1", thread.getName());
+      assertNotEquals(Thread.currentThread(), thread);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void fromBackendConfigs() {
+    assertSame(ClaimCheckExecutorType.PLATFORM,
+        ClaimCheckExecutorType.fromConfigs(Collections.emptyMap()));
+    assertSame(ClaimCheckExecutorType.CALLER, ClaimCheckExecutorType.fromConfigs(
+        Collections.singletonMap(BaseClaimCheckConfig.Keys.CLAIMCHECK_EXECUTOR_TYPE_CONFIG,
+            "caller")));
+    try {
+      ClaimCheckExecutorType.fromConfigs(Collections.singletonMap(
+          BaseClaimCheckConfig.Keys.CLAIMCHECK_EXECUTOR_TYPE_CONFIG, "green"));
+      fail("Expected unknown type to fail");
+    } catch (ConfigException e) {
+      assertFalse(e.getMessage().isEmpty());
+    }
+  }
+}
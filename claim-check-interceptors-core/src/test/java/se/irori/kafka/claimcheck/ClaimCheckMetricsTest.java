@@ -0,0 +1,157 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClaimCheckMetricsTest {
+
+  private static final String BACKEND = FakeClaimCheckBackend.class.getSimpleName();
+
+  @Before
+  public void setup() {
+    FakeClaimCheckBackend.reset();
+  }
+
+  @Test
+  public void producerInterceptorMetrics() {
+    // GIVEN an interceptor checking in records over 200 bytes
+    ClaimCheckProducerInterceptor<String, String> interceptor =
+        new ClaimCheckProducerInterceptor<>();
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG,
+        200);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ClaimCheckSerializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_SERIALIZER_CLASS,
+        StringSerializer.class);
+    config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    interceptor.configure(config);
+    String topic = "metrics-producer";
+
+    // WHEN sending one large and three small records, and failing a large one
+    interceptor.onSend(new ProducerRecord<>(topic, TestUtils.getRandomString(300)));
+    for (int i = 0; i < 3; i++) {
+      interceptor.onSend(new ProducerRecord<>(topic, TestUtils.getRandomString(10)));
+    }
+    FakeClaimCheckBackend.setErrorModeOn(true);
+    interceptor.onSend(new ProducerRecord<>(topic, TestUtils.getRandomString(300)));
+
+    // THEN
+    assertEquals(0.4, metric("claim-check-ratio", topic), 0.0);
+    assertEquals(1.0, metric("check-in-total", topic), 0.0);
+    assertEquals(300.0, metric("check-in-bytes-total", topic), 0.0);
+    assertEquals(0.0, metric("check-in-in-flight", topic), 0.0);
+    assertTrue(metric("check-in-latency-max", topic) >= 0.0);
+    assertEquals(1.0, metric("check-in-error-total", topic,
+        "error", RuntimeException.class.getSimpleName()), 0.0);
+  }
+
+  @Test
+  public void deserializerMetrics() {
+    // GIVEN a de-serializer
+    ClaimCheckDeserializer<String> deserializer = new ClaimCheckDeserializer<>();
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        StringDeserializer.class);
+    deserializer.configure(config, false);
+    Headers headers = new RecordHeaders()
+        .add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+            "https://my.claimcheck.com/ref".getBytes(StandardCharsets.UTF_8));
+    String topic = "metrics-deserializer";
+
+    // WHEN checking out twice, the fake backend returning "0" and "1"
+    deserializer.deserialize(topic, headers, new byte[0]);
+    deserializer.deserialize(topic, headers, new byte[0]);
+
+    // THEN
+    assertEquals(2.0, metric("check-out-total", topic), 0.0);
+    assertEquals(2.0, metric("check-out-bytes-total", topic), 0.0);
+    assertEquals(0.0, metric("check-out-in-flight", topic), 0.0);
+  }
+
+  @Test
+  public void asyncOperation() {
+    // GIVEN a check out in flight
+    String topic = "metrics-async";
+    ClaimCheckMetrics metrics = ClaimCheckMetrics.forBackend(new FakeClaimCheckBackend());
+    CompletableFuture<byte[]> future = new CompletableFuture<>();
+    CompletableFuture<byte[]> timed =
+        metrics.startCheckOut(topic).whenComplete(future, payload -> payload.length);
+    assertEquals(1.0, metric("check-out-in-flight", topic), 0.0);
+
+    // WHEN it fails
+    future.completeExceptionally(new CompletionException(new KafkaStorageException("failed")));
+
+    // THEN the error is recorded by the type of its cause
+    assertTrue(timed.isCompletedExceptionally());
+    assertEquals(0.0, metric("check-out-in-flight", topic), 0.0);
+    assertEquals(1.0, metric("check-out-error-total", topic,
+        "error", KafkaStorageException.class.getSimpleName()), 0.0);
+  }
+
+  @Test
+  public void removeOnLastClose() {
+    // GIVEN two clients using the metrics of a topic
+    String topic = "metrics-close";
+    ClaimCheckMetrics first = ClaimCheckMetrics.forBackend(new FakeClaimCheckBackend());
+    ClaimCheckMetrics second = ClaimCheckMetrics.forBackend(new FakeClaimCheckBackend());
+    first.startCheckIn(topic).complete(1);
+    second.startCheckIn(topic).fail(new KafkaStorageException("failed"));
+
+    // WHEN closing them in turn
+    first.close();
+    first.close();
+
+    // THEN the metrics are kept until the last client is closed
+    assertEquals(1.0, metric("check-in-total", topic), 0.0);
+    second.close();
+    assertNull(ClaimCheckMetrics.registry().metric(metricName("check-in-total", topic)));
+    assertNull(ClaimCheckMetrics.registry().metric(metricName("check-in-in-flight", topic)));
+    assertNull(ClaimCheckMetrics.registry().metric(metricName("check-in-error-total", topic,
+        "error", KafkaStorageException.class.getSimpleName())));
+    assertNull(ClaimCheckMetrics.registry().metric(metricName("claim-check-ratio", topic)));
+
+    // AND registered again on next use
+    ClaimCheckMetrics third = ClaimCheckMetrics.forBackend(new FakeClaimCheckBackend());
+    third.startCheckIn(topic).complete(1);
+    assertNotNull(ClaimCheckMetrics.registry().metric(metricName("check-in-total", topic)));
+    third.close();
+  }
+
+  private static double metric(String name, String topic, String... extraTags) {
+    return (double) ClaimCheckMetrics.registry().metric(metricName(name, topic, extraTags))
+        .metricValue();
+  }
+
+  private static MetricName metricName(String name, String topic, String... extraTags) {
+    Map<String, String> tags = new HashMap<>();
+    tags.put("topic", topic);
+    tags.put("backend", BACKEND);
+    for (int i = 0; i < extraTags.length; i += 2) {
+      tags.put(extraTags[i], extraTags[i + 1]);
+    }
+    return ClaimCheckMetrics.registry().metricName(name, ClaimCheckMetrics.METRIC_GROUP, tags);
+  }
+}
@@ -0,0 +1,150 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClaimCheckPrefetcherTest {
+  ClaimCheckPrefetcher<String, String> unit;
+
+  @Before
+  public void setup() {
+    FakeClaimCheckBackend.reset();
+
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        StringDeserializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    // fake backend is not thread safe
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_PREFETCH_MAX_IN_FLIGHT_CONFIG, 1);
+    unit = new ClaimCheckPrefetcher<>(config);
+  }
+
+  @After
+  public void tearDown() {
+    unit.close();
+  }
+
+  @Test
+  public void checkOutKeepsRecordOrder() {
+    // GIVEN a batch with claim checks and plain records in two partitions
+    TopicPartition tp0 = new TopicPartition("my-topic", 0);
+    TopicPartition tp1 = new TopicPartition("my-topic", 1);
+    Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> batch = new HashMap<>();
+    batch.put(tp0, new ArrayList<>());
+    batch.put(tp1, new ArrayList<>());
+    batch.get(tp0).add(claimCheckRecord(tp0, 0));
+    batch.get(tp0).add(plainRecord(tp0, 1, "plain-0-1"));
+    batch.get(tp0).add(claimCheckRecord(tp0, 2));
+    batch.get(tp1).add(plainRecord(tp1, 0, "plain-1-0"));
+    batch.get(tp1).add(claimCheckRecord(tp1, 1));
+
+    // WHEN checking out the batch
+    ConsumerRecords<String, String> result = unit.checkOut(new ConsumerRecords<>(batch));
+
+    // THEN every record is kept in order, and claim checks are checked out
+    assertEquals(5, result.count());
+    assertEquals(3, FakeClaimCheckBackend.getCount());
+
+    List<ConsumerRecord<String, String>> tp0Records = result.records(tp0);
+    assertEquals(0, tp0Records.get(0).offset());
+    assertNotNull(tp0Records.get(0).value());
+    assertEquals("plain-0-1", tp0Records.get(1).value());
+    assertEquals(2, tp0Records.get(2).offset());
+    assertNotNull(tp0Records.get(2).value());
+
+    List<ConsumerRecord<String, String>> tp1Records = result.records(tp1);
+    assertEquals("plain-1-0", tp1Records.get(0).value());
+    assertEquals(1, tp1Records.get(1).offset());
+    assertNotNull(tp1Records.get(1).value());
+  }
+
+  @Test
+  public void checkOutError() {
+    // GIVEN a batch with a claim check, Fake backend set to throw error
+    FakeClaimCheckBackend.setErrorModeOn(true);
+    TopicPartition tp0 = new TopicPartition("my-topic", 0);
+    Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> batch = new HashMap<>();
+    batch.put(tp0, new ArrayList<>());
+    batch.get(tp0).add(claimCheckRecord(tp0, 0));
+
+    // WHEN checking out the batch
+    try {
+      unit.checkOut(new ConsumerRecords<>(batch));
+      fail("Expected exception from check out");
+    } catch (Exception e) {
+      // THEN ensure we get the fake backend exception
+      assertTrue(e.getMessage().contains("Some fake backend exception"));
+    }
+  }
+
+  @Test
+  public void skipClaimChecksRejectedByFetchPredicate() {
+    // GIVEN a fetch predicate only passing audited records
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        StringDeserializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_PREFETCH_MAX_IN_FLIGHT_CONFIG, 1);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKOUT_FETCH_PREDICATE_CLASS_CONFIG,
+        ClaimCheckDeserializerTest.AuditHeaderFetchPredicate.class);
+    TopicPartition tp0 = new TopicPartition("my-topic", 0);
+    Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> batch = new HashMap<>();
+    batch.put(tp0, new ArrayList<>());
+    batch.get(tp0).add(claimCheckRecord(tp0, 0));
+    batch.get(tp0).add(claimCheckRecord(tp0, 1));
+    batch.get(tp0).get(1).headers()
+        .add(ClaimCheckDeserializerTest.AuditHeaderFetchPredicate.HEADER, new byte[0]);
+    batch.get(tp0).add(plainRecord(tp0, 2, "plain-0-2"));
+
+    // WHEN checking out the batch
+    List<ConsumerRecord<String, String>> result;
+    try (ClaimCheckPrefetcher<String, String> filteringUnit =
+             new ClaimCheckPrefetcher<>(config)) {
+      result = filteringUnit.checkOut(new ConsumerRecords<>(batch)).records(tp0);
+    }
+
+    // THEN only the audited claim check is checked out, the others are kept
+    assertEquals(1, FakeClaimCheckBackend.getCount());
+    assertEquals(3, result.size());
+    assertNull(result.get(0).value());
+    assertEquals("0", result.get(1).value());
+    assertEquals("plain-0-2", result.get(2).value());
+  }
+
+  private static ConsumerRecord<String, byte[]> claimCheckRecord(TopicPartition tp, long offset) {
+    RecordHeaders headers = new RecordHeaders();
+    headers.add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+        ("https://my.claimcheck.com/ref-" + offset).getBytes(StandardCharsets.UTF_8));
+    return new ConsumerRecord<>(tp.topic(), tp.partition(), offset, 0L,
+        TimestampType.CREATE_TIME, 0, 0, null, new byte[0], headers, Optional.empty());
+  }
+
+  private static ConsumerRecord<String, byte[]> plainRecord(TopicPartition tp, long offset,
+                                                            String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    return new ConsumerRecord<>(tp.topic(), tp.partition(), offset, 0L,
+        TimestampType.CREATE_TIME, 0, bytes.length, null, bytes, new RecordHeaders(),
+        Optional.empty());
+  }
+}
@@ -39,6 +39,36 @@ public class ClaimCheckSerializerTest {
     assertEquals(payload, new String(serialized, StandardCharsets.UTF_8));
   }
 
+  @Test
+  public void serializeHandedOverValue() {
+    // GIVEN the value was already serialized by the interceptor
+    Headers headers = new RecordHeaders();
+    String payload = "myPayload";
+    byte[] interceptorBytes = payload.getBytes(StandardCharsets.UTF_8);
+    SerializedValueHandover.offer(headers, payload, interceptorBytes);
+
+    // WHEN serializing the record
+    byte[] serialized = unit.serialize("my-topic", headers, payload);
+
+    // THEN verify the already serialized bytes are used
+    assertSame(interceptorBytes, serialized);
+  }
+
+  @Test
+  public void serializeHandedOverOtherValue() {
+    // GIVEN another value was serialized by the interceptor
+    Headers headers = new RecordHeaders();
+    SerializedValueHandover.offer(headers, "otherPayload",
+        "otherPayload".getBytes(StandardCharsets.UTF_8));
+    String payload = "myPayload";
+
+    // WHEN serializing the record
+    byte[] serialized = unit.serialize("my-topic", headers, payload);
+
+    // THEN verify payload is as-is serialized
+    assertEquals(payload, new String(serialized, StandardCharsets.UTF_8));
+  }
+
   @Test
   public void serializeClaimCheck() {
     // GIVEN claim check header
@@ -61,6 +61,34 @@ public class ClaimCheckStreamingProducerInterceptorTest {
     assertFalse(ClaimCheckUtils.isClaimCheckError(result.headers()));
   }
 
+  @Test
+  public void onSendLargeStringCompressed() {
+    // GIVEN the interceptor is configured with max limit 200 bytes, and zstd compression
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG,
+        200);
+    config.put(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG, FakeClaimCheckBackend.class);
+    config.put(
+        ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ClaimCheckSerializer.class);
+    config.put(
+        ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_COMPRESSION_TYPE, "zstd");
+    unit.configure(config);
+
+    // WHEN sending a record with body > 200 bytes
+    String body = TestUtils.getRandomString(300);
+    ProducerRecord<String, InputStream> result = unit.onSend(
+        TestUtils.streamRecordFromString("dummyTopic", "myKey", body));
+
+    // THEN the payload is checked in, and the compression is recorded
+    assertTrue(ClaimCheckUtils.isClaimCheck(result.headers()));
+    assertEquals(ClaimCheckCompressionType.ZSTD,
+        ClaimCheckUtils.getCompressionTypeFromHeader(result.headers()));
+    assertEquals(300, ClaimCheckStreamingUtils.getPayloadSize(result.headers()));
+  }
+
   @Test
   public void onSendSmallString() throws IOException {
     // GIVEN the interceptor is configured with max limit 200 bytes
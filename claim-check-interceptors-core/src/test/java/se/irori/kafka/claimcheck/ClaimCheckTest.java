@@ -0,0 +1,75 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import org.junit.Test;
+
+public class ClaimCheckTest {
+
+  private static final byte[] OBJECT_ID = {0x5d, 0x2f, 0x00, (byte) 0xff};
+
+  @Test
+  public void compactRoundTrip() {
+    // GIVEN a compact reference
+    ClaimCheck claimCheck = ClaimCheck.compact((byte) 7, "my-topic", OBJECT_ID);
+
+    // WHEN serializing and de-serializing it
+    byte[] serialized = claimCheck.serialize();
+    ClaimCheck deserialized = new ClaimCheck(serialized);
+
+    // THEN it is a version byte, backend id, length prefixed container and object id
+    assertEquals(ClaimCheck.COMPACT_FORMAT_VERSION, serialized[0]);
+    assertEquals(3 + "my-topic".length() + OBJECT_ID.length, serialized.length);
+    assertTrue(deserialized.isCompact());
+    assertEquals(7, deserialized.getBackendId());
+    assertEquals("my-topic", deserialized.getContainer());
+    assertArrayEquals(OBJECT_ID, deserialized.getObjectId());
+    assertEquals("compact:7/my-topic/5d2f00ff", deserialized.getReference());
+  }
+
+  @Test
+  public void compactFromString() {
+    // WHEN parsing the string form of a compact reference, e.g. from a chunk manifest
+    ClaimCheck claimCheck = new ClaimCheck("compact:7/my-topic/5d2f00ff");
+
+    // THEN it is serialized compact
+    assertTrue(claimCheck.isCompact());
+    assertArrayEquals(ClaimCheck.compact((byte) 7, "my-topic", OBJECT_ID).serialize(),
+        claimCheck.serialize());
+  }
+
+  @Test
+  public void legacyReference() {
+    // GIVEN a URL reference
+    byte[] serialized = "https://account.blob.core.windows.net/my-topic/5d2f"
+        .getBytes(StandardCharsets.UTF_8);
+
+    // WHEN de-serializing it
+    ClaimCheck claimCheck = new ClaimCheck(serialized);
+
+    // THEN it is kept as is
+    assertFalse(claimCheck.isCompact());
+    assertNull(claimCheck.getContainer());
+    assertEquals("https://account.blob.core.windows.net/my-topic/5d2f",
+        claimCheck.getReference());
+    assertArrayEquals(serialized, claimCheck.serialize());
+  }
+
+  @Test(expected = KafkaStorageException.class)
+  public void truncatedCompactReference() {
+    byte[] serialized = ClaimCheck.compact((byte) 7, "my-topic", OBJECT_ID).serialize();
+    new ClaimCheck(Arrays.copyOf(serialized, 6));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compactWithEmptyObjectId() {
+    ClaimCheck.compact((byte) 7, "my-topic", new byte[0]);
+  }
+}
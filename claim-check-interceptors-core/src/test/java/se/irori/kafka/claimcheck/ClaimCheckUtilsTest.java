@@ -0,0 +1,120 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClaimCheckUtilsTest {
+
+  private static final byte[] REF = "https://my.claimcheck.com/ref".getBytes(StandardCharsets.UTF_8);
+
+  Headers plainHeaders;
+
+  Headers claimCheckHeaders;
+
+  @Before
+  public void setup() {
+    plainHeaders = new RecordHeaders();
+    claimCheckHeaders = new RecordHeaders();
+    for (int i = 0; i < 10; i++) {
+      byte[] value = ("value-" + i).getBytes(StandardCharsets.UTF_8);
+      plainHeaders.add("header-" + i, value);
+      claimCheckHeaders.add("header-" + i, value);
+    }
+    claimCheckHeaders.add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK, REF);
+  }
+
+  @Test
+  public void lookups() {
+    assertFalse(ClaimCheckUtils.isClaimCheck(plainHeaders));
+    assertNull(ClaimCheckUtils.getClaimCheckRefFromHeader(plainHeaders));
+
+    assertTrue(ClaimCheckUtils.isClaimCheck(claimCheckHeaders));
+    assertArrayEquals(REF, ClaimCheckUtils.getClaimCheckRefFromHeader(claimCheckHeaders));
+    assertFalse(ClaimCheckUtils.isClaimCheckError(claimCheckHeaders));
+    assertNull(ClaimCheckUtils.getClaimCheckErrorStackTraceFromHeader(claimCheckHeaders));
+
+    claimCheckHeaders.add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_ERROR,
+        "some error".getBytes(StandardCharsets.UTF_8));
+    assertTrue(ClaimCheckUtils.isClaimCheckError(claimCheckHeaders));
+    assertEquals("some error",
+        ClaimCheckUtils.getClaimCheckErrorStackTraceFromHeader(claimCheckHeaders));
+  }
+
+  @Test
+  public void lookupsUseFirstDuplicateHeader() {
+    // GIVEN duplicate claim check and error headers, e.g. forwarded from an upstream record
+    claimCheckHeaders.add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+        "https://my.claimcheck.com/other-ref".getBytes(StandardCharsets.UTF_8));
+    claimCheckHeaders.add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_ERROR,
+        "first error".getBytes(StandardCharsets.UTF_8));
+    claimCheckHeaders.add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK_ERROR,
+        "last error".getBytes(StandardCharsets.UTF_8));
+
+    // THEN the first one wins
+    assertArrayEquals(REF, ClaimCheckUtils.getClaimCheckRefFromHeader(claimCheckHeaders));
+    assertEquals("first error",
+        ClaimCheckUtils.getClaimCheckErrorStackTraceFromHeader(claimCheckHeaders));
+    ClaimCheckHeaders scanned = ClaimCheckHeaders.of(claimCheckHeaders);
+    assertArrayEquals(REF, scanned.getRef());
+    assertEquals("first error", scanned.getErrorStackTrace());
+  }
+
+  @Test
+  public void scanAllHeaders() {
+    // GIVEN the headers of a compressed claim check
+    ClaimCheckUtils.setCompressionTypeHeader(claimCheckHeaders, ClaimCheckCompressionType.ZSTD);
+    ClaimCheckStreamingUtils.setPayloadSize(claimCheckHeaders, 1234);
+
+    // WHEN scanning them
+    ClaimCheckHeaders scanned = ClaimCheckHeaders.of(claimCheckHeaders);
+
+    // THEN all claim check headers are found
+    assertTrue(scanned.isClaimCheck());
+    assertFalse(scanned.isClaimCheckError());
+    assertArrayEquals(REF, scanned.getRef());
+    assertEquals(ClaimCheckCompressionType.ZSTD, scanned.getCompressionType());
+    assertEquals(1234, scanned.getPayloadSize(-1));
+    assertEquals(-1, ClaimCheckHeaders.of(plainHeaders).getPayloadSize(-1));
+  }
+
+  @Test
+  public void lookupsDoNotAllocate() {
+    // GIVEN a JVM that can measure allocated bytes per thread
+    assumeTrue(ManagementFactory.getThreadMXBean()
+        instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threadMxBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMxBean.isThreadAllocatedMemoryEnabled());
+    long threadId = Thread.currentThread().getId();
+
+    // WHEN doing the lookups of the serializer and de-serializer path for records below the
+    // limit many times
+    int iterations = 100_000;
+    int found = 0;
+    long before = threadMxBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterations; i++) {
+      if (ClaimCheckUtils.getClaimCheckErrorStackTraceFromHeader(plainHeaders) == null
+          && !ClaimCheckUtils.isClaimCheck(plainHeaders)
+          && ClaimCheckUtils.getClaimCheckRefFromHeader(plainHeaders) == null) {
+        found++;
+      }
+    }
+    long allocated = threadMxBean.getThreadAllocatedBytes(threadId) - before;
+
+    // THEN allocation is near zero per record, where stream based lookups allocate > 100 bytes;
+    // only claim check records, which go on to a remote check-out, are iterated and allocate
+    assertEquals(iterations, found);
+    assertTrue("allocated " + allocated + " bytes", allocated < iterations);
+  }
+}
@@ -0,0 +1,107 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClaimCheckValueDeserializerTest {
+  ClaimCheckValueDeserializer<String> unit;
+
+  @Before
+  public void setup() {
+    unit = new ClaimCheckValueDeserializer<>();
+    FakeClaimCheckBackend.reset();
+
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_DESERIALIZER_CLASS,
+        StringDeserializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FakeClaimCheckBackend.class);
+    unit.configure(config, false);
+  }
+
+  @After
+  public void tearDown() {
+    unit.close();
+  }
+
+  @Test
+  public void deserializeNonClaimCheck() {
+    // GIVEN no headers
+    Headers headers = new RecordHeaders();
+    byte[] payload = "my-payload".getBytes(StandardCharsets.UTF_8);
+
+    // WHEN deserializing
+    ClaimCheckValue<String> value = unit.deserialize("my-topic", headers, payload);
+
+    // THEN the value is read from the record
+    assertFalse(value.isClaimCheck());
+    assertNull(value.getReference());
+    assertEquals(payload.length, value.getSize());
+    assertEquals("my-payload", value.get());
+  }
+
+  @Test
+  public void deserializeTombstone() {
+    // GIVEN no headers and a null value
+    Headers headers = new RecordHeaders();
+
+    // WHEN deserializing
+    ClaimCheckValue<String> value = unit.deserialize("my-topic", headers, null);
+
+    // THEN there is no handle, as for a tombstone with any other de-serializer
+    assertNull(value);
+  }
+
+  @Test
+  public void checkOutOnFirstAccess() {
+    // GIVEN claim check headers with a payload size
+    Headers headers = new RecordHeaders()
+        .add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+            "https://my.claimcheck.com/ref".getBytes(StandardCharsets.UTF_8));
+    ClaimCheckStreamingUtils.setPayloadSize(headers, 1234);
+
+    // WHEN deserializing
+    ClaimCheckValue<String> value = unit.deserialize("my-topic", headers, null);
+
+    // THEN nothing is checked out until the value is accessed, and then only once
+    assertTrue(value.isClaimCheck());
+    assertEquals("https://my.claimcheck.com/ref", value.getReference());
+    assertEquals(1234, value.getSize());
+    assertFalse(value.isLoaded());
+    assertEquals(0, FakeClaimCheckBackend.getCount());
+
+    assertEquals("0", value.getAsync(Runnable::run).join());
+    assertEquals("0", value.get());
+    assertTrue(value.isLoaded());
+    assertEquals(1, FakeClaimCheckBackend.getCount());
+  }
+
+  @Test
+  public void retryFailedCheckOut() {
+    // GIVEN a claim check without a payload size, and a failing backend
+    Headers headers = new RecordHeaders()
+        .add(ClaimCheckProducerInterceptor.HEADER_MESSAGE_CLAIM_CHECK,
+            "https://my.claimcheck.com/ref".getBytes(StandardCharsets.UTF_8));
+    ClaimCheckValue<String> value = unit.deserialize("my-topic", headers, null);
+    assertEquals(-1, value.getSize());
+    FakeClaimCheckBackend.setErrorModeOn(true);
+    assertTrue(value.getAsync(Runnable::run).isCompletedExceptionally());
+
+    // WHEN accessing it again once the backend recovered
+    FakeClaimCheckBackend.setErrorModeOn(false);
+
+    // THEN it is checked out
+    assertEquals("1", value.get());
+  }
+}
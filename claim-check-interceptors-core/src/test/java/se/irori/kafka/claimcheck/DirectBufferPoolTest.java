@@ -0,0 +1,81 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class DirectBufferPoolTest {
+
+  @Test
+  public void reuseBySizeClass() {
+    // GIVEN a released buffer
+    DirectBufferPool unit = new DirectBufferPool(1024 * 1024);
+    ByteBuffer first = unit.acquire(5000);
+    assertTrue(first.isDirect());
+    assertEquals(8192, first.capacity());
+    assertEquals(5000, first.limit());
+    first.put((byte) 1);
+    unit.release(first);
+    assertEquals(8192, unit.getPooledBytes());
+
+    // WHEN acquiring a buffer of the same size class
+    ByteBuffer second = unit.acquire(8000);
+
+    // THEN the released buffer is reused, cleared
+    assertSame(first, second);
+    assertEquals(0, second.position());
+    assertEquals(8000, second.limit());
+    assertEquals(0, unit.getPooledBytes());
+
+    // AND a larger size class gets a new buffer
+    assertNotSame(first, unit.acquire(8193));
+  }
+
+  @Test
+  public void poolBounded() {
+    // GIVEN a budget for one buffer
+    DirectBufferPool unit = new DirectBufferPool(DirectBufferPool.MIN_BUFFER_SIZE);
+    ByteBuffer first = unit.acquire(10);
+    ByteBuffer second = unit.acquire(10);
+
+    // WHEN releasing both
+    unit.release(first);
+    unit.release(second);
+
+    // THEN only one is kept
+    assertEquals(DirectBufferPool.MIN_BUFFER_SIZE, unit.getPooledBytes());
+    assertSame(first, unit.acquire(10));
+    assertNotSame(second, unit.acquire(10));
+  }
+
+  @Test
+  public void exactSizeBeyondBudget() {
+    // GIVEN a budget for buffers of up to 64 KiB
+    DirectBufferPool unit = new DirectBufferPool(100 * 1024);
+
+    // WHEN acquiring a buffer too large to be kept, and releasing it
+    ByteBuffer overBudget = unit.acquire(65 * 1024);
+    unit.release(overBudget);
+
+    // THEN it has its exact size instead of the next power of two, and is not kept
+    assertEquals(65 * 1024, overBudget.capacity());
+    assertEquals(0, unit.getPooledBytes());
+  }
+
+  @Test
+  public void ignoreOtherBuffers() {
+    // GIVEN buffers not from a pool
+    DirectBufferPool unit = new DirectBufferPool(1024 * 1024);
+
+    // WHEN releasing them
+    unit.release(ByteBuffer.allocate(DirectBufferPool.MIN_BUFFER_SIZE));
+    unit.release(ByteBuffer.allocateDirect(DirectBufferPool.MIN_BUFFER_SIZE + 1));
+
+    // THEN they are not kept
+    assertEquals(0, unit.getPooledBytes());
+  }
+}
@@ -3,7 +3,10 @@ package se.irori.kafka.claimcheck;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.apache.kafka.clients.producer.ProducerRecord;
 
 /**
@@ -16,22 +19,40 @@ public class FakeClaimCheckBackend
   /** the number of times a message check in has been attempted since reset */
   private static int counter = 0;
 
+  /** the number of batch check ins attempted since reset */
+  private static int batchCounter = 0;
+
   private static boolean errorModeOn = false;
 
+  private static long checkInDelayMillis = 0;
+
   /**
-   * reset the counter and turn off error mode if set
+   * reset the counter, turn off error mode and check in delay if set
    */
   public static void reset() {
     counter = 0;
+    batchCounter = 0;
     errorModeOn = false;
+    checkInDelayMillis = 0;
   }
 
   public static int getCount() {
     return counter;
   }
 
+  public static int getBatchCount() {
+    return batchCounter;
+  }
+
   @Override
   public ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord) {
+    if (checkInDelayMillis > 0) {
+      try {
+        Thread.sleep(checkInDelayMillis);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
     counter += 1;
     if (errorModeOn) {
       throw new RuntimeException("Some fake backend exception");
@@ -39,6 +60,19 @@ public class FakeClaimCheckBackend
     return new ClaimCheck("" + counter);
   }
 
+  @Override
+  public List<ClaimCheck> checkInBatch(List<ProducerRecord<byte[], byte[]>> largeRecords) {
+    batchCounter += 1;
+    return ClaimCheckBackend.super.checkInBatch(largeRecords);
+  }
+
+  @Override
+  public CompletableFuture<List<ClaimCheck>> checkInBatchAsync(
+      List<ProducerRecord<byte[], byte[]>> largeRecords, Executor executor) {
+    // one at a time, as the counters are not thread safe
+    return CompletableFuture.supplyAsync(() -> checkInBatch(largeRecords), executor);
+  }
+
   @Override
   public ClaimCheck checkInStreaming(String topic, InputStream payload, long payloadSize) {
     counter += 1;
@@ -78,4 +112,8 @@ public class FakeClaimCheckBackend
   public static void setErrorModeOn(boolean errorModeOn) {
     FakeClaimCheckBackend.errorModeOn = errorModeOn;
   }
+
+  public static void setCheckInDelayMillis(long checkInDelayMillis) {
+    FakeClaimCheckBackend.checkInDelayMillis = checkInDelayMillis;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Unit test GrowableArrayOutputStream.
+ */
+public class GrowableArrayOutputStreamTest {
+
+  @Test
+  public void growAsWritten() {
+    // GIVEN a stream for up to a 4 MiB chunk
+    GrowableArrayOutputStream unit = new GrowableArrayOutputStream(4 * 1024 * 1024);
+    byte[] payload = TestUtils.getRandomBytes(100 * 1024);
+
+    // WHEN writing a smaller payload in parts
+    unit.write(payload, 0, 1000);
+    unit.write(payload, 1000, payload.length - 1000);
+
+    // THEN it is read back as written
+    assertEquals(payload.length, unit.size());
+    assertArrayEquals(payload, unit.toArray());
+  }
+
+  @Test
+  public void copyToLargerArray() {
+    // GIVEN a stream holding the first bytes of a payload
+    GrowableArrayOutputStream unit = new GrowableArrayOutputStream(16);
+    byte[] payload = TestUtils.getRandomBytes(32);
+    unit.write(payload, 0, 16);
+
+    // WHEN copying them to an array sized to the payload
+    byte[] target = new byte[32];
+    unit.copyTo(target);
+
+    // THEN they are at its start
+    assertArrayEquals(Arrays.copyOf(payload, 16), Arrays.copyOf(target, 16));
+    assertArrayEquals(new byte[16], Arrays.copyOfRange(target, 16, 32));
+  }
+}
@@ -62,4 +62,16 @@ public class InputStreamSerializerTest {
 
     // THEN expect SerializationException
   }
-}
\ No newline at end of file
+
+  @Test(expected = SerializationException.class)
+  public void testLargerThanByteArray() {
+    // GIVEN a payload size header above what fits in a byte array
+    RecordHeaders headers = new RecordHeaders();
+    ClaimCheckStreamingUtils.setPayloadSize(headers, 3L * 1024 * 1024 * 1024);
+
+    // WHEN serializing it inline
+    unit.serialize("my-topic", headers, new ByteArrayInputStream(new byte[0]));
+
+    // THEN expect SerializationException, without allocating for the payload
+  }
+}
@@ -0,0 +1,119 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelRangeDownloaderTest {
+
+  ParallelRangeDownloader unit;
+
+  @Before
+  public void setup() {
+    unit = new ParallelRangeDownloader(100, 4, "test-download");
+  }
+
+  @After
+  public void tearDown() {
+    unit.close();
+  }
+
+  @Test
+  public void downloadInChunks() {
+    // GIVEN a payload of a little more than 10 chunks, with the first chunk already read
+    byte[] source = TestUtils.getRandomBytes(1050);
+    byte[] target = new byte[source.length];
+    System.arraycopy(source, 0, target, 0, 100);
+    AtomicInteger reads = new AtomicInteger();
+
+    // WHEN downloading the rest
+    unit.download(target, 100, (offset, array, arrayOffset, length) -> {
+      reads.incrementAndGet();
+      new ArrayRangeOutputStream(array, arrayOffset, length)
+          .write(source, (int) offset, length);
+    });
+
+    // THEN the payload is read in chunks
+    assertArrayEquals(source, target);
+    assertEquals(10, reads.get());
+  }
+
+  @Test
+  public void downloadIntoBuffer() {
+    // GIVEN a payload of a little more than 10 chunks, and a direct buffer for it
+    byte[] source = TestUtils.getRandomBytes(1050);
+    ByteBuffer target = new DirectBufferPool(0).acquire(source.length);
+
+    // WHEN downloading
+    unit.download(target, 0, (offset, range) -> {
+      assertTrue(range.remaining() <= 100);
+      range.put(source, (int) offset, range.remaining());
+    });
+
+    // THEN the payload is read into the buffer
+    byte[] result = new byte[source.length];
+    target.get(result);
+    assertArrayEquals(source, result);
+  }
+
+  @Test
+  public void downloadInCallerThread() {
+    // GIVEN a downloader running range reads in the calling thread
+    ParallelRangeDownloader caller = new ParallelRangeDownloader(100, 4, "test-download",
+        ClaimCheckExecutorType.CALLER);
+    byte[] source = TestUtils.getRandomBytes(1050);
+    byte[] target = new byte[source.length];
+    Thread thread = Thread.currentThread();
+
+    // WHEN downloading
+    caller.download(target, 0, (offset, array, arrayOffset, length) -> {
+      assertEquals(thread, Thread.currentThread());
+      new ArrayRangeOutputStream(array, arrayOffset, length)
+          .write(source, (int) offset, length);
+    });
+
+    // THEN all of the payload is read
+    assertArrayEquals(source, target);
+    caller.close();
+  }
+
+  @Test
+  public void downloadError() {
+    // GIVEN a reader failing one chunk
+    byte[] target = new byte[1000];
+
+    // WHEN downloading
+    try {
+      unit.download(target, 0, (offset, array, arrayOffset, length) -> {
+        if (offset == 500) {
+          throw new IOException("Some range read exception");
+        }
+      });
+      fail("Expected exception from download");
+    } catch (KafkaStorageException e) {
+      // THEN the error is propagated
+      assertTrue(e.getCause().getMessage().contains("Some range read exception"));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void writeBeyondRange() throws IOException {
+    byte[] target = new byte[10];
+    ArrayRangeOutputStream stream = new ArrayRangeOutputStream(target, 5, 3);
+    stream.write(new byte[] {1, 2, 3});
+    assertEquals(8, stream.getPosition());
+    assertEquals(Arrays.toString(new byte[] {0, 0, 0, 0, 0, 1, 2, 3, 0, 0}),
+        Arrays.toString(target));
+    stream.write(4);
+  }
+}
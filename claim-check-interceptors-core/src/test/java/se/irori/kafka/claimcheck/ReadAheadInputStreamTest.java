@@ -0,0 +1,114 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void readInChunks() throws IOException {
+    // GIVEN a payload of a little more than 10 chunks
+    byte[] source = TestUtils.getRandomBytes(1050);
+    AtomicInteger reads = new AtomicInteger();
+    ReadAheadInputStream.Budget budget = new ReadAheadInputStream.Budget(1000);
+
+    // WHEN streaming it, with single byte and array reads
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    try (InputStream unit = new ReadAheadInputStream(source.length, 100, 2, executor, budget,
+        (offset, array, arrayOffset, length) -> {
+          reads.incrementAndGet();
+          System.arraycopy(source, (int) offset, array, arrayOffset, length);
+        })) {
+      result.write(unit.read());
+      byte[] buffer = new byte[64];
+      int read;
+      while ((read = unit.read(buffer)) >= 0) {
+        result.write(buffer, 0, read);
+      }
+    }
+
+    // THEN the payload is read once, in chunks, and the budget is released
+    assertArrayEquals(source, result.toByteArray());
+    assertEquals(11, reads.get());
+    assertEquals(1000, budget.getAvailableBytes());
+  }
+
+  @Test
+  public void readAheadBoundedPerStream() throws IOException {
+    // GIVEN a stream reading 2 chunks ahead, with a large budget, reading in the caller thread
+    ReadAheadInputStream.Budget budget = new ReadAheadInputStream.Budget(100_000);
+    ReadAheadInputStream unit = new ReadAheadInputStream(10_000, 100, 2, Runnable::run, budget,
+        (offset, array, arrayOffset, length) -> { });
+
+    // WHEN reading the first byte
+    unit.read();
+
+    // THEN it holds the chunk being read and 2 more
+    assertEquals(100_000 - 300, budget.getAvailableBytes());
+    unit.close();
+    assertEquals(100_000, budget.getAvailableBytes());
+  }
+
+  @Test
+  public void streamsShareBudget() throws IOException {
+    // GIVEN a budget for 3 chunks, and a stream using it up
+    ReadAheadInputStream.Budget budget = new ReadAheadInputStream.Budget(300);
+    byte[] source = TestUtils.getRandomBytes(1000);
+    ParallelRangeDownloader.RangeReader reader = (offset, array, arrayOffset, length) ->
+        System.arraycopy(source, (int) offset, array, arrayOffset, length);
+    ReadAheadInputStream first = new ReadAheadInputStream(source.length, 100, 4, Runnable::run,
+        budget, reader);
+    first.read();
+    assertEquals(0, budget.getAvailableBytes());
+
+    // WHEN reading another stream
+    byte[] second = new byte[source.length];
+    try (DataInputStream dis = new DataInputStream(new ReadAheadInputStream(source.length, 100,
+        4, executor, budget, reader))) {
+      dis.readFully(second);
+    }
+
+    // THEN it is read a chunk at a time, without waiting for the first stream
+    assertArrayEquals(source, second);
+    assertEquals(0, budget.getAvailableBytes());
+    first.close();
+    assertEquals(300, budget.getAvailableBytes());
+  }
+
+  @Test
+  public void readError() {
+    ReadAheadInputStream.Budget budget = new ReadAheadInputStream.Budget(1000);
+    try (InputStream unit = new ReadAheadInputStream(1000, 100, 2, executor, budget,
+        (offset, array, arrayOffset, length) -> {
+          if (offset == 200) {
+            throw new IOException("Some range read exception");
+          }
+        })) {
+      while (unit.read() >= 0) {
+        // read on
+      }
+      fail("Expected exception from read");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("Some range read exception"));
+    }
+  }
+}
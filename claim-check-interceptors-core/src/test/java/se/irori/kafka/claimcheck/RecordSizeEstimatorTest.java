@@ -0,0 +1,89 @@
+package se.irori.kafka.claimcheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.DefaultRecordBatch;
+import org.apache.kafka.common.record.SimpleRecord;
+import org.junit.Test;
+
+public class RecordSizeEstimatorTest {
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void sameDecisionAsBatchSizeAroundLimit() {
+    // GIVEN records with varying keys and headers, of sizes around the limit
+    for (int i = 0; i < 2000; i++) {
+      Headers headers = randomHeaders();
+      byte[] keyBytes = random.nextInt(4) == 0 ? null : randomBytes(random.nextInt(200));
+      byte[] valueBytes = random.nextInt(20) == 0 ? null : randomBytes(random.nextInt(2000));
+      int exact = batchSizeInBytes(headers, keyBytes, valueBytes);
+
+      for (long limit = exact - 40; limit <= exact + 40; limit++) {
+        // WHEN deciding if the record is above the limit
+        boolean above = RecordSizeEstimator.isAboveLimit(headers, keyBytes, valueBytes, limit);
+
+        // THEN the decision is the one of the exact batch size
+        assertEquals("limit=" + limit + " exact=" + exact, exact > limit, above);
+      }
+    }
+  }
+
+  @Test
+  public void sameDecisionAsBatchSizeAroundLimitStreaming() {
+    for (int i = 0; i < 2000; i++) {
+      Headers headers = randomHeaders();
+      byte[] keyBytes = random.nextInt(4) == 0 ? null : randomBytes(random.nextInt(200));
+      long valueSize = random.nextInt(2000);
+      long exact = batchSizeInBytes(headers, keyBytes, new byte[0]) + valueSize;
+
+      for (long limit = exact - 40; limit <= exact + 40; limit++) {
+        boolean above = RecordSizeEstimator.isAboveLimit(headers, keyBytes, valueSize, limit);
+
+        assertEquals("limit=" + limit + " exact=" + exact, exact > limit, above);
+      }
+    }
+  }
+
+  @Test
+  public void boundsHold() {
+    for (int i = 0; i < 2000; i++) {
+      Headers headers = randomHeaders();
+      byte[] keyBytes = random.nextInt(4) == 0 ? null : randomBytes(random.nextInt(200));
+      byte[] valueBytes = randomBytes(random.nextInt(2000));
+      int keySize = keyBytes == null ? -1 : keyBytes.length;
+      int exact = batchSizeInBytes(headers, keyBytes, valueBytes);
+
+      assertTrue(RecordSizeEstimator.lowerBound(keySize, valueBytes.length) <= exact);
+      assertTrue(RecordSizeEstimator.upperBound(headers, keySize, valueBytes.length,
+          Long.MAX_VALUE) >= exact);
+      assertEquals(exact, RecordSizeEstimator.exactSize(headers, keySize, valueBytes.length));
+    }
+  }
+
+  private Headers randomHeaders() {
+    RecordHeaders headers = new RecordHeaders();
+    int count = random.nextInt(4);
+    for (int i = 0; i < count; i++) {
+      String key = random.nextBoolean() ? "header-" + i : "häder-€-" + i;
+      headers.add(key, random.nextInt(5) == 0 ? null : randomBytes(random.nextInt(300)));
+    }
+    return headers;
+  }
+
+  private byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  private static int batchSizeInBytes(Headers headers, byte[] keyBytes, byte[] valueBytes) {
+    return DefaultRecordBatch.sizeInBytes(Collections.singleton(
+        new SimpleRecord(0L, keyBytes, valueBytes, headers.toArray())));
+  }
+}
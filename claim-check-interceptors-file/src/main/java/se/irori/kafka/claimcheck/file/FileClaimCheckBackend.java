@@ -0,0 +1,295 @@
+package se.irori.kafka.claimcheck.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import se.irori.kafka.claimcheck.ClaimCheck;
+import se.irori.kafka.claimcheck.ClaimCheckBackend;
+
+/**
+ * Implementation of the ClaimCheckBackend backed by a local or shared (e.g. NFS) directory.
+ *
+ * <p>Payloads are stored in one sub directory per topic. They are written with a
+ * {@link FileChannel} to a hidden temporary file, which is atomically renamed once complete, so
+ * that consumers never see partial payloads. Payloads are read back through memory mapped files,
+ * and can be copied to another channel without passing through the heap with
+ * {@link #transferTo(ClaimCheck, WritableByteChannel)}.
+ *
+ * <p>Claim checks have the form `file:&lt;topic&gt;/&lt;id&gt;`, relative to the configured
+ * directory, so producers and consumers can mount it at different paths.
+ */
+public class FileClaimCheckBackend implements ClaimCheckBackend {
+
+  static final String REFERENCE_PREFIX = "file:";
+
+  private static final String TEMP_PREFIX = ".";
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Largest region mapped at once, when streaming payloads.
+   */
+  static final long MAX_MAPPED_REGION_BYTES = 1L << 30;
+
+  private final ConcurrentHashMap<String, Path> topicDirectories = new ConcurrentHashMap<>();
+
+  private Path directory;
+
+  private boolean fsync = false;
+
+  @Override
+  public ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord) {
+    return store(largeRecord.topic(), channel -> {
+      ByteBuffer buffer = ByteBuffer.wrap(largeRecord.value());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    });
+  }
+
+  @Override
+  public ClaimCheck checkInStreaming(String topic, InputStream payload, long payloadSize) {
+    return store(topic, channel -> {
+      ReadableByteChannel source = Channels.newChannel(payload);
+      boolean sizeKnown = payloadSize >= 0;
+      long position = 0;
+      while (!sizeKnown || position < payloadSize) {
+        long count = sizeKnown ? payloadSize - position : MAX_MAPPED_REGION_BYTES;
+        long transferred = channel.transferFrom(source, position, count);
+        if (transferred <= 0) {
+          // end of stream, blocking sources always make progress otherwise
+          break;
+        }
+        position += transferred;
+      }
+      if (sizeKnown && position != payloadSize) {
+        throw new IOException("Expected payload of " + payloadSize + " bytes, got " + position);
+      }
+    });
+  }
+
+  @Override
+  public byte[] checkOut(ClaimCheck claimCheck) {
+    Path path = getPathFromClaimCheck(claimCheck);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE - 8) {
+        throw new KafkaStorageException("Payload too large for a byte array: " + path
+            + " (" + size + " bytes), use checkOutStreaming");
+      }
+      byte[] payload = new byte[(int) size];
+      channel.map(FileChannel.MapMode.READ_ONLY, 0, size).get(payload);
+      return payload;
+    } catch (IOException e) {
+      throw storageException(claimCheck, e);
+    }
+  }
+
+  @Override
+  public InputStream checkOutStreaming(ClaimCheck claimCheck) {
+    Path path = getPathFromClaimCheck(claimCheck);
+    try {
+      return new MappedInputStream(FileChannel.open(path, StandardOpenOption.READ));
+    } catch (IOException e) {
+      throw storageException(claimCheck, e);
+    }
+  }
+
+  /**
+   * Copy a previously stored payload to a channel, using {@link FileChannel#transferTo}, which
+   * lets the operating system copy directly from the file to e.g. a socket.
+   *
+   * @param claimCheck previously issued claim check for this backend
+   * @param target the channel to write the payload to
+   * @return the number of bytes written
+   */
+  public long transferTo(ClaimCheck claimCheck, WritableByteChannel target) {
+    Path path = getPathFromClaimCheck(claimCheck);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      while (position < size) {
+        position += channel.transferTo(position, size - position, target);
+      }
+      return position;
+    } catch (IOException e) {
+      throw storageException(claimCheck, e);
+    }
+  }
+
+  private ClaimCheck store(String topic, PayloadWriter writer) {
+    Path topicDirectory = topicDirectories.computeIfAbsent(topic, this::createTopicDirectory);
+
+    String id = UUID.randomUUID().toString();
+    Path temp = topicDirectory.resolve(TEMP_PREFIX + id + TEMP_SUFFIX);
+    try {
+      try (FileChannel channel = FileChannel.open(temp,
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        writer.write(channel);
+        if (fsync) {
+          channel.force(false);
+        }
+      }
+      Files.move(temp, topicDirectory.resolve(id), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw new KafkaStorageException("Could not check in payload to " + topicDirectory, e);
+    }
+    return new ClaimCheck(REFERENCE_PREFIX + topic + "/" + id);
+  }
+
+  private Path createTopicDirectory(String topic) {
+    Path topicDirectory = resolveInDirectory(topic);
+    try {
+      return Files.createDirectories(topicDirectory);
+    } catch (IOException e) {
+      throw new KafkaStorageException("Could not create topic directory " + topicDirectory, e);
+    }
+  }
+
+  Path getPathFromClaimCheck(ClaimCheck claimCheck) {
+    String reference = claimCheck.getReference();
+    if (!reference.startsWith(REFERENCE_PREFIX)) {
+      throw new KafkaStorageException("Bad file claim check reference: " + reference);
+    }
+    Path path = resolveInDirectory(reference.substring(REFERENCE_PREFIX.length()));
+    Path topicDirectory = path.getParent();
+    if (topicDirectory == null || !directory.equals(topicDirectory.getParent())) {
+      throw new KafkaStorageException("Bad file claim check reference: " + reference);
+    }
+    return path;
+  }
+
+  private Path resolveInDirectory(String relativePath) {
+    Path path = directory.resolve(relativePath).normalize();
+    if (!path.startsWith(directory) || path.equals(directory)) {
+      throw new KafkaStorageException("Path outside of storage directory: " + relativePath);
+    }
+    return path;
+  }
+
+  private static KafkaStorageException storageException(ClaimCheck claimCheck, IOException e) {
+    if (e instanceof NoSuchFileException) {
+      return new KafkaStorageException("No payload for claim check: "
+          + claimCheck.getReference(), e);
+    }
+    return new KafkaStorageException("Could not check out payload for claim check: "
+        + claimCheck.getReference(), e);
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+    FileClaimCheckConfig config = FileClaimCheckConfig.validatedConfig(configs);
+
+    directory = config.getDirectory();
+    fsync = config.getBoolean(FileClaimCheckConfig.Keys.FILE_STORAGE_FSYNC_CONFIG);
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new KafkaStorageException("Could not create storage directory " + directory, e);
+    }
+  }
+
+  @FunctionalInterface
+  private interface PayloadWriter {
+    void write(FileChannel channel) throws IOException;
+  }
+
+  /**
+   * Reads a file through read only memory mapped regions of at most
+   * {@link #MAX_MAPPED_REGION_BYTES}, copying from the page cache directly into the caller's
+   * buffer.
+   */
+  static class MappedInputStream extends InputStream {
+    private final FileChannel channel;
+
+    private final long size;
+
+    private long regionEnd = 0;
+
+    private MappedByteBuffer region;
+
+    MappedInputStream(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.size = channel.size();
+    }
+
+    private boolean ensureRegion() throws IOException {
+      if (region != null && region.hasRemaining()) {
+        return true;
+      }
+      if (regionEnd >= size) {
+        return false;
+      }
+      long regionSize = Math.min(MAX_MAPPED_REGION_BYTES, size - regionEnd);
+      region = channel.map(FileChannel.MapMode.READ_ONLY, regionEnd, regionSize);
+      regionEnd += regionSize;
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!ensureRegion()) {
+        return -1;
+      }
+      return region.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!ensureRegion()) {
+        return -1;
+      }
+      int read = Math.min(len, region.remaining());
+      region.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = 0;
+      while (skipped < n && ensureRegion()) {
+        int step = (int) Math.min(n - skipped, region.remaining());
+        // through Buffer, as MappedByteBuffer only overrides position from Java 9
+        ((Buffer) region).position(region.position() + step);
+        skipped += step;
+      }
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      long remaining = size - regionEnd + (region == null ? 0 : region.remaining());
+      return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+      region = null;
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package se.irori.kafka.claimcheck.file;
+
+import static se.irori.kafka.claimcheck.file.FileClaimCheckConfig.Keys.FILE_STORAGE_DIRECTORY_CONFIG;
+import static se.irori.kafka.claimcheck.file.FileClaimCheckConfig.Keys.FILE_STORAGE_FSYNC_CONFIG;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+
+/**
+ * Configuration for the local filesystem backend.
+ */
+public class FileClaimCheckConfig extends AbstractConfig {
+
+  public static final String DIRECTORY_DOCS = "Directory to store payloads in, one sub directory"
+      + " per topic. Producers and consumers must see the same files, use a shared mount such as"
+      + " NFS when they run on different hosts.";
+
+  public static final String FSYNC_DOCS = "Force payloads to the storage device before the claim"
+      + " check is issued. Gives durability on host crash, at the cost of check in latency.";
+
+  static ConfigDef buildConfigDef(ConfigDef base) {
+    base.define(FILE_STORAGE_DIRECTORY_CONFIG, ConfigDef.Type.STRING, null,
+        ConfigDef.Importance.HIGH, DIRECTORY_DOCS);
+
+    base.define(FILE_STORAGE_FSYNC_CONFIG, ConfigDef.Type.BOOLEAN, false,
+        ConfigDef.Importance.MEDIUM, FSYNC_DOCS);
+
+    return base;
+  }
+
+  public Path getDirectory() {
+    return Paths.get(getString(FILE_STORAGE_DIRECTORY_CONFIG)).toAbsolutePath().normalize();
+  }
+
+  /**
+   * Construct, parse and validate a map of configurations.
+   *
+   * @param originals config options
+   * @return a validated configuration object
+   * @throws ConfigException if any config option is invalid
+   */
+  public static FileClaimCheckConfig validatedConfig(Map<?, ?> originals) {
+    FileClaimCheckConfig fileClaimCheckConfig = new FileClaimCheckConfig(originals);
+    fileClaimCheckConfig.validate();
+    return fileClaimCheckConfig;
+  }
+
+  private FileClaimCheckConfig(ConfigDef configDef, Map<?, ?> originals) {
+    super(buildConfigDef(configDef), originals, false);
+  }
+
+  private FileClaimCheckConfig(Map<?, ?> originals) {
+    this(new ConfigDef(), originals);
+  }
+
+  /**
+   * Validate config properties not covered by @see {@link ConfigDef#parse(Map)} which is called
+   * in {@link AbstractConfig} constructor.
+   *
+   * @throws org.apache.kafka.common.config.ConfigException if configuration is not valid
+   */
+  private void validate() {
+    String directory = getString(FILE_STORAGE_DIRECTORY_CONFIG);
+    if (directory == null || directory.trim().isEmpty()) {
+      throw new ConfigException("'" + FILE_STORAGE_DIRECTORY_CONFIG + "' must be set");
+    }
+  }
+
+  /**
+   * Config keys for configuring the local filesystem backend.
+   */
+  public static class Keys {
+
+    public static final String FILE_STORAGE_DIRECTORY_CONFIG = "file.storage.directory";
+
+    public static final String FILE_STORAGE_FSYNC_CONFIG = "file.storage.fsync";
+
+  }
+}
@@ -0,0 +1,94 @@
+package se.irori.kafka.claimcheck.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.irori.kafka.claimcheck.BaseClaimCheckConfig;
+import se.irori.kafka.claimcheck.ClaimCheckSerializer;
+import se.irori.kafka.claimcheck.ClaimCheckStreamingDeserializer;
+import se.irori.kafka.claimcheck.ClaimCheckStreamingProducerInterceptor;
+import se.irori.kafka.claimcheck.ClaimCheckStreamingUtils;
+import se.irori.kafka.claimcheck.ClaimCheckUtils;
+import se.irori.kafka.claimcheck.InputStreamSerializer;
+import se.irori.kafka.claimcheck.SyntheticInputStream;
+
+/**
+ * Integration test streaming payloads of several GB through FileClaimCheckBackend, against a
+ * temporary directory.
+ */
+public class FileClaimCheckBackendIT {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  @Before
+  public void setup() {
+    directory = folder.getRoot().toPath();
+  }
+
+  @Test
+  public void streamingLargerThanByteArray() throws IOException {
+    // GIVEN a streaming producer and consumer with the file backend, and a limit no payload
+    // reaches
+    long size = 3L * 1024 * 1024 * 1024;
+    Assume.assumeTrue("Needs disk space for a " + size + " byte payload",
+        directory.toFile().getUsableSpace() > 2 * size);
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(FileClaimCheckConfig.Keys.FILE_STORAGE_DIRECTORY_CONFIG, directory.toString());
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_BACKEND_CLASS_CONFIG,
+        FileClaimCheckBackend.class);
+    config.put(
+        BaseClaimCheckConfig.Keys.CLAIMCHECK_CHECKIN_UNCOMPRESSED_BATCH_SIZE_OVER_BYTES_CONFIG,
+        Long.MAX_VALUE);
+    config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ClaimCheckSerializer.class);
+    config.put(BaseClaimCheckConfig.Keys.CLAIMCHECK_WRAPPED_VALUE_SERIALIZER_CLASS,
+        InputStreamSerializer.class);
+    ClaimCheckStreamingProducerInterceptor<String> interceptor =
+        new ClaimCheckStreamingProducerInterceptor<>();
+    interceptor.configure(config);
+    ClaimCheckStreamingDeserializer deserializer = new ClaimCheckStreamingDeserializer();
+    deserializer.configure(config, false);
+
+    // WHEN sending a synthetic payload larger than a byte array, and reading it back
+    ProducerRecord<String, InputStream> record =
+        new ProducerRecord<>("my-topic", "key", new SyntheticInputStream(size));
+    ClaimCheckStreamingUtils.setPayloadSize(record.headers(), size);
+    ProducerRecord<String, InputStream> sent = interceptor.onSend(record);
+    long read = 0;
+    try (InputStream payload = deserializer.deserialize("my-topic", sent.headers(),
+        new byte[0])) {
+      byte[] buffer = new byte[64 * 1024];
+      int length;
+      while ((length = payload.read(buffer)) != -1) {
+        for (int i = 0; i < length; i++) {
+          if (buffer[i] != SyntheticInputStream.byteAt(read + i)) {
+            fail("Payload differs at " + (read + i));
+          }
+        }
+        read += length;
+      }
+    }
+
+    // THEN it is checked in as a stream despite the limit, and read back intact
+    assertTrue(ClaimCheckUtils.isClaimCheck(sent.headers()));
+    assertEquals(size, read);
+    interceptor.close();
+    deserializer.close();
+  }
+}
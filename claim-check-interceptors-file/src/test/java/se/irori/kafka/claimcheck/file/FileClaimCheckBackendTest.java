@@ -0,0 +1,159 @@
+package se.irori.kafka.claimcheck.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.stream.Stream;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.KafkaStorageException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.irori.kafka.claimcheck.ClaimCheck;
+import se.irori.kafka.claimcheck.TestUtils;
+
+/**
+ * Unit test FileClaimCheckBackend against a temporary directory.
+ */
+public class FileClaimCheckBackendTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FileClaimCheckBackend unit;
+
+  private Path directory;
+
+  @Before
+  public void setup() {
+    directory = folder.getRoot().toPath();
+
+    HashMap<String, Object> config = new HashMap<>();
+    config.put(FileClaimCheckConfig.Keys.FILE_STORAGE_DIRECTORY_CONFIG, directory.toString());
+    unit = new FileClaimCheckBackend();
+    unit.configure(config);
+  }
+
+  @Test
+  public void checkInCheckOut() throws IOException {
+    // GIVEN a payload
+    byte[] payload = TestUtils.getRandomBytes(10_000);
+
+    // WHEN checking it in and out
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>("my-topic", payload));
+    byte[] result = unit.checkOut(claimCheck);
+
+    // THEN the payload is stored in the topic directory, without temporary files
+    assertArrayEquals(payload, result);
+    assertTrue(claimCheck.getReference().startsWith("file:my-topic/"));
+    try (Stream<Path> files = Files.list(directory.resolve("my-topic"))) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  @Test
+  public void checkInCheckOutStreaming() throws IOException {
+    // GIVEN a payload
+    byte[] payload = TestUtils.getRandomBytes(10_000);
+
+    // WHEN checking it in and out as streams
+    ClaimCheck claimCheck = unit.checkInStreaming("my-topic",
+        new ByteArrayInputStream(payload), payload.length);
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    try (InputStream inputStream = unit.checkOutStreaming(claimCheck)) {
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        result.write(buffer, 0, read);
+      }
+    }
+
+    // THEN the payload is intact
+    assertArrayEquals(payload, result.toByteArray());
+  }
+
+  @Test
+  public void checkOutStreamingSkip() throws IOException {
+    // GIVEN a checked in payload
+    byte[] payload = TestUtils.getRandomBytes(10_000);
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>("my-topic", payload));
+
+    try (InputStream inputStream = unit.checkOutStreaming(claimCheck)) {
+      // WHEN skipping into it, and past its end
+      assertEquals(4000, inputStream.skip(4000));
+      int next = inputStream.read();
+      long skippedToEnd = inputStream.skip(10_000);
+
+      // THEN reads continue after the skipped bytes, and skipping stops at the end
+      assertEquals(payload[4000] & 0xff, next);
+      assertEquals(10_000 - 4001, skippedToEnd);
+      assertEquals(-1, inputStream.read());
+    }
+  }
+
+  @Test
+  public void transferTo() {
+    // GIVEN a checked in payload
+    byte[] payload = TestUtils.getRandomBytes(10_000);
+    ClaimCheck claimCheck = unit.checkIn(new ProducerRecord<>("my-topic", payload));
+
+    // WHEN transferring it to a channel
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    long transferred = unit.transferTo(claimCheck, Channels.newChannel(result));
+
+    // THEN the payload is intact
+    assertEquals(payload.length, transferred);
+    assertArrayEquals(payload, result.toByteArray());
+  }
+
+  @Test
+  public void checkInStreamingUnknownSize() {
+    // GIVEN a payload of a size not known up front, e.g. compressed while read
+    byte[] payload = TestUtils.getRandomBytes(10_000);
+
+    // WHEN checking it in
+    ClaimCheck claimCheck = unit.checkInStreaming("my-topic",
+        new ByteArrayInputStream(payload), -1);
+
+    // THEN the stream is stored to its end
+    assertArrayEquals(payload, unit.checkOut(claimCheck));
+  }
+
+  @Test
+  public void checkInStreamingShortStream() throws IOException {
+    // GIVEN a stream shorter than the declared size
+    byte[] payload = TestUtils.getRandomBytes(100);
+
+    // WHEN checking it in
+    try {
+      unit.checkInStreaming("my-topic", new ByteArrayInputStream(payload), 200);
+      fail("Expected exception for short stream");
+    } catch (KafkaStorageException e) {
+      // THEN no partial payload is left behind
+      try (Stream<Path> files = Files.list(directory.resolve("my-topic"))) {
+        assertEquals(0, files.count());
+      }
+    }
+  }
+
+  @Test(expected = KafkaStorageException.class)
+  public void checkOutMissing() {
+    unit.checkOut(new ClaimCheck("file:my-topic/no-such-payload"));
+  }
+
+  @Test(expected = KafkaStorageException.class)
+  public void checkOutOutsideDirectory() {
+    unit.checkOut(new ClaimCheck("file:../../etc/passwd"));
+  }
+}
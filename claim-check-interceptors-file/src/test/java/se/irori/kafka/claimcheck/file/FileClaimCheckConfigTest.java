@@ -0,0 +1,57 @@
+package se.irori.kafka.claimcheck.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+import org.junit.Test;
+import se.irori.kafka.claimcheck.file.FileClaimCheckConfig.Keys;
+
+/**
+ * Unit test FileClaimCheckConfig for valid config combinations.
+ */
+public class FileClaimCheckConfigTest {
+
+  private FileClaimCheckConfig unit;
+
+  @Test(expected = ConfigException.class)
+  public void testErrorOnEmpty() {
+    HashMap<String, String> config = new HashMap<>();
+    unit = FileClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test(expected = ConfigException.class)
+  public void testErrorOnBlankDirectory() {
+    HashMap<String, String> config = new HashMap<>();
+    config.put(Keys.FILE_STORAGE_DIRECTORY_CONFIG, " ");
+    unit = FileClaimCheckConfig.validatedConfig(config);
+  }
+
+  @Test
+  public void testDirectoryOk() {
+    HashMap<String, String> config = new HashMap<>();
+    config.put(Keys.FILE_STORAGE_DIRECTORY_CONFIG, "/tmp/claimcheck/../claimcheck");
+
+    unit = FileClaimCheckConfig.validatedConfig(config);
+
+    assertEquals(Paths.get("/tmp/claimcheck"), unit.getDirectory());
+    assertFalse(unit.getBoolean(Keys.FILE_STORAGE_FSYNC_CONFIG));
+  }
+
+  @Test
+  public void generateDocs() {
+    ConfigDef configDef = FileClaimCheckConfig.buildConfigDef(new ConfigDef());
+    // RST / markdown hack
+    String rst = configDef.toEnrichedRst().replace("``", "`");
+
+    System.out.println("-----");
+    System.out.println(rst);
+    System.out.println("-----");
+
+    // RST output seems to work fine as markdown
+  }
+
+}
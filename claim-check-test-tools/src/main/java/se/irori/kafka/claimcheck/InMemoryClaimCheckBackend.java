@@ -0,0 +1,114 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.KafkaStorageException;
+
+/**
+ * In-memory implementation of {@link ClaimCheckBackend}, for tests and benchmarks.
+ *
+ * <p>Payloads are kept in a store shared by all instances in the JVM, since Kafka clients
+ * create their own backend instances. Use {@link #clear()} to release them, or
+ * {@link #setDiscardPayloads(boolean)} when only checking in.
+ */
+public class InMemoryClaimCheckBackend implements ClaimCheckBackend {
+
+  private static final Map<String, byte[]> STORE = new ConcurrentHashMap<>();
+
+  private static final AtomicLong COUNTER = new AtomicLong();
+
+  private static volatile boolean discardPayloads = false;
+
+  /**
+   * Remove all stored payloads.
+   */
+  public static void clear() {
+    STORE.clear();
+  }
+
+  /**
+   * Discard checked in payloads instead of storing them. Streams are still read to the end.
+   *
+   * @param discard true to discard payloads, and fail check outs
+   */
+  public static void setDiscardPayloads(boolean discard) {
+    discardPayloads = discard;
+  }
+
+  /**
+   * Get the number of stored payloads.
+   *
+   * @return the number of stored payloads
+   */
+  public static int size() {
+    return STORE.size();
+  }
+
+  @Override
+  public ClaimCheck checkIn(ProducerRecord<byte[], byte[]> largeRecord) {
+    return store(largeRecord.topic(), largeRecord.value());
+  }
+
+  @Override
+  public ClaimCheck checkInStreaming(String topic, InputStream payload, long payloadSize) {
+    try {
+      if (discardPayloads) {
+        byte[] buffer = new byte[8192];
+        while (payload.read(buffer) != -1) {
+          // read to the end, like an upload would
+        }
+        payload.close();
+        return store(topic, null);
+      }
+      if (payloadSize < 0) {
+        // size not known, e.g. compressed while read
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = payload.read(buffer)) != -1) {
+          bytes.write(buffer, 0, read);
+        }
+        payload.close();
+        return store(topic, bytes.toByteArray());
+      }
+      return store(topic, ClaimCheckStreamingUtils.streamToBytes(payload, payloadSize));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private ClaimCheck store(String topic, byte[] payload) {
+    String reference = "inmemory://" + topic + "/" + COUNTER.incrementAndGet();
+    if (!discardPayloads) {
+      STORE.put(reference, payload);
+    }
+    return new ClaimCheck(reference);
+  }
+
+  @Override
+  public byte[] checkOut(ClaimCheck claimCheck) {
+    byte[] payload = STORE.get(claimCheck.getReference());
+    if (payload == null) {
+      throw new KafkaStorageException("No such in-memory claim check: "
+          + claimCheck.getReference());
+    }
+    return payload;
+  }
+
+  @Override
+  public InputStream checkOutStreaming(ClaimCheck claimCheck) {
+    return new ByteArrayInputStream(checkOut(claimCheck));
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+    // nothing to configure
+  }
+}
@@ -0,0 +1,74 @@
+package se.irori.kafka.claimcheck;
+
+import java.io.InputStream;
+
+/**
+ * A stream of generated bytes of any size, for testing large payloads without holding them in
+ * memory. The byte at a position is given by {@link #byteAt(long)}.
+ */
+public class SyntheticInputStream extends InputStream {
+
+  private final long size;
+
+  private long position;
+
+  /**
+   * Create a stream.
+   *
+   * @param size number of bytes in the stream
+   */
+  public SyntheticInputStream(long size) {
+    this.size = size;
+  }
+
+  /**
+   * The byte at a position of any synthetic stream.
+   *
+   * @param position position in the stream
+   * @return the byte at the position
+   */
+  public static byte byteAt(long position) {
+    // not repeating at powers of two, to catch misplaced chunks
+    return (byte) (position % 251);
+  }
+
+  @Override
+  public int read() {
+    if (position >= size) {
+      return -1;
+    }
+    return byteAt(position++) & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    if (position >= size) {
+      return -1;
+    }
+    int read = (int) Math.min(len, size - position);
+    int value = (int) (position % 251);
+    for (int i = off; i < off + read; i++) {
+      b[i] = (byte) value;
+      if (++value == 251) {
+        value = 0;
+      }
+    }
+    position += read;
+    return read;
+  }
+
+  @Override
+  public long skip(long n) {
+    long skipped = Math.max(0, Math.min(n, size - position));
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return (int) Math.min(Integer.MAX_VALUE, size - position);
+  }
+}